@@ -0,0 +1,54 @@
+package com.davinryan.common.restservice.cache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Use this tag to cache the {@link com.davinryan.common.restservice.domain.response.Response} of a pure lookup. You'll
+ * also need to add a bean instance of {@link CacheServiceResponseAspect} to your spring application context to make
+ * this work.
+ * <p>
+ * Responses are keyed on the named fields of the request and only SUCCESS responses are cached, never a
+ * {@link com.davinryan.common.restservice.domain.response.StreamingResponse}. Every caller that hits a key gets the
+ * same response instance, not a copy, so neither the response nor its payload may be modified once returned.
+ *
+ * WARNING: this annotation only works with public methods who have only a single parameter of type
+ * {@link com.davinryan.common.restservice.domain.request.Request}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CacheServiceResponse {
+
+    /**
+     * Request properties that make up the cache key, read through their getters. Leave out per call values such as
+     * the correlation id.
+     */
+    String[] fields();
+
+    /**
+     * Name the statistics are reported under. Defaults to the method signature.
+     */
+    String name() default "";
+
+    /**
+     * Maximum number of cached responses.
+     */
+    int maxSize() default 1000;
+
+    /**
+     * How long a response is served from the cache.
+     */
+    long ttlSeconds() default 60;
+
+    /**
+     * If greater than zero, a hit on a response older than this is still served from the cache but refreshed in the
+     * background, so hot keys never expire in front of a caller. Must be less than {@link #ttlSeconds()}.
+     * <p>
+     * The refresh calls the method again on a pool thread. It gets a copy of the triggering caller's MDC but not its
+     * security context, transaction or any other thread bound state, so only use this for lookups that do not need
+     * them.
+     */
+    long refreshAheadSeconds() default 0;
+}
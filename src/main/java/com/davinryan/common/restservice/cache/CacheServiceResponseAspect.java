@@ -0,0 +1,195 @@
+package com.davinryan.common.restservice.cache;
+
+import com.davinryan.common.restservice.domain.request.Request;
+import com.davinryan.common.restservice.reflection.ReflectionUtils;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.lang.annotation.AnnotationFormatError;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Add this class as a bean instance in your spring context and add the {@link CacheServiceResponse} annotation to your
+ * public service method to cache its responses.
+ * <p>
+ * Each annotated method gets its own {@link ResponseCache}. Background refreshes run on a small pool of daemon
+ * threads; if it is busy the refresh is skipped and tried again on a later hit. A refresh runs with a copy of the
+ * triggering caller's MDC, but without its security context, transaction or other thread bound state.
+ *
+ * WARNING: this annotation only works with public methods who have only a single parameter of type
+ * {@link Request}.
+ */
+@Aspect
+public class CacheServiceResponseAspect {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheServiceResponseAspect.class.getName());
+
+    private static final int REFRESH_THREADS = 2;
+
+    private static final int REFRESH_QUEUE_CAPACITY = 100;
+
+    private final ConcurrentMap<Method, MethodCache> caches = new ConcurrentHashMap<Method, MethodCache>();
+
+    private final ThreadPoolExecutor refresher = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60,
+            TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(REFRESH_QUEUE_CAPACITY), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "response-cache-refresh-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public CacheServiceResponseAspect() {
+        refresher.allowCoreThreadTimeOut(true);
+    }
+
+    @Pointcut(value = "execution(public * *(..))")
+    public void anyPublicMethod() {
+        // This method is empty because it simply provides a location for @Pointcut to locate public methods.
+    }
+
+    @Around("anyPublicMethod() && @annotation(cacheServiceResponse)") //NOSONAR
+    public Object cacheResponse(final ProceedingJoinPoint pjp, CacheServiceResponse cacheServiceResponse) throws Throwable { // NOSONAR
+        Request request = findRequest(pjp.getArgs());
+        if (request == null) {
+            return pjp.proceed();
+        }
+        final MethodCache methodCache = cacheFor(pjp, cacheServiceResponse);
+        final Object key = methodCache.keyFor(request);
+
+        final ResponseCache.Entry entry = methodCache.cache.get(key);
+        if (entry == null) {
+            Object result = pjp.proceed();
+            methodCache.cache.put(key, result);
+            return result;
+        }
+        if (methodCache.cache.claimRefresh(entry)) {
+            final Map<?, ?> callerMdc = MDC.getCopyOfContextMap();
+            try {
+                refresher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        refresh(pjp, methodCache, key, entry, callerMdc);
+                    }
+                });
+            } catch (RejectedExecutionException e) { //NOSONAR - busy, a later hit will try again
+                methodCache.cache.refreshFailed(entry);
+            }
+        }
+        return entry.getResponse();
+    }
+
+    /**
+     * @return statistics for every cache, keyed by {@link CacheServiceResponse#name()}
+     */
+    public Map<String, CacheStatistics> getStatistics() {
+        Map<String, CacheStatistics> statistics = new HashMap<String, CacheStatistics>();
+        for (MethodCache methodCache : caches.values()) {
+            statistics.put(methodCache.name, methodCache.cache.getStatistics());
+        }
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /**
+     * Empty every cache, e.g. after the data behind them changed.
+     */
+    public void invalidateAll() {
+        for (MethodCache methodCache : caches.values()) {
+            methodCache.cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Stop the refresh threads. Cached responses are still served but no longer refreshed ahead of expiry.
+     */
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    private static void refresh(ProceedingJoinPoint pjp, MethodCache methodCache, Object key, ResponseCache.Entry entry,
+                                Map<?, ?> callerMdc) {
+        if (callerMdc != null) {
+            MDC.setContextMap(callerMdc);
+        }
+        try {
+            methodCache.cache.refreshed(key, pjp.proceed());
+        } catch (Throwable e) { //NOSONAR - keep serving the cached response until it expires
+            LOGGER.warn("Failed to refresh cached response for " + methodCache.name + ": " + e);
+            methodCache.cache.refreshFailed(entry);
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    private MethodCache cacheFor(ProceedingJoinPoint pjp, CacheServiceResponse annotation) {
+        Method method = ((MethodSignature) pjp.getSignature()).getMethod();
+        MethodCache methodCache = caches.get(method);
+        if (methodCache == null) {
+            methodCache = new MethodCache(annotation.name().isEmpty() ? pjp.getSignature().toShortString() : annotation.name(),
+                    annotation.fields(), new ResponseCache(annotation.maxSize(),
+                    TimeUnit.SECONDS.toMillis(annotation.ttlSeconds()), TimeUnit.SECONDS.toMillis(annotation.refreshAheadSeconds())));
+            MethodCache existing = caches.putIfAbsent(method, methodCache);
+            if (existing != null) {
+                methodCache = existing;
+            }
+        }
+        return methodCache;
+    }
+
+    private static Request findRequest(Object[] args) {
+        Request request = null;
+        for (Object object : args) {
+            if (object instanceof Request) {
+                if (request != null) {
+                    throw new AnnotationFormatError("You can't have more than one Request object per service call!");
+                }
+                request = (Request) object;
+            }
+        }
+        return request;
+    }
+
+    private static final class MethodCache {
+
+        private final String name;
+
+        private final String[] fields;
+
+        private final ResponseCache cache;
+
+        private MethodCache(String name, String[] fields, ResponseCache cache) {
+            this.name = name;
+            this.fields = fields;
+            this.cache = cache;
+        }
+
+        private Object keyFor(Request request) {
+            try {
+                return Arrays.asList(request.getClass(), Arrays.asList(ReflectionUtils.getPropertyValues(request, fields)));
+            } catch (IllegalArgumentException e) {
+                throw new AnnotationFormatError("Invalid cache key field for " + name + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.davinryan.common.restservice.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for one {@link ResponseCache}.
+ */
+public class CacheStatistics {
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private final AtomicLong uncacheable = new AtomicLong();
+
+    private final ResponseCache cache;
+
+    CacheStatistics(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    void recordEviction() {
+        evictions.incrementAndGet();
+    }
+
+    void recordExpiration() {
+        expirations.incrementAndGet();
+    }
+
+    void recordRefresh() {
+        refreshes.incrementAndGet();
+    }
+
+    void recordUncacheable() {
+        uncacheable.incrementAndGet();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * @return entries removed to stay within the maximum size
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return entries removed because their TTL passed
+     */
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    /**
+     * @return responses not cached because they were not SUCCESS responses
+     */
+    public long getUncacheableCount() {
+        return uncacheable.get();
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", expirations=" + expirations +
+                ", refreshes=" + refreshes +
+                ", uncacheable=" + uncacheable +
+                ", size=" + getSize() +
+                '}';
+    }
+}
@@ -0,0 +1,207 @@
+package com.davinryan.common.restservice.cache;
+
+import com.davinryan.common.restservice.domain.response.Response;
+import com.davinryan.common.restservice.domain.response.StreamingResponse;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded, concurrent store of SUCCESS {@link Response}s with TTL expiry, used by {@link CacheServiceResponseAspect}.
+ * <p>
+ * Reads never lock. When the cache grows past its maximum size entries are evicted in insertion order, except that an
+ * entry read since it was last considered gets a second chance (the CLOCK algorithm), which approximates LRU without
+ * reordering a shared list on every hit.
+ * <p>
+ * Responses are cached by reference and handed to every caller that hits the same key, so a cached {@link Response}
+ * and its payload are shared. {@link Response} is mutable: anything that changes one returned from the cache, e.g. by
+ * calling {@code setStatus} or redacting its payload in place, changes it for every later caller until it expires.
+ * {@link StreamingResponse}s can only be written once so are never cached.
+ */
+public class ResponseCache {
+
+    private final ConcurrentMap<Object, Entry> entries;
+
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * Approximate number of entries in {@link #clock}, including ones since replaced or invalidated, which are
+     * dropped lazily.
+     */
+    private final AtomicInteger clockSize = new AtomicInteger();
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final long refreshAheadNanos;
+
+    private final CacheStatistics statistics = new CacheStatistics(this);
+
+    public ResponseCache(int maxSize, long ttlMillis, long refreshAheadMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        if (refreshAheadMillis >= ttlMillis && refreshAheadMillis > 0) {
+            throw new IllegalArgumentException("refreshAhead must be less than the ttl");
+        }
+        this.entries = new ConcurrentHashMap<Object, Entry>(Math.min(maxSize, 1024) * 4 / 3 + 1);
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.refreshAheadNanos = refreshAheadMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(refreshAheadMillis) : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the live entry for {@code key}, or null (counted as a miss) if there is none or it has expired
+     */
+    Entry get(Object key) {
+        Entry entry = entries.get(key);
+        long now = System.nanoTime();
+        if (entry != null && now - entry.storedAt > ttlNanos) {
+            if (entries.remove(key, entry)) {
+                statistics.recordExpiration();
+            }
+            entry = null;
+        }
+        if (entry == null) {
+            statistics.recordMiss();
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        statistics.recordHit();
+        return entry;
+    }
+
+    /**
+     * Cache {@code response} if it is a SUCCESS response that can be written more than once.
+     *
+     * @return true if it was cached
+     */
+    boolean put(Object key, Object response) {
+        if (!(response instanceof Response) || response instanceof StreamingResponse
+                || ((Response) response).getStatus() != Response.ResponseStatus.SUCCESS) {
+            statistics.recordUncacheable();
+            return false;
+        }
+        Entry entry = new Entry(key, (Response) response);
+        entries.put(key, entry);
+        enqueue(entry);
+        if (clockSize.get() > 2 * maxSize) {
+            dropStaleEntries();
+        }
+        while (entries.size() > maxSize) {
+            evictOne();
+        }
+        return true;
+    }
+
+    /**
+     * @return true if {@code entry} is due a background refresh and no other caller has started one
+     */
+    boolean claimRefresh(Entry entry) {
+        return System.nanoTime() - entry.storedAt > refreshAheadNanos && entry.refreshing.compareAndSet(false, true);
+    }
+
+    void refreshFailed(Entry entry) {
+        entry.refreshing.set(false);
+    }
+
+    void refreshed(Object key, Object response) {
+        statistics.recordRefresh();
+        if (!put(key, response)) {
+            // no longer a SUCCESS, so stop serving the old one
+            entries.remove(key);
+        }
+    }
+
+    public void invalidate(Object key) {
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+        dropStaleEntries();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    private void evictOne() {
+        long now = System.nanoTime();
+        // every live entry is in the queue, so two passes always find a victim unless others evict concurrently
+        int limit = 2 * entries.size() + 1;
+        for (int i = 0; i < limit; i++) {
+            Entry entry = clock.poll();
+            if (entry == null) {
+                return;
+            }
+            clockSize.decrementAndGet();
+            if (entries.get(entry.key) != entry) {
+                // replaced or removed since it was queued
+                continue;
+            }
+            if (now - entry.storedAt > ttlNanos) {
+                if (entries.remove(entry.key, entry)) {
+                    statistics.recordExpiration();
+                    return;
+                }
+            } else if (entry.referenced) {
+                entry.referenced = false;
+                enqueue(entry);
+            } else if (entries.remove(entry.key, entry)) {
+                statistics.recordEviction();
+                return;
+            }
+        }
+    }
+
+    private void enqueue(Entry entry) {
+        clock.offer(entry);
+        clockSize.incrementAndGet();
+    }
+
+    private void dropStaleEntries() {
+        Iterator<Entry> queued = clock.iterator();
+        while (queued.hasNext()) {
+            Entry entry = queued.next();
+            if (entries.get(entry.key) != entry) {
+                queued.remove();
+                clockSize.decrementAndGet();
+            }
+        }
+    }
+
+    static final class Entry {
+
+        private final Object key;
+
+        private final Response response;
+
+        private final long storedAt = System.nanoTime();
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private volatile boolean referenced;
+
+        private Entry(Object key, Response response) {
+            this.key = key;
+            this.response = response;
+        }
+
+        Response getResponse() {
+            return response;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.davinryan.common.restservice.concurrency;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit for one method that adapts to latency using a gradient algorithm.
+ * <p>
+ * Permits are taken with a compare-and-set on the in-flight count, so acquiring never blocks. The limit is updated
+ * once per window of completed calls, at least {@link #MIN_WINDOW} and about as many as the limit itself, so roughly
+ * once per round trip: the window's average latency is compared with the no-load latency. While it stays within
+ * {@link #TOLERANCE} of the no-load latency the limit grows by roughly its square root; as queueing pushes latency
+ * above it the limit shrinks in proportion, by at most half per update. The limit only grows while at least half of it
+ * is in use, so an idle endpoint does not inflate it.
+ * <p>
+ * The no-load latency is the lowest latency seen since the last probe. Calls made while the limit keeps the endpoint
+ * busy never show it, so, as in TCP Vegas, it is probed every {@link #PROBE_INTERVAL} updates or so (with jitter):
+ * the limit is halved until the calls already in flight have completed and as many calls again have run at the lower
+ * concurrency. The lowest of their latencies replaces the no-load latency, which lets it follow a dependency that has
+ * genuinely become slower or faster, and the limit is restored.
+ * <p>
+ * Samples are applied under a try-lock; a sample that arrives while another is being applied is dropped.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    static final double TOLERANCE = 1.5;
+
+    static final int PROBE_INTERVAL = 30;
+
+    private static final double SMOOTHING = 0.2;
+
+    static final int MIN_WINDOW = 10;
+
+    private final String name;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    private final Random jitter = new Random();
+
+    private volatile int limit;
+
+    private double estimatedLimit;
+
+    private long windowRttSumNanos;
+
+    private int windowSamples;
+
+    private int windowMaxInFlight;
+
+    private long noLoadRttNanos = Long.MAX_VALUE;
+
+    private int updatesUntilProbe;
+
+    /**
+     * While probing, samples still to be ignored because their calls started before the limit was lowered, then
+     * samples still to be measured at the lower limit
+     */
+    private int probeSkip;
+
+    private int probeSamples;
+
+    private long probeMinRttNanos;
+
+    public AdaptiveConcurrencyLimit(String name, int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Require 1 <= minLimit <= initialLimit <= maxLimit for " + name);
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+        scheduleProbe();
+    }
+
+    /**
+     * @return true if a permit was taken; it must be given back with {@link #release(long)}
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Return a permit and record how long the call took.
+     */
+    void release(long rttNanos) {
+        int wasInFlight = inFlight.getAndDecrement();
+        if (updateLock.tryLock()) {
+            try {
+                update(rttNanos, wasInFlight);
+            } finally {
+                updateLock.unlock();
+            }
+        }
+    }
+
+    private void update(long rttNanos, int wasInFlight) {
+        if (probeSkip > 0 || probeSamples > 0) {
+            probe(rttNanos);
+            return;
+        }
+        noLoadRttNanos = Math.min(noLoadRttNanos, rttNanos);
+        windowRttSumNanos += rttNanos;
+        windowMaxInFlight = Math.max(windowMaxInFlight, wasInFlight);
+        if (++windowSamples < Math.max(MIN_WINDOW, limit)) {
+            return;
+        }
+        double averageRttNanos = (double) windowRttSumNanos / windowSamples;
+        int maxInFlight = windowMaxInFlight;
+        windowRttSumNanos = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * Math.max(1, noLoadRttNanos) / averageRttNanos));
+        double newLimit = gradient < 1.0 ? estimatedLimit * gradient : estimatedLimit + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+
+        // don't grow the limit while most of it is unused
+        if (newLimit > estimatedLimit && maxInFlight < estimatedLimit / 2) {
+            newLimit = estimatedLimit;
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+
+        if (--updatesUntilProbe <= 0) {
+            int probeLimit = Math.max(minLimit, limit / 2);
+            probeSkip = inFlight.get();
+            probeSamples = probeLimit;
+            probeMinRttNanos = Long.MAX_VALUE;
+            limit = probeLimit;
+        }
+    }
+
+    private void probe(long rttNanos) {
+        if (probeSkip > 0) {
+            probeSkip--;
+            return;
+        }
+        probeMinRttNanos = Math.min(probeMinRttNanos, rttNanos);
+        if (--probeSamples == 0) {
+            noLoadRttNanos = probeMinRttNanos;
+            limit = (int) estimatedLimit;
+            scheduleProbe();
+        }
+    }
+
+    private void scheduleProbe() {
+        updatesUntilProbe = (int) (PROBE_INTERVAL * (0.5 + jitter.nextDouble() / 2));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveConcurrencyLimit{" +
+                "name='" + name + '\'' +
+                ", limit=" + limit +
+                ", inFlight=" + inFlight +
+                ", rejected=" + rejected +
+                '}';
+    }
+}
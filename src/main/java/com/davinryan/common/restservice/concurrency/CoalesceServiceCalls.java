@@ -0,0 +1,40 @@
+package com.davinryan.common.restservice.concurrency;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Use this tag to let concurrent identical calls share one execution. You'll also need to add a bean instance of
+ * {@link CoalesceServiceCallsAspect} to your spring application context to make this work.
+ * <p>
+ * Calls are identical when the named request fields are equal. The first caller runs the method; callers arriving
+ * while it is in flight wait and get the same {@link com.davinryan.common.restservice.domain.response.Response}
+ * instance, or the same exception, so the response must not be modified.
+ *
+ * WARNING: this annotation only works with public methods who have only a single parameter of type
+ * {@link com.davinryan.common.restservice.domain.request.Request}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CoalesceServiceCalls {
+
+    /**
+     * Request properties that identify identical calls, read through their getters. Leave out the correlation id.
+     */
+    String[] fields();
+
+    /**
+     * Name the statistics are reported under. Defaults to the method signature.
+     */
+    String name() default "";
+
+    /**
+     * How long a caller waits for the in-flight call before failing with a FAILURE
+     * {@link com.davinryan.common.restservice.domain.response.Response}, or a {@link CoalescedCallTimeoutException} if
+     * the method cannot return a plain Response. Waiters never run the method themselves, so a slow call is not
+     * repeated by everyone queued behind it. Zero waits for as long as the in-flight call takes.
+     */
+    long timeoutMillis() default 30000;
+}
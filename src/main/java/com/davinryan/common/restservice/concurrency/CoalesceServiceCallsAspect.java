@@ -0,0 +1,213 @@
+package com.davinryan.common.restservice.concurrency;
+
+import com.davinryan.common.restservice.domain.request.Request;
+import com.davinryan.common.restservice.domain.response.Response;
+import com.davinryan.common.restservice.logging.LogServiceCallWithMDCAspect;
+import com.davinryan.common.restservice.reflection.ReflectionUtils;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.annotation.AnnotationFormatError;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Add this class as a bean instance in your spring context and add the {@link CoalesceServiceCalls} annotation to your
+ * public service method to coalesce identical concurrent calls onto one execution.
+ * <p>
+ * Order it inside {@link LogServiceCallWithMDCAspect} so every caller still logs BEGIN and END under its own cid;
+ * callers that join an in-flight call also log the cid of the call they joined. The in-flight entry is removed when
+ * the executing call finishes, however it finishes. A caller that times out or is interrupted while waiting fails
+ * rather than running the method itself, so a slow call does not turn into a stampede of repeats.
+ * <p>
+ * If the executing call throws, each joined caller gets its own exception with the original as its cause: a new
+ * instance of the same type where it has a public (String, Throwable) constructor, otherwise a
+ * {@link CoalescedCallFailedException}. Errors that cannot be rebuilt are rethrown as they are.
+ *
+ * WARNING: this annotation only works with public methods who have only a single parameter of type
+ * {@link Request}.
+ */
+@Aspect
+public class CoalesceServiceCallsAspect {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoalesceServiceCallsAspect.class.getName());
+
+    private final ConcurrentMap<Object, InFlightCall> inFlight = new ConcurrentHashMap<Object, InFlightCall>();
+
+    private final AtomicLong executions = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    @Pointcut(value = "execution(public * *(..))")
+    public void anyPublicMethod() {
+        // This method is empty because it simply provides a location for @Pointcut to locate public methods.
+    }
+
+    @Around("anyPublicMethod() && @annotation(coalesceServiceCalls)") //NOSONAR
+    public Object coalesce(ProceedingJoinPoint pjp, CoalesceServiceCalls coalesceServiceCalls) throws Throwable { // NOSONAR
+        Request request = findRequest(pjp.getArgs());
+        if (request == null) {
+            return pjp.proceed();
+        }
+        String name = coalesceServiceCalls.name().isEmpty() ? pjp.getSignature().toShortString() : coalesceServiceCalls.name();
+        Object key = keyFor(name, request, coalesceServiceCalls.fields());
+
+        InFlightCall call = new InFlightCall(LogServiceCallWithMDCAspect.currentCorrelationId());
+        InFlightCall existing = inFlight.putIfAbsent(key, call);
+        if (existing == null) {
+            return execute(pjp, key, call);
+        }
+        if (existing.await(coalesceServiceCalls.timeoutMillis())) {
+            coalesced.incrementAndGet();
+            LOGGER.debug("Joined in-flight {} call started by cid={}", name, existing.correlationId);
+            return existing.outcome(name);
+        }
+        timeouts.incrementAndGet();
+        return giveUp(pjp, name, existing);
+    }
+
+    /**
+     * @return number of calls that actually ran the method
+     */
+    public long getExecutionCount() {
+        return executions.get();
+    }
+
+    /**
+     * @return number of calls answered by joining an in-flight call
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return number of callers that stopped waiting and failed
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private Object execute(ProceedingJoinPoint pjp, Object key, InFlightCall call) throws Throwable { // NOSONAR
+        executions.incrementAndGet();
+        try {
+            Object result = pjp.proceed();
+            call.succeeded(result);
+            return result;
+        } catch (Throwable e) { //NOSONAR - handed to the waiters and rethrown
+            call.failed(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private static Object giveUp(ProceedingJoinPoint pjp, String name, InFlightCall existing) {
+        // The other caller's cid is for our logs only, not for this caller
+        String message = "Gave up waiting for in-flight " + name + " call";
+        LOGGER.debug("{} started by cid={}", message, existing.correlationId);
+        Class<?> returnType = ((MethodSignature) pjp.getSignature()).getReturnType();
+        if (returnType.isAssignableFrom(Response.class)) {
+            return new Response(Response.ResponseStatus.FAILURE, message);
+        }
+        throw new CoalescedCallTimeoutException(message);
+    }
+
+    private static Object keyFor(String name, Request request, String[] fields) {
+        try {
+            return Arrays.asList(name, request.getClass(), Arrays.asList(ReflectionUtils.getPropertyValues(request, fields)));
+        } catch (IllegalArgumentException e) {
+            throw new AnnotationFormatError("Invalid coalescing key field for " + name + ": " + e.getMessage());
+        }
+    }
+
+    private static Request findRequest(Object[] args) {
+        Request request = null;
+        for (Object object : args) {
+            if (object instanceof Request) {
+                if (request != null) {
+                    throw new AnnotationFormatError("You can't have more than one Request object per service call!");
+                }
+                request = (Request) object;
+            }
+        }
+        return request;
+    }
+
+    private static final class InFlightCall {
+
+        private final String correlationId;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile Object result;
+
+        private volatile Throwable failure;
+
+        private InFlightCall(String correlationId) {
+            this.correlationId = correlationId;
+        }
+
+        void succeeded(Object value) {
+            result = value;
+            done.countDown();
+        }
+
+        void failed(Throwable throwable) {
+            failure = throwable;
+            done.countDown();
+        }
+
+        /**
+         * @return true if the call completed, false if the wait timed out or was interrupted
+         */
+        boolean await(long timeoutMillis) {
+            try {
+                if (timeoutMillis <= 0) {
+                    done.await();
+                    return true;
+                }
+                return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        Object outcome(String name) throws Throwable { // NOSONAR
+            if (failure != null) {
+                throw forWaiter(name, failure);
+            }
+            return result;
+        }
+
+        /**
+         * Throwing the same instance to every waiter would give them all the executing thread's stack trace.
+         */
+        private static Throwable forWaiter(String name, Throwable failure) {
+            try {
+                return failure.getClass().getConstructor(String.class, Throwable.class)
+                        .newInstance(failure.getMessage(), failure);
+            } catch (Exception e) { //NOSONAR - no usable (String, Throwable) constructor, wrap it instead
+                if (failure instanceof Error) {
+                    return failure;
+                }
+                return new CoalescedCallFailedException("Joined " + name + " call failed: " + failure, failure);
+            }
+        }
+    }
+}
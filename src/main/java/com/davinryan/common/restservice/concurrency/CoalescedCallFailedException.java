@@ -0,0 +1,12 @@
+package com.davinryan.common.restservice.concurrency;
+
+/**
+ * Thrown by {@link CoalesceServiceCallsAspect} to a caller that joined an in-flight call which failed, when the
+ * failure cannot be rebuilt as its own type. The cause is the exception the executing call threw.
+ */
+public class CoalescedCallFailedException extends RuntimeException {
+
+    public CoalescedCallFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,12 @@
+package com.davinryan.common.restservice.concurrency;
+
+/**
+ * Thrown by {@link CoalesceServiceCallsAspect} when a caller gives up waiting for an in-flight call and the method
+ * cannot return a FAILURE {@link com.davinryan.common.restservice.domain.response.Response}.
+ */
+public class CoalescedCallTimeoutException extends RuntimeException {
+
+    public CoalescedCallTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.davinryan.common.restservice.concurrency;
+
+/**
+ * Thrown by {@link LimitConcurrencyAspect} when a call is rejected and the method cannot return a FAILURE
+ * {@link com.davinryan.common.restservice.domain.response.Response}.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    public ConcurrencyLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,30 @@
+package com.davinryan.common.restservice.concurrency;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Use this tag to cap how many calls to a service method run at once, with the cap adapted to its observed latency.
+ * You'll also need to add a bean instance of {@link LimitConcurrencyAspect} to your spring application context to make
+ * this work.
+ * <p>
+ * Calls over the limit fail fast with a FAILURE {@link com.davinryan.common.restservice.domain.response.Response}, or
+ * a {@link ConcurrencyLimitExceededException} if the method cannot return a plain Response.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface LimitConcurrency {
+
+    /**
+     * Name the limit is reported under. Defaults to the method signature.
+     */
+    String name() default "";
+
+    int initialLimit() default 20;
+
+    int minLimit() default 1;
+
+    int maxLimit() default 200;
+}
@@ -0,0 +1,87 @@
+package com.davinryan.common.restservice.concurrency;
+
+import com.davinryan.common.restservice.domain.response.Response;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Add this class as a bean instance in your spring context and add the {@link LimitConcurrency} annotation to your
+ * public service method to bound how many calls it runs at once.
+ * <p>
+ * Each annotated method gets its own {@link AdaptiveConcurrencyLimit}, so a slow dependency behind one endpoint only
+ * sheds that endpoint's load instead of tying up every request thread in the container.
+ */
+@Aspect
+public class LimitConcurrencyAspect {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LimitConcurrencyAspect.class.getName());
+
+    private final ConcurrentMap<Method, AdaptiveConcurrencyLimit> limits = new ConcurrentHashMap<Method, AdaptiveConcurrencyLimit>();
+
+    @Pointcut(value = "execution(public * *(..))")
+    public void anyPublicMethod() {
+        // This method is empty because it simply provides a location for @Pointcut to locate public methods.
+    }
+
+    @Around("anyPublicMethod() && @annotation(limitConcurrency)") //NOSONAR
+    public Object limit(ProceedingJoinPoint pjp, LimitConcurrency limitConcurrency) throws Throwable { // NOSONAR
+        Method method = ((MethodSignature) pjp.getSignature()).getMethod();
+        AdaptiveConcurrencyLimit limit = limitFor(pjp, method, limitConcurrency);
+        if (!limit.tryAcquire()) {
+            return reject(method, limit);
+        }
+        long start = System.nanoTime();
+        try {
+            return pjp.proceed();
+        } finally {
+            limit.release(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return every limit, keyed by {@link LimitConcurrency#name()}
+     */
+    public Map<String, AdaptiveConcurrencyLimit> getLimits() {
+        Map<String, AdaptiveConcurrencyLimit> byName = new HashMap<String, AdaptiveConcurrencyLimit>();
+        for (AdaptiveConcurrencyLimit limit : limits.values()) {
+            byName.put(limit.getName(), limit);
+        }
+        return Collections.unmodifiableMap(byName);
+    }
+
+    private static Object reject(Method method, AdaptiveConcurrencyLimit limit) {
+        String message = limit.getName() + " is busy, concurrency limit of " + limit.getLimit() + " reached";
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(message);
+        }
+        if (method.getReturnType().isAssignableFrom(Response.class)) {
+            return new Response(Response.ResponseStatus.FAILURE, message);
+        }
+        throw new ConcurrencyLimitExceededException(message);
+    }
+
+    private AdaptiveConcurrencyLimit limitFor(ProceedingJoinPoint pjp, Method method, LimitConcurrency annotation) {
+        AdaptiveConcurrencyLimit limit = limits.get(method);
+        if (limit == null) {
+            limit = new AdaptiveConcurrencyLimit(annotation.name().isEmpty() ? pjp.getSignature().toShortString() : annotation.name(),
+                    annotation.initialLimit(), annotation.minLimit(), annotation.maxLimit());
+            AdaptiveConcurrencyLimit existing = limits.putIfAbsent(method, limit);
+            if (existing != null) {
+                limit = existing;
+            }
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,109 @@
+package com.davinryan.common.restservice.config;
+
+/**
+ * A typed configuration value named {@code [serviceName].[name]} in JNDI.
+ * <p>
+ * Declare keys as {@code public static final} fields so {@link ServiceConfigurationLoader} can find them and check
+ * their values at startup, e.g.
+ * <pre>
+ * public static final ConfigKey&lt;Integer&gt; MAX_RETRIES = ConfigKey.intKey("maxRetries", 3);
+ * </pre>
+ *
+ * @param <T> type of the value
+ */
+public abstract class ConfigKey<T> {
+
+    private final String name;
+
+    private final Class<T> type;
+
+    private final T defaultValue;
+
+    private ConfigKey(String name, Class<T> type, T defaultValue) {
+        this.name = name;
+        this.type = type;
+        this.defaultValue = defaultValue;
+    }
+
+    public static ConfigKey<String> stringKey(String name, String defaultValue) {
+        return new ConfigKey<String>(name, String.class, defaultValue) {
+            @Override
+            String parse(String raw) {
+                return raw;
+            }
+        };
+    }
+
+    public static ConfigKey<Boolean> booleanKey(String name, boolean defaultValue) {
+        return new ConfigKey<Boolean>(name, Boolean.class, defaultValue) {
+            @Override
+            Boolean parse(String raw) {
+                if ("true".equalsIgnoreCase(raw.trim())) {
+                    return Boolean.TRUE;
+                } else if ("false".equalsIgnoreCase(raw.trim())) {
+                    return Boolean.FALSE;
+                }
+                throw new IllegalArgumentException("expected true or false");
+            }
+        };
+    }
+
+    public static ConfigKey<Integer> intKey(String name, int defaultValue) {
+        return new ConfigKey<Integer>(name, Integer.class, defaultValue) {
+            @Override
+            Integer parse(String raw) {
+                return Integer.valueOf(raw.trim());
+            }
+        };
+    }
+
+    public static ConfigKey<Long> longKey(String name, long defaultValue) {
+        return new ConfigKey<Long>(name, Long.class, defaultValue) {
+            @Override
+            Long parse(String raw) {
+                return Long.valueOf(raw.trim());
+            }
+        };
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    public T getDefaultValue() {
+        return defaultValue;
+    }
+
+    abstract T parse(String raw);
+
+    /**
+     * Convert a bound JNDI value to {@code T}, or the default if {@code raw} is null.
+     *
+     * @throws ConfigurationException if {@code raw} cannot be represented as {@code T}
+     */
+    T convert(Object raw) {
+        if (raw == null) {
+            return defaultValue;
+        }
+        if (type.isInstance(raw)) {
+            return type.cast(raw);
+        }
+        if (raw instanceof String || raw instanceof Boolean || raw instanceof Number) {
+            try {
+                return parse(raw.toString());
+            } catch (IllegalArgumentException e) { //NOSONAR - reported below with the key name
+                // fall through
+            }
+        }
+        throw new ConfigurationException(name + " = '" + raw + "' is not a valid " + type.getSimpleName());
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + type.getSimpleName() + ")";
+    }
+}
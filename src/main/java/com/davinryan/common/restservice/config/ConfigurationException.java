@@ -0,0 +1,11 @@
+package com.davinryan.common.restservice.config;
+
+/**
+ * Thrown when JNDI configuration cannot be bound to its declared {@link ConfigKey} types.
+ */
+public class ConfigurationException extends RuntimeException {
+
+    public ConfigurationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,97 @@
+package com.davinryan.common.restservice.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of a service's JNDI configuration, loaded once by {@link ServiceConfigurationLoader}.
+ * <p>
+ * The current snapshot is held in a volatile reference and replaced as a whole on reload, so readers always see a
+ * consistent set of values without any locking or JNDI access.
+ */
+public final class ServiceConfiguration {
+
+    public static final ConfigKey<Boolean> DEBUG = ConfigKey.booleanKey("debug", false);
+
+    public static final ConfigKey<Boolean> STRUCTURED_LOGGING = ConfigKey.booleanKey("structuredLogging", false);
+
+    private static volatile ServiceConfiguration current =
+            new ServiceConfiguration(null, Collections.<ConfigKey<?>>emptyList(), Collections.<String, Object>emptyMap(),
+                    Collections.<String, Object>emptyMap());
+
+    private final String serviceName;
+
+    private final long loadedAt = System.currentTimeMillis();
+
+    private final boolean debug;
+
+    private final boolean structuredLogging;
+
+    private final List<ConfigKey<?>> keys;
+
+    private final Map<String, Object> typedValues;
+
+    private final Map<String, Object> rawValues;
+
+    ServiceConfiguration(String serviceName, List<ConfigKey<?>> keys, Map<String, Object> typedValues,
+                         Map<String, Object> rawValues) {
+        this.serviceName = serviceName;
+        this.keys = Collections.unmodifiableList(new ArrayList<ConfigKey<?>>(keys));
+        this.typedValues = Collections.unmodifiableMap(new HashMap<String, Object>(typedValues));
+        this.rawValues = Collections.unmodifiableMap(new HashMap<String, Object>(rawValues));
+        this.debug = get(DEBUG);
+        this.structuredLogging = get(STRUCTURED_LOGGING);
+    }
+
+    /**
+     * @return the most recently published snapshot; defaults only until {@link ServiceConfigurationLoader} has run
+     */
+    public static ServiceConfiguration current() {
+        return current;
+    }
+
+    static void publish(ServiceConfiguration configuration) {
+        current = configuration;
+    }
+
+    /**
+     * @return the value of {@code key}, or its default if it is not bound
+     * @throws ConfigurationException if {@code key} was not declared at load time and its value has the wrong type
+     */
+    public <T> T get(ConfigKey<T> key) {
+        if (typedValues.containsKey(key.getName())) {
+            return key.getType().cast(typedValues.get(key.getName()));
+        }
+        return key.convert(rawValues.get(key.getName()));
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public boolean isStructuredLogging() {
+        return structuredLogging;
+    }
+
+    public List<ConfigKey<?>> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return every value bound under {@code [serviceName].*}, keyed by the name without the service prefix
+     */
+    public Map<String, Object> getRawValues() {
+        return rawValues;
+    }
+}
@@ -0,0 +1,182 @@
+package com.davinryan.common.restservice.config;
+
+import com.davinryan.common.restservice.jee.JeeUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.naming.Binding;
+import javax.naming.InitialContext;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads a {@link ServiceConfiguration} from the {@code java:comp/env/[serviceName].*} JNDI namespace.
+ * <p>
+ * The namespace is enumerated with a single {@code listBindings} call. Declared keys that are not in the listing
+ * (e.g. bound outside {@code java:comp/env} on WebSphere) are then looked up one by one on the calling thread. Every
+ * declared key is converted to its type up front and all failures are reported together, so a bad value stops startup
+ * rather than failing a request later. Names under the prefix that match no declared key are logged as possible typos.
+ */
+public class ServiceConfigurationLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceConfigurationLoader.class.getName());
+
+    private static final String ENV_CONTEXT = "java:comp/env";
+
+    private final String serviceName;
+
+    private final List<ConfigKey<?>> keys = new ArrayList<ConfigKey<?>>();
+
+    public ServiceConfigurationLoader(String serviceName, List<ConfigKey<?>> keys) {
+        this.serviceName = serviceName;
+        this.keys.add(ServiceConfiguration.DEBUG);
+        this.keys.add(ServiceConfiguration.STRUCTURED_LOGGING);
+        for (ConfigKey<?> key : keys) {
+            if (!this.keys.contains(key)) {
+                this.keys.add(key);
+            }
+        }
+    }
+
+    public ServiceConfigurationLoader(String serviceName, ConfigKey<?>... keys) {
+        this(serviceName, Arrays.<ConfigKey<?>>asList(keys));
+    }
+
+    /**
+     * Reload the current snapshot with the same service name and keys and publish it. If loading fails the old
+     * snapshot stays in place.
+     */
+    public static ServiceConfiguration reload() {
+        ServiceConfiguration current = ServiceConfiguration.current();
+        return new ServiceConfigurationLoader(current.getServiceName(), current.getKeys()).loadAndPublish();
+    }
+
+    /**
+     * @return every {@code public static} {@link ConfigKey} field declared by {@code classNames}
+     * @throws ConfigurationException if a class cannot be loaded
+     */
+    public static List<ConfigKey<?>> keysDeclaredBy(String... classNames) {
+        List<ConfigKey<?>> keys = new ArrayList<ConfigKey<?>>();
+        for (String className : classNames) {
+            if (StringUtils.isBlank(className)) {
+                continue;
+            }
+            try {
+                Class<?> type = Class.forName(className.trim(), true, Thread.currentThread().getContextClassLoader());
+                for (Field field : type.getFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) && ConfigKey.class.isAssignableFrom(field.getType())) {
+                        keys.add((ConfigKey<?>) field.get(null));
+                    }
+                }
+            } catch (ClassNotFoundException e) { //NOSONAR
+                throw new ConfigurationException("Config key class " + className + " not found");
+            } catch (IllegalAccessException e) { //NOSONAR
+                throw new ConfigurationException("Cannot read config keys from " + className);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Load, validate and publish a new snapshot.
+     */
+    public ServiceConfiguration loadAndPublish() {
+        ServiceConfiguration configuration = load();
+        ServiceConfiguration.publish(configuration);
+        return configuration;
+    }
+
+    /**
+     * Load and validate a snapshot without publishing it.
+     *
+     * @throws ConfigurationException listing every declared key whose value has the wrong type
+     */
+    public ServiceConfiguration load() {
+        long start = System.currentTimeMillis();
+        Map<String, Object> rawValues = enumerate();
+        lookupMissing(rawValues);
+
+        Map<String, Object> typedValues = new HashMap<String, Object>();
+        List<String> errors = new ArrayList<String>();
+        for (ConfigKey<?> key : keys) {
+            try {
+                typedValues.put(key.getName(), key.convert(rawValues.get(key.getName())));
+            } catch (ConfigurationException e) {
+                errors.add(e.getMessage());
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new ConfigurationException("Invalid configuration for " + serviceName + ": " + errors);
+        }
+        for (String name : rawValues.keySet()) {
+            if (!typedValues.containsKey(name)) {
+                LOGGER.warn("{}.{} does not match any declared config key, check for typos", serviceName, name);
+            }
+        }
+        LOGGER.info("Loaded {} config values for {} in {}ms", new Object[]{rawValues.size(), serviceName, System.currentTimeMillis() - start});
+        return new ServiceConfiguration(serviceName, keys, typedValues, rawValues);
+    }
+
+    private Map<String, Object> enumerate() {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        String prefix = serviceName + ".";
+        try {
+            InitialContext context = new InitialContext();
+            try {
+                NamingEnumeration<Binding> bindings = context.listBindings(ENV_CONTEXT);
+                while (bindings.hasMore()) {
+                    Binding binding = bindings.next();
+                    if (binding.getName().startsWith(prefix)) {
+                        values.put(binding.getName().substring(prefix.length()), binding.getObject());
+                    }
+                }
+            } finally {
+                context.close();
+            }
+        } catch (NamingException e) { //NOSONAR
+            LOGGER.debug("Could not enumerate " + ENV_CONTEXT + ", falling back to individual lookups", e);
+        } catch (Throwable e2) { //NOSONAR - InitialContext throws NoClassDefFoundError when running unit tests.
+            LOGGER.debug("Could not enumerate " + ENV_CONTEXT + ", falling back to individual lookups", e2);
+        }
+        return values;
+    }
+
+    /**
+     * Look up each declared key that was not in the listing. Done on the calling thread because java:comp/env is
+     * only bound on threads the container associates with the application. Optional keys are often unbound, so
+     * misses are only logged at debug.
+     */
+    private void lookupMissing(Map<String, Object> values) {
+        try {
+            InitialContext context = new InitialContext();
+            try {
+                for (ConfigKey<?> key : keys) {
+                    if (!values.containsKey(key.getName())) {
+                        String name = serviceName + "." + key.getName();
+                        Object value = JeeUtils.lookupQuietly(context, name);
+                        if (value != null) {
+                            values.put(key.getName(), value);
+                        } else {
+                            LOGGER.debug("No JNDI value bound for {}", name);
+                        }
+                    }
+                }
+            } finally {
+                context.close();
+            }
+        } catch (NamingException e) { //NOSONAR
+            LOGGER.debug("Could not look up missing config values for " + serviceName, e);
+        } catch (Throwable e2) { //NOSONAR - InitialContext throws NoClassDefFoundError when running unit tests.
+            LOGGER.debug("Could not look up missing config values for " + serviceName, e2);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.davinryan.common.restservice.domain.codec;
+
+import com.davinryan.common.restservice.domain.request.Request;
+import com.davinryan.common.restservice.domain.response.Response;
+import com.davinryan.common.restservice.domain.response.Response.ResponseStatus;
+import com.davinryan.common.restservice.domain.response.SpringValidationFailureResponse;
+import com.davinryan.common.restservice.domain.response.StreamingResponse;
+import com.davinryan.common.restservice.domain.response.StructuredValidationFailureResponse;
+import com.davinryan.common.restservice.domain.response.SuccessResponse;
+import com.davinryan.common.restservice.domain.response.ValidationErrorPayload;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static com.davinryan.common.restservice.domain.codec.CodecSupport.readString;
+import static com.davinryan.common.restservice.domain.codec.CodecSupport.writeString;
+
+/**
+ * Compact, versioned binary form of {@link Request}, {@link Response} and their subclasses, for session replication
+ * and response caches. Unlike Java serialization it keeps the {@link Response} payload.
+ * <p>
+ * Each record is a version byte, a type byte, then for requests the correlation id and for responses the status as a
+ * byte followed by the payload as written by the {@link PayloadCodec}. Strings are length prefixed UTF-8.
+ * <p>
+ * {@link Request} subclasses are handed whole to the payload codec. {@link StreamingResponse} and unknown
+ * {@link Response} subclasses cannot be encoded. Only decode data this codec wrote: the default payload codec falls
+ * back to Java serialization for unknown payload types.
+ */
+public class BinaryDomainCodec {
+
+    static final byte VERSION = 1;
+
+    private static final byte REQUEST = 1;
+
+    private static final byte REQUEST_SUBCLASS = 2;
+
+    private static final byte RESPONSE = 10;
+
+    private static final byte SUCCESS_RESPONSE = 11;
+
+    private static final byte SPRING_VALIDATION_FAILURE_RESPONSE = 12;
+
+    private static final byte STRUCTURED_VALIDATION_FAILURE_RESPONSE = 13;
+
+    private static final byte NO_STATUS = -1;
+
+    private static final ResponseStatus[] STATUSES = ResponseStatus.values();
+
+    private final PayloadCodec payloadCodec;
+
+    public BinaryDomainCodec() {
+        this(new StandardPayloadCodec());
+    }
+
+    public BinaryDomainCodec(PayloadCodec payloadCodec) {
+        this.payloadCodec = payloadCodec;
+    }
+
+    public byte[] encode(Request request) throws IOException {
+        ByteArrayStreams.Output bytes = new ByteArrayStreams.Output(64);
+        write(request, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    public byte[] encode(Response response) throws IOException {
+        ByteArrayStreams.Output bytes = new ByteArrayStreams.Output(256);
+        write(response, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    public Request decodeRequest(byte[] bytes) throws IOException {
+        return readRequest(new DataInputStream(new ByteArrayStreams.Input(bytes)));
+    }
+
+    public Response decodeResponse(byte[] bytes) throws IOException {
+        return readResponse(new DataInputStream(new ByteArrayStreams.Input(bytes)));
+    }
+
+    public void write(Request request, DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        if (request.getClass() == Request.class) {
+            out.writeByte(REQUEST);
+            writeString(out, request.getCorrelationId());
+        } else {
+            out.writeByte(REQUEST_SUBCLASS);
+            payloadCodec.write(request, out);
+        }
+    }
+
+    public Request readRequest(DataInput in) throws IOException {
+        readVersion(in);
+        byte type = in.readByte();
+        if (type == REQUEST) {
+            Request request = new Request();
+            request.setCorrelationId(readString(in));
+            return request;
+        } else if (type == REQUEST_SUBCLASS) {
+            return (Request) payloadCodec.read(in);
+        }
+        throw new IOException("Not a request record, type " + type);
+    }
+
+    public void write(Response response, DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeByte(typeOf(response));
+        out.writeByte(response.getStatus() == null ? NO_STATUS : response.getStatus().ordinal());
+        payloadCodec.write(response.getPayload(), out);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Response readResponse(DataInput in) throws IOException {
+        readVersion(in);
+        byte type = in.readByte();
+        byte statusOrdinal = in.readByte();
+        if (statusOrdinal >= STATUSES.length || statusOrdinal < NO_STATUS) {
+            throw new IOException("Unknown response status " + statusOrdinal);
+        }
+        ResponseStatus status = statusOrdinal == NO_STATUS ? null : STATUSES[statusOrdinal];
+        Object payload = payloadCodec.read(in);
+        Response response;
+        switch (type) {
+            case RESPONSE:
+                return new Response(status, payload);
+            case SUCCESS_RESPONSE:
+                response = new SuccessResponse(payload);
+                break;
+            case SPRING_VALIDATION_FAILURE_RESPONSE:
+                response = new SpringValidationFailureResponse((List<String>) payload);
+                break;
+            case STRUCTURED_VALIDATION_FAILURE_RESPONSE:
+                response = new StructuredValidationFailureResponse((ValidationErrorPayload) payload);
+                break;
+            default:
+                throw new IOException("Not a response record, type " + type);
+        }
+        // status is mutable, so keep whatever was encoded rather than the subclass default
+        response.setStatus(status);
+        return response;
+    }
+
+    private static byte typeOf(Response response) throws IOException {
+        Class<?> type = response.getClass();
+        if (type == Response.class) {
+            return RESPONSE;
+        } else if (type == SuccessResponse.class) {
+            return SUCCESS_RESPONSE;
+        } else if (type == SpringValidationFailureResponse.class) {
+            return SPRING_VALIDATION_FAILURE_RESPONSE;
+        } else if (type == StructuredValidationFailureResponse.class) {
+            return STRUCTURED_VALIDATION_FAILURE_RESPONSE;
+        }
+        throw new IOException("Cannot encode response of type " + type.getName());
+    }
+
+    private static void readVersion(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported codec version " + version);
+        }
+    }
+}
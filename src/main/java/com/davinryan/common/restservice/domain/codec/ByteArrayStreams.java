@@ -0,0 +1,79 @@
+package com.davinryan.common.restservice.domain.codec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Unsynchronized replacements for {@link java.io.ByteArrayOutputStream} and {@link java.io.ByteArrayInputStream}.
+ * The codecs write byte by byte, and the JDK versions take a lock on every call.
+ */
+final class ByteArrayStreams {
+
+    private ByteArrayStreams() {
+    }
+
+    static final class Output extends OutputStream {
+
+        private byte[] buffer;
+
+        private int count;
+
+        Output(int initialSize) {
+            buffer = new byte[initialSize];
+        }
+
+        @Override
+        public void write(int b) {
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length << 1);
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            if (count + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, count + length));
+            }
+            System.arraycopy(bytes, offset, buffer, count, length);
+            count += length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, count);
+        }
+    }
+
+    static final class Input extends InputStream {
+
+        private final byte[] buffer;
+
+        private int position;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return position < buffer.length ? buffer[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (position >= buffer.length) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.length - position);
+            System.arraycopy(buffer, position, bytes, offset, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.length - position;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.davinryan.common.restservice.domain.codec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes the payload of a {@link com.davinryan.common.restservice.domain.response.Response} for
+ * {@link BinaryDomainCodec}. Implementations must read back exactly what they wrote.
+ */
+public interface PayloadCodec {
+
+    void write(Object payload, DataOutput out) throws IOException;
+
+    Object read(DataInput in) throws IOException;
+}
@@ -0,0 +1,229 @@
+package com.davinryan.common.restservice.domain.codec;
+
+import com.davinryan.common.restservice.domain.response.ValidationError;
+import com.davinryan.common.restservice.domain.response.ValidationErrorPayload;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.davinryan.common.restservice.domain.codec.CodecSupport.readBytes;
+import static com.davinryan.common.restservice.domain.codec.CodecSupport.readString;
+import static com.davinryan.common.restservice.domain.codec.CodecSupport.readVarInt;
+import static com.davinryan.common.restservice.domain.codec.CodecSupport.readVarLong;
+import static com.davinryan.common.restservice.domain.codec.CodecSupport.writeBytes;
+import static com.davinryan.common.restservice.domain.codec.CodecSupport.writeString;
+import static com.davinryan.common.restservice.domain.codec.CodecSupport.writeVarInt;
+import static com.davinryan.common.restservice.domain.codec.CodecSupport.writeVarLong;
+
+/**
+ * Tagged encoding of the payloads our services return: null, strings, numbers, booleans, byte arrays, lists, string
+ * keyed maps and {@link ValidationErrorPayload}. Anything else that is {@link Serializable} falls back to Java
+ * serialization, so it still round trips but without the size and speed benefit. That includes every
+ * {@link com.davinryan.common.restservice.domain.request.Request} subclass, which {@link BinaryDomainCodec} hands
+ * whole to the payload codec. Serialized classes are resolved through the thread context class loader, so payload
+ * types deployed with the application are found when this library is loaded by a parent class loader.
+ */
+public class StandardPayloadCodec implements PayloadCodec {
+
+    private static final byte NULL = 0;
+
+    private static final byte STRING = 1;
+
+    private static final byte INTEGER = 2;
+
+    private static final byte LONG = 3;
+
+    private static final byte BOOLEAN_TRUE = 4;
+
+    private static final byte BOOLEAN_FALSE = 5;
+
+    private static final byte DOUBLE = 6;
+
+    private static final byte BYTES = 7;
+
+    private static final byte LIST = 8;
+
+    private static final byte MAP = 9;
+
+    private static final byte VALIDATION_ERRORS = 10;
+
+    private static final byte SERIALIZED = 127;
+
+    @Override
+    public void write(Object payload, DataOutput out) throws IOException {
+        if (payload == null) {
+            out.writeByte(NULL);
+        } else if (payload instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) payload);
+        } else if (payload instanceof Integer) {
+            out.writeByte(INTEGER);
+            writeVarLong(out, (Integer) payload);
+        } else if (payload instanceof Long) {
+            out.writeByte(LONG);
+            writeVarLong(out, (Long) payload);
+        } else if (payload instanceof Boolean) {
+            out.writeByte((Boolean) payload ? BOOLEAN_TRUE : BOOLEAN_FALSE);
+        } else if (payload instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) payload);
+        } else if (payload instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) payload);
+        } else if (payload instanceof List) {
+            List<?> list = (List<?>) payload;
+            out.writeByte(LIST);
+            writeVarInt(out, list.size());
+            for (Object element : list) {
+                write(element, out);
+            }
+        } else if (payload instanceof Map && hasStringKeys((Map<?, ?>) payload)) {
+            Map<?, ?> map = (Map<?, ?>) payload;
+            out.writeByte(MAP);
+            writeVarInt(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, (String) entry.getKey());
+                write(entry.getValue(), out);
+            }
+        } else if (payload instanceof ValidationErrorPayload) {
+            writeValidationErrors((ValidationErrorPayload) payload, out);
+        } else if (payload instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            writeBytes(out, serialize(payload));
+        } else {
+            throw new IOException("Cannot encode payload of type " + payload.getClass().getName());
+        }
+    }
+
+    @Override
+    public Object read(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return (int) readVarLong(in);
+            case LONG:
+                return readVarLong(in);
+            case BOOLEAN_TRUE:
+                return Boolean.TRUE;
+            case BOOLEAN_FALSE:
+                return Boolean.FALSE;
+            case DOUBLE:
+                return in.readDouble();
+            case BYTES:
+                return readBytes(in);
+            case LIST:
+                int size = readVarInt(in);
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read(in));
+                }
+                return list;
+            case MAP:
+                int entries = readVarInt(in);
+                Map<String, Object> map = new LinkedHashMap<String, Object>(entries * 4 / 3 + 1);
+                for (int i = 0; i < entries; i++) {
+                    String key = readString(in);
+                    map.put(key, read(in));
+                }
+                return map;
+            case VALIDATION_ERRORS:
+                return readValidationErrors(in);
+            case SERIALIZED:
+                return deserialize(readBytes(in));
+            default:
+                throw new IOException("Unknown payload tag " + tag);
+        }
+    }
+
+    private void writeValidationErrors(ValidationErrorPayload payload, DataOutput out) throws IOException {
+        out.writeByte(VALIDATION_ERRORS);
+        writeVarInt(out, payload.getTotalErrorCount());
+        writeVarInt(out, payload.getErrors().size());
+        for (ValidationError error : payload.getErrors()) {
+            writeString(out, error.getField());
+            write(error.getRejectedValue(), out);
+            writeString(out, error.getCode());
+            writeString(out, error.getMessage());
+        }
+    }
+
+    private ValidationErrorPayload readValidationErrors(DataInput in) throws IOException {
+        int total = readVarInt(in);
+        int size = readVarInt(in);
+        List<ValidationError> errors = new ArrayList<ValidationError>(size);
+        for (int i = 0; i < size; i++) {
+            String field = readString(in);
+            Object rejectedValue = read(in);
+            String code = readString(in);
+            errors.add(new ValidationError(field, rejectedValue, code, readString(in)));
+        }
+        return new ValidationErrorPayload(errors, total);
+    }
+
+    private static boolean hasStringKeys(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] serialize(Object payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(payload);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException {
+        ObjectInputStream in = new ContextClassLoaderObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot decode payload: " + e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Resolves classes through the thread context class loader, falling back to the default lookup.
+     */
+    private static final class ContextClassLoaderObjectInputStream extends ObjectInputStream {
+
+        private ContextClassLoaderObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) { //NOSONAR - try the default lookup instead
+                    // fall through
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -12,6 +12,8 @@ import java.util.List;
 
 /**
  * Useful class for constructing meaningful responses that indicated what validation errors occurred.
+ * <p>
+ * Clients that need to act on individual errors should use {@link StructuredValidationFailureResponse} instead.
  */
 public class SpringValidationFailureResponse extends Response {
 
@@ -19,6 +21,13 @@ public class SpringValidationFailureResponse extends Response {
         super(ResponseStatus.FAILURE, generatePayload(bindingResult));
     }
 
+    /**
+     * Recreate a response from errors generated earlier, e.g. when decoding a cached response.
+     */
+    public SpringValidationFailureResponse(List<String> errors) {
+        super(ResponseStatus.FAILURE, errors);
+    }
+
     private static List<String> generatePayload(BindingResult bindingResult) {
         Iterator<ObjectError> itr = bindingResult.getAllErrors().iterator();
         List<String> errors = new ArrayList<String>();
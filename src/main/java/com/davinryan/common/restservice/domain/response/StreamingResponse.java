@@ -0,0 +1,52 @@
+package com.davinryan.common.restservice.domain.response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A successful response whose payload is produced element by element while it is written, so large results never
+ * have to be held in memory. Written by
+ * {@link com.davinryan.common.restservice.web.StreamingResponseHttpMessageConverter}.
+ * <p>
+ * The source can be any {@link Iterator}; if it also implements {@link Closeable} (e.g. a database cursor) it is
+ * closed once writing finishes or fails. A streaming response can only be written once.
+ *
+ * @param <T> element type
+ */
+public class StreamingResponse<T> extends Response {
+
+    private final AtomicBoolean consumed = new AtomicBoolean();
+
+    public StreamingResponse(Iterator<? extends T> elements) {
+        super(ResponseStatus.SUCCESS, elements);
+    }
+
+    public StreamingResponse(Iterable<? extends T> elements) {
+        this(elements.iterator());
+    }
+
+    /**
+     * Hand out the element source for writing.
+     *
+     * @throws IllegalStateException if it has already been taken
+     */
+    @SuppressWarnings("unchecked")
+    public Iterator<? extends T> takeElements() {
+        if (!consumed.compareAndSet(false, true)) {
+            throw new IllegalStateException("StreamingResponse has already been written");
+        }
+        return (Iterator<? extends T>) getPayload();
+    }
+
+    /**
+     * Close the element source if it is {@link Closeable}.
+     */
+    public void close() throws IOException {
+        Object elements = getPayload();
+        if (elements instanceof Closeable) {
+            ((Closeable) elements).close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.davinryan.common.restservice.domain.response;
+
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.ObjectError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validation failure response whose payload is a {@link ValidationErrorPayload} of field, rejected value, constraint
+ * code and message, so clients do not have to parse the sentences of {@link SpringValidationFailureResponse}.
+ * <p>
+ * At most {@code maxErrors} errors are rendered; the payload still reports the total count.
+ */
+public class StructuredValidationFailureResponse extends Response {
+
+    public static final int DEFAULT_MAX_ERRORS = 100;
+
+    public StructuredValidationFailureResponse(BindingResult bindingResult) {
+        this(bindingResult, DEFAULT_MAX_ERRORS);
+    }
+
+    public StructuredValidationFailureResponse(BindingResult bindingResult, int maxErrors) {
+        super(ResponseStatus.FAILURE, generatePayload(bindingResult, maxErrors));
+    }
+
+    /**
+     * Recreate a response from a payload generated earlier, e.g. when decoding a cached response.
+     */
+    public StructuredValidationFailureResponse(ValidationErrorPayload payload) {
+        super(ResponseStatus.FAILURE, payload);
+    }
+
+    private static ValidationErrorPayload generatePayload(BindingResult bindingResult, int maxErrors) {
+        int total = bindingResult.getErrorCount();
+        if (total == 0 || maxErrors <= 0) {
+            return new ValidationErrorPayload(Collections.<ValidationError>emptyList(), total);
+        }
+        List<ObjectError> allErrors = bindingResult.getAllErrors();
+        int rendered = Math.min(maxErrors, allErrors.size());
+        List<ValidationError> errors = new ArrayList<ValidationError>(rendered);
+        for (int i = 0; i < rendered; i++) {
+            ObjectError error = allErrors.get(i);
+            if (error instanceof FieldError) {
+                FieldError fieldError = (FieldError) error;
+                errors.add(new ValidationError(fieldError.getField(), fieldError.getRejectedValue(), error.getCode(),
+                        error.getDefaultMessage()));
+            } else {
+                errors.add(new ValidationError(error.getObjectName(), null, error.getCode(), error.getDefaultMessage()));
+            }
+        }
+        return new ValidationErrorPayload(Collections.unmodifiableList(errors), total);
+    }
+}
@@ -0,0 +1,59 @@
+package com.davinryan.common.restservice.domain.response;
+
+import java.io.Serializable;
+
+/**
+ * One validation failure as reported by {@link StructuredValidationFailureResponse}.
+ */
+public class ValidationError implements Serializable {
+
+    private final String field;
+
+    private final transient Object rejectedValue;
+
+    private final String code;
+
+    private final String message;
+
+    public ValidationError(String field, Object rejectedValue, String code, String message) {
+        this.field = field;
+        this.rejectedValue = rejectedValue;
+        this.code = code;
+        this.message = message;
+    }
+
+    /**
+     * @return the field path, or the object name for errors that apply to the whole object
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return the value that failed validation, null for object level errors
+     */
+    public Object getRejectedValue() {
+        return rejectedValue;
+    }
+
+    /**
+     * @return the constraint that failed, e.g. NotNull or SumOfFieldsShouldNotExceedValue
+     */
+    public String getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "ValidationError{" +
+                "field='" + field + '\'' +
+                ", rejectedValue=" + rejectedValue +
+                ", code='" + code + '\'' +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,42 @@
+package com.davinryan.common.restservice.domain.response;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Payload of a {@link StructuredValidationFailureResponse}: the rendered errors plus how many there were in total.
+ */
+public class ValidationErrorPayload implements Serializable {
+
+    private final List<ValidationError> errors;
+
+    private final int totalErrorCount;
+
+    public ValidationErrorPayload(List<ValidationError> errors, int totalErrorCount) {
+        this.errors = errors;
+        this.totalErrorCount = totalErrorCount;
+    }
+
+    public List<ValidationError> getErrors() {
+        return errors;
+    }
+
+    public int getTotalErrorCount() {
+        return totalErrorCount;
+    }
+
+    /**
+     * @return true if some errors were left out because of the error cap
+     */
+    public boolean isTruncated() {
+        return totalErrorCount > errors.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ValidationErrorPayload{" +
+                "errors=" + errors +
+                ", totalErrorCount=" + totalErrorCount +
+                '}';
+    }
+}
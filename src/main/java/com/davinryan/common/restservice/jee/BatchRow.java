@@ -0,0 +1,81 @@
+package com.davinryan.common.restservice.jee;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The row currently being bound by a {@link RowBinder}.
+ * <p>
+ * Use {@link #getStatement()} for ordinary parameters. Large text should go through {@link #setCharacterStream} so
+ * the driver streams it; the reader is kept open until its batch has been executed and then closed.
+ */
+public class BatchRow {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchRow.class.getName());
+
+    private final PreparedStatement statement;
+
+    private final Connection connection;
+
+    private final List<Closeable> pending = new ArrayList<Closeable>();
+
+    BatchRow(PreparedStatement statement, Connection connection) {
+        this.statement = statement;
+        this.connection = connection;
+    }
+
+    public PreparedStatement getStatement() {
+        return statement;
+    }
+
+    /**
+     * @return the unwrapped connection the statement was prepared on, for creating vendor types such as XMLType
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Stream {@code reader} into a CLOB/XML parameter.
+     */
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        pending.add(reader);
+        statement.setCharacterStream(parameterIndex, reader);
+    }
+
+    /**
+     * Stream {@code reader} into a CLOB/XML parameter when its length in characters is known, which some drivers
+     * need to avoid buffering.
+     */
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        pending.add(reader);
+        statement.setCharacterStream(parameterIndex, reader, length);
+    }
+
+    /**
+     * Close something once the current batch has been executed, e.g. a vendor object created by the binder.
+     */
+    public void closeAfterBatch(Closeable closeable) {
+        pending.add(closeable);
+    }
+
+    void closePending() {
+        for (Closeable closeable : pending) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close batch resource", e);
+            }
+        }
+        pending.clear();
+    }
+}
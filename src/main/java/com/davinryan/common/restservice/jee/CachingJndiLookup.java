@@ -0,0 +1,183 @@
+package com.davinryan.common.restservice.jee;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caching front end to {@link JeeUtils#jndiLookup(String, Object)} for values read on hot paths such as per request
+ * feature flags.
+ * <p>
+ * A single {@link InitialContext} is shared by all lookups and rebuilt if it fails. Found values are cached for
+ * {@code ttlMillis} and names that have never been found for {@code negativeTtlMillis}. Once an entry goes stale the
+ * first caller to notice looks it up again on its own thread while other callers keep getting the cached value, so
+ * changes made in the admin console are picked up without a thread of our own. If looking up a value that was found
+ * before fails, the last value found is kept rather than replaced by the default.
+ * <p>
+ * Call {@link #shutdown()} when the application stops, {@link com.davinryan.common.restservice.logging.LoggingInitialiser}
+ * does this for the shared instance.
+ */
+public class CachingJndiLookup {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingJndiLookup.class.getName());
+
+    public static final long DEFAULT_TTL_MILLIS = 60000;
+
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 30000;
+
+    private static final CachingJndiLookup SHARED = new CachingJndiLookup(DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+
+    private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+
+    private final long ttlNanos;
+
+    private final long negativeTtlNanos;
+
+    private final Object contextLock = new Object();
+
+    private InitialContext context;
+
+    public CachingJndiLookup(long ttlMillis, long negativeTtlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+    }
+
+    /**
+     * @return the instance used by {@link JeeUtils#cachedJndiLookup(String, Object)}
+     */
+    public static CachingJndiLookup getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Same contract as {@link JeeUtils#jndiLookup(String, Object)} but answered from the cache where possible.
+     */
+    public <T> T lookup(String name, T defaultValue) {
+        if (StringUtils.isBlank(name)) {
+            return defaultValue;
+        }
+        Entry entry = cache.get(name);
+        if (entry == null) {
+            entry = new Entry(load(name));
+            Entry existing = cache.putIfAbsent(name, entry);
+            if (existing != null) {
+                entry = existing;
+            } else {
+                LOGGER.info("{} = {}", name, entry.value);
+            }
+        } else if (isStale(entry) && entry.refreshing.compareAndSet(false, true)) {
+            entry = refresh(name, entry);
+        }
+        if (entry.value == null) {
+            return defaultValue;
+        }
+        // The caller chooses T to match what is bound under name, exactly as with JeeUtils.jndiLookup
+        @SuppressWarnings("unchecked")
+        T value = (T) entry.value;
+        return value;
+    }
+
+    /**
+     * Drop {@code name} so the next call looks it up synchronously.
+     */
+    public void invalidate(String name) {
+        cache.remove(name);
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Forget every cached value and close the shared context.
+     */
+    public void shutdown() {
+        cache.clear();
+        synchronized (contextLock) {
+            closeContext();
+        }
+    }
+
+    private boolean isStale(Entry entry) {
+        long age = System.nanoTime() - entry.loadedAt;
+        return age > (entry.value == null ? negativeTtlNanos : ttlNanos);
+    }
+
+    /**
+     * Look up a stale entry again on the calling thread, keeping its value if a value found before can no longer be
+     * found.
+     *
+     * @return the entry now cached for {@code name}
+     */
+    private Entry refresh(String name, Entry stale) {
+        Object value = load(name);
+        Entry refreshed;
+        if (value == null && stale.value != null) {
+            LOGGER.warn("Failed to refresh JNDI parameter: " + name + ". Keeping '" + stale.value + "'.");
+            refreshed = new Entry(stale.value);
+        } else {
+            refreshed = new Entry(value);
+            if (!equal(value, stale.value)) {
+                LOGGER.info("{} changed to {}", name, value);
+            }
+        }
+        return cache.replace(name, stale, refreshed) ? refreshed : stale;
+    }
+
+    private Object load(String name) {
+        synchronized (contextLock) {
+            try {
+                if (context == null) {
+                    context = new InitialContext();
+                }
+                return JeeUtils.lookupEitherName(context, name);
+            } catch (NamingException e) { //NOSONAR
+                LOGGER.error("Failed to load JNDI parameter: " + name);
+                closeContext();
+            } catch (Throwable e2) { //NOSONAR - InitialContext throws NoClassDefFoundError when running unit tests.
+                LOGGER.error("Failed to load JNDI parameter: " + name); //NOSONAR
+                closeContext();
+            }
+            return null;
+        }
+    }
+
+    private void closeContext() {
+        if (context != null) {
+            try {
+                context.close();
+            } catch (NamingException e) { //NOSONAR
+                LOGGER.debug("Failed to close InitialContext", e);
+            }
+            context = null;
+        }
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+
+        private final long loadedAt = System.nanoTime();
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.davinryan.common.restservice.jee;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Turns a container managed {@link Connection} into the connection that statements should be prepared on, e.g. the
+ * vendor connection needed for Oracle XMLType.
+ */
+public interface ConnectionUnwrapper {
+
+    /**
+     * Uses the pooled connection as is. Suitable for plain JDBC types and embedded databases such as H2.
+     */
+    ConnectionUnwrapper NONE = new ConnectionUnwrapper() {
+        @Override
+        public Connection unwrap(Connection connection) {
+            return connection;
+        }
+    };
+
+    /**
+     * @param connection connection borrowed from the {@link javax.sql.DataSource}; the caller still closes it
+     * @return the connection to use, which may be {@code connection} itself
+     */
+    Connection unwrap(Connection connection) throws SQLException;
+}
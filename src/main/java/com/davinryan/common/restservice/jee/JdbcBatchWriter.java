@@ -0,0 +1,221 @@
+package com.davinryan.common.restservice.jee;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes rows to a {@link DataSource} in JDBC batches, replacing one round trip per row.
+ * <p>
+ * Rows are bound by a {@link RowBinder} and executed every {@code batchSize} rows. Large XML/CLOB values can be
+ * streamed from a {@link java.io.Reader} via {@link BatchRow#setCharacterStream}. A {@link Session} keeps one
+ * transaction and caches its prepared statements by SQL, so writing a form header and its lines reuses the same
+ * statements. Statements are prepared on the connection returned by the {@link ConnectionUnwrapper}, e.g. a
+ * {@link VendorConnectionUnwrapper} for Oracle XMLType, or {@link ConnectionUnwrapper#NONE} for H2.
+ */
+public class JdbcBatchWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdbcBatchWriter.class.getName());
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final DataSource dataSource;
+
+    private final ConnectionUnwrapper connectionUnwrapper;
+
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    public JdbcBatchWriter(DataSource dataSource) {
+        this(dataSource, ConnectionUnwrapper.NONE);
+    }
+
+    public JdbcBatchWriter(DataSource dataSource, ConnectionUnwrapper connectionUnwrapper) {
+        this.dataSource = dataSource;
+        this.connectionUnwrapper = connectionUnwrapper;
+    }
+
+    /**
+     * Number of rows bound before the batch is sent to the database.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Write {@code items} with {@code sql} in a transaction of their own.
+     *
+     * @return number of rows written
+     */
+    public <T> int write(String sql, Iterable<? extends T> items, RowBinder<T> binder) throws SQLException {
+        Session session = openSession();
+        try {
+            int written = session.write(sql, items, binder);
+            session.commit();
+            return written;
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Open a transactional session. The caller must {@link Session#commit()} and always {@link Session#close()} it;
+     * closing an uncommitted session rolls it back.
+     */
+    public Session openSession() throws SQLException {
+        Connection pooled = dataSource.getConnection();
+        try {
+            return new Session(pooled, connectionUnwrapper.unwrap(pooled), batchSize);
+        } catch (SQLException e) {
+            pooled.close();
+            throw e;
+        } catch (RuntimeException e) {
+            pooled.close();
+            throw e;
+        }
+    }
+
+    /**
+     * A connection, transaction and statement cache shared by several writes.
+     */
+    public static class Session {
+
+        private final Connection pooled;
+
+        private final Connection connection;
+
+        private final int batchSize;
+
+        private final boolean autoCommit;
+
+        private final Map<String, BatchRow> statements = new HashMap<String, BatchRow>();
+
+        private boolean committed;
+
+        Session(Connection pooled, Connection connection, int batchSize) throws SQLException {
+            this.pooled = pooled;
+            this.connection = connection;
+            this.batchSize = batchSize;
+            this.autoCommit = connection.getAutoCommit();
+            if (autoCommit) {
+                connection.setAutoCommit(false);
+            }
+        }
+
+        /**
+         * Bind and execute {@code items} in batches. Nothing is visible to other transactions until {@link #commit()}.
+         *
+         * @return number of rows written
+         */
+        public <T> int write(String sql, Iterable<? extends T> items, RowBinder<T> binder) throws SQLException {
+            // Anything bound from here on is uncommitted, even if binding or executing fails part way
+            committed = false;
+            BatchRow row = prepare(sql);
+            PreparedStatement statement = row.getStatement();
+            int pending = 0;
+            int written = 0;
+            boolean executed = false;
+            try {
+                for (T item : items) {
+                    binder.bind(row, item);
+                    statement.addBatch();
+                    if (++pending == batchSize) {
+                        written += execute(row);
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    written += execute(row);
+                }
+                executed = true;
+            } finally {
+                if (!executed) {
+                    // The statement is cached, so don't let the next write on this session execute these rows
+                    clearBatchQuietly(statement);
+                }
+                row.closePending();
+            }
+            LOGGER.debug("Wrote {} rows with {}", written, sql);
+            return written;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public void commit() throws SQLException {
+            connection.commit();
+            committed = true;
+        }
+
+        /**
+         * Roll back anything not committed, close cached statements and return the connection to the pool.
+         */
+        public void close() throws SQLException {
+            try {
+                if (!committed) {
+                    connection.rollback();
+                }
+                if (autoCommit) {
+                    connection.setAutoCommit(true);
+                }
+            } finally {
+                for (BatchRow row : statements.values()) {
+                    closeQuietly(row.getStatement());
+                }
+                statements.clear();
+                pooled.close();
+            }
+        }
+
+        private BatchRow prepare(String sql) throws SQLException {
+            BatchRow row = statements.get(sql);
+            if (row == null) {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                statement.setPoolable(true);
+                row = new BatchRow(statement, connection);
+                statements.put(sql, row);
+            }
+            return row;
+        }
+
+        private static int execute(BatchRow row) throws SQLException {
+            int[] counts = row.getStatement().executeBatch();
+            row.closePending();
+            int written = 0;
+            for (int count : counts) {
+                // SUCCESS_NO_INFO (-2) means the row was written but the driver did not count it
+                written += count == PreparedStatement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+            }
+            return written;
+        }
+
+        private static void clearBatchQuietly(PreparedStatement statement) {
+            try {
+                statement.clearBatch();
+            } catch (SQLException e) {
+                LOGGER.debug("Failed to clear batch", e);
+            }
+        }
+
+        private static void closeQuietly(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                LOGGER.debug("Failed to close statement", e);
+            }
+        }
+    }
+}
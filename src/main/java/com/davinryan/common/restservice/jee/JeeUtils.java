@@ -6,8 +6,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
-import javax.sql.DataSource;
-import java.sql.Connection;
 
 /**
  * Utility to help make container tasks easier.
@@ -16,55 +14,16 @@ public class JeeUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JeeUtils.class.getName());
 
-    public static Connection getOracleConnection(DataSource dataSource) {
-        return null;
-    }
-//    /**
-//     * If running on IBM WAS returns a native {@link Connection} from {@code dataSource} {@link DataSource} otherwise
-//     * a wrapped OracleConnection is returned. This is needed for {@link XMLType} activities.
-//     * <p>
-//     * WARNING: if you are getting the error in the logs just ignore it because the OracleConnection tries to run close() but this fails as this is managed by the container
-//     * because it isn't following JDBC 4.0 standards.
-//     * "J2CA0216I: The Connection Manager received a fatal connection error from the Resource Adapter for resource jdbc/egateway."
-//     *
-//     * @return the {@link Connection} from the {@code dataSource} {@link DataSource} in this {@code
-//     * JdbcFormSubmissionDao} instance.
-//     * @throws SQLException
-//     */
-//    public Connection getOracleConnection(DataSource dataSource) throws SQLException {
-//        Connection connection;
-//        if (runningInIBMWASContainer()) {
-//            LOGGER.debug("We are running on IBM so using WSCallHelper.getNativeConnection to get a connection");
-//            connection = WSCallHelper.getNativeConnection(dataSource.getConnection());
-//        } else {
-//            // Required for working with oracle XML type
-//            LOGGER.debug("We are running on a normal JEE server so using getOracleConnection.unwrap(OracleConnection.class)");
-//            connection = dataSource.getConnection().unwrap(OracleConnection.class);
-//        }
-//        return connection;
-//    }
+    private static final String ORACLE_CONNECTION = "oracle.jdbc.OracleConnection";
+
+    private static final VendorConnectionUnwrapper ORACLE_UNWRAPPER = new VendorConnectionUnwrapper(ORACLE_CONNECTION);
 
-//    /**
-//     * Useful method to work out if we are running in an IBM WAS EE server or not. This will drive what
-//     * SAXParserFactory, DocumentBuilderFactory, TranformerFactory or Oracleconnection you load at run time.
-//     * @return true if in an IBM container
-//     */
-//    public Boolean runningInIBMWASContainer() {
-//    /*
-//     * We know that IBM uses their own forked version of the JVM which doesn't use the following SAX parser. So
-//     * this is a cheap and easy way of checking if we are using IBM
-//     * @return
-//     */
-//        if (runningInIBMWASContainer == null) {
-//            try {
-//                Class.forName("com.sun.org.apache.xerces.internal.jaxp.SAXParserFactoryImpl", false, Thread.currentThread().getContextClassLoader());
-//                runningInIBMWASContainer = false;
-//            } catch (ClassNotFoundException e) { // NOSONAR
-//                runningInIBMWASContainer = true;
-//            }
-//        }
-//        return runningInIBMWASContainer;
-//    }
+    /**
+     * @return a {@link ConnectionUnwrapper} that yields native Oracle connections, on IBM WAS or elsewhere
+     */
+    public static ConnectionUnwrapper oracleConnectionUnwrapper() {
+        return ORACLE_UNWRAPPER;
+    }
 
     /**
      * Magic function that can get JNDI value from any JEE container e.g. tomcat or IBM etc...
@@ -81,13 +40,9 @@ public class JeeUtils {
         }
         try {
             InitialContext context = new InitialContext();
-            T value = jndiLookup(context, "java:comp/env/" + name);
-            if (value == null) {
-                value = jndiLookup(context, name);
-                if (value == null) {
-                    LOGGER.error("Giving up finding jndi parameter, I'm out of ideas. This must be an IBM product :(");
-                }
-            }
+            // The caller chooses T to match what is bound under name, as it does for the default value
+            @SuppressWarnings("unchecked")
+            T value = (T) lookupEitherName(context, name);
             LOGGER.info("{} = {}", name, value);
             if (value != null) {
                 return value;
@@ -101,10 +56,44 @@ public class JeeUtils {
         return defaultValue;
     }
 
-    private static <T> T jndiLookup(InitialContext context, String jndiName) {
-        T value = null;
+    /**
+     * Same as {@link #jndiLookup(String, Object)} but served from {@link CachingJndiLookup#getShared()}, so it is cheap
+     * enough to call per request. Values are looked up again by the first call after they are older than
+     * {@link CachingJndiLookup#DEFAULT_TTL_MILLIS}.
+     */
+    public static <T> T cachedJndiLookup(String name, T defaultValue) {
+        return CachingJndiLookup.getShared().lookup(name, defaultValue);
+    }
+
+    /**
+     * Try {@code java:comp/env/[name]} then the bare {@code name}.
+     * @return the value or null if neither name is bound
+     */
+    static Object lookupEitherName(InitialContext context, String name) {
+        Object value = lookupQuietly(context, name);
+        if (value == null) {
+            LOGGER.error("Giving up finding jndi parameter, I'm out of ideas. This must be an IBM product :(");
+        }
+        return value;
+    }
+
+    /**
+     * Same lookup as {@link #jndiLookup(String, Object)}, for callers that expect some names to be unbound: misses are
+     * only logged at debug.
+     * @return the value of {@code java:comp/env/[name]} or the bare {@code name}, or null if neither is bound
+     */
+    public static Object lookupQuietly(InitialContext context, String name) {
+        Object value = jndiLookup(context, "java:comp/env/" + name);
+        if (value == null) {
+            value = jndiLookup(context, name);
+        }
+        return value;
+    }
+
+    private static Object jndiLookup(InitialContext context, String jndiName) {
+        Object value = null;
         try {
-            value = (T) context.lookup(jndiName);
+            value = context.lookup(jndiName);
             LOGGER.debug("Found it. JndiName '" + jndiName + "' worked.");
         } catch (NamingException e) {
             LOGGER.debug("Failed to find jndi parmeter '" + jndiName + "'", e);
@@ -0,0 +1,13 @@
+package com.davinryan.common.restservice.jee;
+
+import java.sql.SQLException;
+
+/**
+ * Binds one item to the parameters of a batched statement written by {@link JdbcBatchWriter}.
+ *
+ * @param <T> item type
+ */
+public interface RowBinder<T> {
+
+    void bind(BatchRow row, T item) throws SQLException;
+}
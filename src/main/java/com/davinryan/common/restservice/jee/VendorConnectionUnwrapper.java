@@ -0,0 +1,89 @@
+package com.davinryan.common.restservice.jee;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Unwraps a pooled connection to a vendor connection type such as {@code oracle.jdbc.OracleConnection}.
+ * <p>
+ * On IBM WAS the pooled connection does not support {@link Connection#unwrap(Class)}, so
+ * {@code WSCallHelper.getNativeConnection} is used instead. Both are resolved reflectively so neither the vendor
+ * driver nor the WAS runtime is needed at compile time.
+ * <p>
+ * WARNING: on WAS the native connection may log J2CA0216I when the container closes it. This can be ignored.
+ */
+public class VendorConnectionUnwrapper implements ConnectionUnwrapper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VendorConnectionUnwrapper.class.getName());
+
+    private static final String WS_CALL_HELPER = "com.ibm.websphere.rsadapter.WSCallHelper";
+
+    private static final Method WAS_GET_NATIVE_CONNECTION = findWebSphereHelper();
+
+    private final String vendorConnectionClassName;
+
+    private volatile Class<?> vendorConnectionClass;
+
+    public VendorConnectionUnwrapper(String vendorConnectionClassName) {
+        this.vendorConnectionClassName = vendorConnectionClassName;
+    }
+
+    /**
+     * Useful method to work out if we are running in an IBM WAS EE server or not.
+     * @return true if in an IBM container
+     */
+    public static boolean runningInIBMWASContainer() {
+        return WAS_GET_NATIVE_CONNECTION != null;
+    }
+
+    @Override
+    public Connection unwrap(Connection connection) throws SQLException {
+        if (WAS_GET_NATIVE_CONNECTION != null) {
+            LOGGER.debug("We are running on IBM so using WSCallHelper.getNativeConnection to get a connection");
+            try {
+                return (Connection) WAS_GET_NATIVE_CONNECTION.invoke(null, connection);
+            } catch (IllegalAccessException e) {
+                throw new SQLException("Failed to call " + WS_CALL_HELPER, e);
+            } catch (InvocationTargetException e) {
+                throw new SQLException("Failed to get native connection from " + WS_CALL_HELPER, e.getCause());
+            }
+        }
+        LOGGER.debug("We are running on a normal JEE server so using unwrap({})", vendorConnectionClassName);
+        Class<?> vendorClass = getVendorConnectionClass();
+        if (vendorClass.isInstance(connection)) {
+            return connection;
+        }
+        return (Connection) connection.unwrap(vendorClass);
+    }
+
+    private Class<?> getVendorConnectionClass() throws SQLException {
+        Class<?> type = vendorConnectionClass;
+        if (type == null) {
+            try {
+                type = Class.forName(vendorConnectionClassName, false, Thread.currentThread().getContextClassLoader());
+            } catch (ClassNotFoundException e) {
+                throw new SQLException(vendorConnectionClassName + " is not on the classpath", e);
+            }
+            vendorConnectionClass = type;
+        }
+        return type;
+    }
+
+    private static Method findWebSphereHelper() {
+        try {
+            Class<?> helper = Class.forName(WS_CALL_HELPER, false, VendorConnectionUnwrapper.class.getClassLoader());
+            return helper.getMethod("getNativeConnection", Object.class);
+        } catch (ClassNotFoundException e) { // NOSONAR - not running on WAS
+            return null;
+        } catch (NoSuchMethodException e) { // NOSONAR
+            return null;
+        } catch (LinkageError e) { // NOSONAR
+            return null;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.davinryan.common.restservice.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.JMSException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded in-memory queue of pending sends drained by a fixed number of sender threads. When the queue is deep a
+ * sender thread takes several pending messages at once and, where consecutive messages share the same type and
+ * sending application, sends them as one transacted batch.
+ * <p>
+ * The trace context of the submitting thread and the submit time are captured when a message is queued, see
+ * {@link JmsTraceContext#capture(String, String)}, so the message carries them rather than the sender thread's.
+ * <p>
+ * Cancelling a returned future removes the message from the queue if no sender has taken it yet.
+ */
+class AsyncSendQueue {
+
+    /**
+     * Logging instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncSendQueue.class.getName());
+
+    private static final long POLL_INTERVAL_MILLIS = 200;
+
+    private final JmsQueuePublisher publisher;
+
+    private final BlockingQueue<PendingSend> queue;
+
+    private final BackpressurePolicy backpressurePolicy;
+
+    private final int maxCoalescedBatch;
+
+    private final JmsPublisherMetrics metrics;
+
+    private final List<Thread> senderThreads = new ArrayList<Thread>();
+
+    private volatile boolean accepting = true;
+
+    AsyncSendQueue(JmsQueuePublisher publisher, int senderThreadCount, int capacity, BackpressurePolicy backpressurePolicy,
+                   int maxCoalescedBatch, JmsPublisherMetrics metrics) {
+        if (senderThreadCount < 1 || capacity < 1 || maxCoalescedBatch < 1) {
+            throw new IllegalArgumentException("senderThreadCount, capacity and maxCoalescedBatch must all be at least 1");
+        }
+        this.publisher = publisher;
+        this.queue = new ArrayBlockingQueue<PendingSend>(capacity);
+        this.backpressurePolicy = backpressurePolicy;
+        this.maxCoalescedBatch = maxCoalescedBatch;
+        this.metrics = metrics;
+        for (int i = 0; i < senderThreadCount; i++) {
+            Thread thread = new Thread(new Sender(), "jms-async-sender-" + i);
+            thread.setDaemon(true);
+            senderThreads.add(thread);
+            thread.start();
+        }
+    }
+
+    JmsFuture<Void> submit(String text, String jmsType, String sendingAppPropertyName, String sendingAppPropertyNameValue,
+                           SendCallback<? super Void> callback) {
+        final PendingSend pendingSend = new PendingSend(text, jmsType, sendingAppPropertyName, sendingAppPropertyNameValue,
+                new JmsFuture<Void>(callback));
+        pendingSend.future.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                queue.remove(pendingSend);
+            }
+        });
+        if (!accepting) {
+            reject(pendingSend, new JMSException("Asynchronous publisher has been shut down"));
+            return pendingSend.future;
+        }
+
+        switch (backpressurePolicy) {
+            case BLOCK:
+                try {
+                    queue.put(pendingSend);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    reject(pendingSend, new JMSException("Interrupted while waiting for room on the send queue"));
+                }
+                break;
+            case REJECT:
+                if (!queue.offer(pendingSend)) {
+                    reject(pendingSend, new JMSException("Send queue is full, " + queue.size() + " messages pending"));
+                }
+                break;
+            default:
+                if (!queue.offer(pendingSend)) {
+                    send(pendingSend);
+                }
+                break;
+        }
+        if (!accepting && queue.remove(pendingSend)) {
+            // Shutdown started while this was being queued and may already have drained the queue
+            reject(pendingSend, new JMSException("Asynchronous publisher has been shut down"));
+        }
+        return pendingSend.future;
+    }
+
+    private void reject(PendingSend pendingSend, JMSException cause) {
+        metrics.asyncRejected();
+        pendingSend.future.fail(cause);
+    }
+
+    int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Stop accepting new sends, wait for everything already queued to be sent and stop the sender threads. Anything
+     * still queued when the timeout expires is failed.
+     */
+    void shutdown(long timeoutMillis) {
+        accepting = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Thread thread : senderThreads) {
+            try {
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        List<PendingSend> abandoned = new ArrayList<PendingSend>();
+        queue.drainTo(abandoned);
+        if (!abandoned.isEmpty()) {
+            LOGGER.error("Gave up on " + abandoned.size() + " queued JMS messages during shutdown");
+        }
+        for (PendingSend pendingSend : abandoned) {
+            pendingSend.future.fail(new JMSException("Asynchronous publisher was shut down before the message was sent"));
+        }
+    }
+
+    private void send(PendingSend pendingSend) {
+        if (pendingSend.future.isDone()) {
+            // Cancelled after a sender took it from the queue
+            return;
+        }
+        try {
+            publisher.send(pendingSend.text, pendingSend.jmsType, pendingSend.options);
+        } catch (JMSException e) {
+            pendingSend.future.fail(e);
+            return;
+        } catch (RuntimeException e) {
+            pendingSend.future.fail(e);
+            return;
+        }
+        pendingSend.future.complete(null);
+    }
+
+    private void sendBatch(List<PendingSend> drained) {
+        List<PendingSend> batch = new ArrayList<PendingSend>(drained.size());
+        for (PendingSend pendingSend : drained) {
+            if (!pendingSend.future.isDone()) {
+                batch.add(pendingSend);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<String> texts = new ArrayList<String>(batch.size());
+        List<SendOptions> options = new ArrayList<SendOptions>(batch.size());
+        for (PendingSend pendingSend : batch) {
+            texts.add(pendingSend.text);
+            options.add(pendingSend.options);
+        }
+        BatchSendResult result;
+        try {
+            result = publisher.sendBatch(texts, batch.get(0).jmsType, options);
+        } catch (JMSException e) {
+            failAll(batch, e);
+            return;
+        } catch (RuntimeException e) {
+            failAll(batch, e);
+            return;
+        }
+        // JmsFuture isolates callbacks, so one throwing cannot stop the rest being completed
+        for (BatchSendResult.Failure failure : result.getFailures()) {
+            batch.get(failure.getIndex()).future.fail(failure.getCause());
+        }
+        for (PendingSend pendingSend : batch) {
+            // No-op for anything already failed above
+            pendingSend.future.complete(null);
+        }
+    }
+
+    private static void failAll(List<PendingSend> batch, Throwable cause) {
+        for (PendingSend pendingSend : batch) {
+            pendingSend.future.fail(cause);
+        }
+    }
+
+    /**
+     * Sends runs of consecutive messages that share the same headers together.
+     */
+    private void dispatch(List<PendingSend> drained) {
+        int runStart = 0;
+        while (runStart < drained.size()) {
+            int runEnd = runStart + 1;
+            while (runEnd < drained.size() && drained.get(runStart).sameHeadersAs(drained.get(runEnd))) {
+                runEnd++;
+            }
+            if (runEnd - runStart == 1) {
+                send(drained.get(runStart));
+            } else {
+                sendBatch(drained.subList(runStart, runEnd));
+            }
+            runStart = runEnd;
+        }
+    }
+
+    private class Sender implements Runnable {
+
+        @Override
+        public void run() {
+            List<PendingSend> drained = new ArrayList<PendingSend>(maxCoalescedBatch);
+            while (true) {
+                PendingSend first;
+                try {
+                    first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (first == null) {
+                    if (!accepting) {
+                        return;
+                    }
+                    continue;
+                }
+                drained.clear();
+                drained.add(first);
+                queue.drainTo(drained, maxCoalescedBatch - 1);
+                long now = System.nanoTime();
+                for (PendingSend pendingSend : drained) {
+                    metrics.asyncDequeued(now - pendingSend.submittedNanos);
+                }
+                try {
+                    dispatch(drained);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Unexpected error in asynchronous JMS sender: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private static class PendingSend {
+
+        private final String text;
+
+        private final String jmsType;
+
+        private final String sendingAppPropertyName;
+
+        private final String sendingAppPropertyNameValue;
+
+        private final SendOptions options;
+
+        private final JmsFuture<Void> future;
+
+        private final long submittedNanos = System.nanoTime();
+
+        PendingSend(String text, String jmsType, String sendingAppPropertyName, String sendingAppPropertyNameValue,
+                    JmsFuture<Void> future) {
+            this.text = text;
+            this.jmsType = jmsType;
+            this.sendingAppPropertyName = sendingAppPropertyName;
+            this.sendingAppPropertyNameValue = sendingAppPropertyNameValue;
+            this.options = JmsTraceContext.capture(sendingAppPropertyName, sendingAppPropertyNameValue);
+            this.future = future;
+        }
+
+        boolean sameHeadersAs(PendingSend other) {
+            return equal(jmsType, other.jmsType)
+                    && equal(sendingAppPropertyName, other.sendingAppPropertyName)
+                    && equal(sendingAppPropertyNameValue, other.sendingAppPropertyNameValue);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.davinryan.common.restservice.jms;
+
+/**
+ * What an asynchronous publisher does when its in-memory queue is full.
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Block the caller until there is room on the queue.
+     */
+    BLOCK,
+
+    /**
+     * Fail the send straight away.
+     */
+    REJECT,
+
+    /**
+     * Send synchronously on the caller's thread.
+     */
+    CALLER_RUNS
+}
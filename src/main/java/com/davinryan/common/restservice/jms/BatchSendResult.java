@@ -0,0 +1,97 @@
+package com.davinryan.common.restservice.jms;
+
+import javax.jms.JMSException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of {@link MessagePublisher#sendBatch}. Lists every message that did not make it onto the queue along with
+ * the reason, referenced by its index in the submitted list.
+ */
+public class BatchSendResult {
+
+    private final int submittedCount;
+
+    private final List<Failure> failures = new ArrayList<Failure>();
+
+    private boolean duplicateSuppressed;
+
+    public BatchSendResult(int submittedCount) {
+        this.submittedCount = submittedCount;
+    }
+
+    void addFailure(int index, JMSException cause) {
+        failures.add(new Failure(index, cause));
+    }
+
+    void markDuplicateSuppressed() {
+        duplicateSuppressed = true;
+    }
+
+    /**
+     * @return true if nothing was sent because the batch's idempotency key had already been sent.
+     */
+    public boolean isDuplicateSuppressed() {
+        return duplicateSuppressed;
+    }
+
+    public int getSubmittedCount() {
+        return submittedCount;
+    }
+
+    public int getSentCount() {
+        return duplicateSuppressed ? 0 : submittedCount - failures.size();
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchSendResult{" +
+                "submittedCount=" + submittedCount +
+                ", duplicateSuppressed=" + duplicateSuppressed +
+                ", failures=" + failures +
+                '}';
+    }
+
+    /**
+     * A single message that failed to send.
+     */
+    public static class Failure {
+
+        private final int index;
+
+        private final JMSException cause;
+
+        public Failure(int index, JMSException cause) {
+            this.index = index;
+            this.cause = cause;
+        }
+
+        /**
+         * @return index of the failed message in the list passed to sendBatch.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public JMSException getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure{" +
+                    "index=" + index +
+                    ", cause=" + cause.getMessage() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.davinryan.common.restservice.jms;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link InputStream} that reads straight from the body of a received {@link BytesMessage}.
+ */
+public class BytesMessageInputStream extends InputStream {
+
+    private final BytesMessage message;
+
+    public BytesMessageInputStream(BytesMessage message) {
+        this.message = message;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        try {
+            if (offset == 0) {
+                return message.readBytes(bytes, length);
+            }
+            byte[] buffer = new byte[length];
+            int read = message.readBytes(buffer, length);
+            if (read > 0) {
+                System.arraycopy(buffer, 0, bytes, offset, read);
+            }
+            return read;
+        } catch (JMSException e) {
+            throw BytesMessageOutputStream.toIOException(e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.davinryan.common.restservice.jms;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link OutputStream} that writes straight into the body of a {@link BytesMessage}, so a payload can be encoded into
+ * a message without first being collected into a byte array.
+ */
+public class BytesMessageOutputStream extends OutputStream {
+
+    private final BytesMessage message;
+
+    public BytesMessageOutputStream(BytesMessage message) {
+        this.message = message;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        try {
+            message.writeByte((byte) b);
+        } catch (JMSException e) {
+            throw toIOException(e);
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        try {
+            message.writeBytes(bytes, offset, length);
+        } catch (JMSException e) {
+            throw toIOException(e);
+        }
+    }
+
+    static IOException toIOException(JMSException e) {
+        IOException ioException = new IOException(e.getMessage());
+        ioException.initCause(e);
+        return ioException;
+    }
+}
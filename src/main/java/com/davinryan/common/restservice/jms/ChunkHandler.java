@@ -0,0 +1,27 @@
+package com.davinryan.common.restservice.jms;
+
+import javax.jms.JMSException;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Receives the chunks of payloads sent with {@link MessagePublisher#sendStream}, in order, as
+ * {@link ChunkedMessageAssembler} puts them back together.
+ */
+public interface ChunkHandler {
+
+    /**
+     * Handle the next chunk of a payload. Chunks of a group are always passed in sequence order starting at 1.
+     *
+     * @param groupId  the JMSXGroupID of the payload, or null for a message that was not sent in chunks
+     * @param sequence the position of this chunk in the payload, from 1
+     * @param chunk    the text of this chunk, only readable until this method returns
+     * @param last     true for the final chunk of the payload
+     */
+    void onChunk(String groupId, int sequence, Reader chunk, boolean last) throws IOException, JMSException;
+
+    /**
+     * The rest of a payload will not be delivered because it timed out or too many payloads were incomplete at once.
+     */
+    void onAbandoned(String groupId, String reason);
+}
@@ -0,0 +1,287 @@
+package com.davinryan.common.restservice.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reassembles payloads sent with {@link MessagePublisher#sendStream}. Each chunk is an ordinary message in a JMS
+ * message group: {@link #GROUP_ID_PROPERTY} identifies the payload, {@link #GROUP_SEQ_PROPERTY} orders the chunks from
+ * 1 and {@link #LAST_CHUNK_PROPERTY} marks the final chunk.
+ * <p>
+ * Construct with a {@link ChunkHandler} and feed every received message to {@link #deliver(Message)}; each chunk is
+ * streamed to the handler as soon as every chunk before it has arrived, so a payload never has to fit in memory. Only
+ * chunks that arrive ahead of a gap are held. For payloads that do fit in memory, construct without a handler and use
+ * {@link #accept(Message)}, which returns the whole payload once it is complete.
+ * <p>
+ * At most {@code maxPendingGroups} incomplete payloads are held; starting another abandons the least recently active
+ * one. A payload that receives no chunk for {@code groupTimeoutMillis} is abandoned too.
+ * <p>
+ * This class is not thread safe; use one instance per consuming thread, which JMS message groups already guarantee
+ * receive the whole group.
+ */
+public class ChunkedMessageAssembler {
+
+    /**
+     * Logging instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedMessageAssembler.class.getName());
+
+    public static final String GROUP_ID_PROPERTY = "JMSXGroupID";
+
+    public static final String GROUP_SEQ_PROPERTY = "JMSXGroupSeq";
+
+    public static final String LAST_CHUNK_PROPERTY = "groupLastChunk";
+
+    /**
+     * Default number of incomplete payloads held at once.
+     */
+    public static final int DEFAULT_MAX_PENDING_GROUPS = 100;
+
+    /**
+     * Default time a payload may go without receiving a chunk before it is abandoned.
+     */
+    public static final long DEFAULT_GROUP_TIMEOUT_MILLIS = 300000;
+
+    private final ChunkHandler handler;
+
+    private final JoiningHandler joiner;
+
+    private final int maxPendingGroups;
+
+    private final long groupTimeoutMillis;
+
+    /**
+     * Incomplete groups, least recently active first
+     */
+    private final Map<String, PendingGroup> pendingGroups = new LinkedHashMap<String, PendingGroup>(16, 0.75f, true);
+
+    /**
+     * Joins payloads in memory for {@link #accept(Message)}.
+     */
+    public ChunkedMessageAssembler() {
+        this(null, DEFAULT_MAX_PENDING_GROUPS, DEFAULT_GROUP_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Streams chunks to {@code handler} from {@link #deliver(Message)}.
+     */
+    public ChunkedMessageAssembler(ChunkHandler handler) {
+        this(handler, DEFAULT_MAX_PENDING_GROUPS, DEFAULT_GROUP_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param handler            receives chunks in order, or null to join payloads in memory for {@link #accept(Message)}
+     * @param maxPendingGroups   maximum number of incomplete payloads held at once
+     * @param groupTimeoutMillis how long a payload may go without receiving a chunk before it is abandoned
+     */
+    public ChunkedMessageAssembler(ChunkHandler handler, int maxPendingGroups, long groupTimeoutMillis) {
+        if (maxPendingGroups < 1 || groupTimeoutMillis < 1) {
+            throw new IllegalArgumentException("maxPendingGroups and groupTimeoutMillis must be at least 1");
+        }
+        this.joiner = handler == null ? new JoiningHandler() : null;
+        this.handler = handler == null ? joiner : handler;
+        this.maxPendingGroups = maxPendingGroups;
+        this.groupTimeoutMillis = groupTimeoutMillis;
+    }
+
+    /**
+     * Add a received chunk to a payload being joined in memory. Only for an assembler constructed without a handler.
+     *
+     * @return the complete payload once every chunk of its group has been received, otherwise null. Messages that are
+     * not part of a group are returned as is.
+     */
+    public String accept(Message message) throws JMSException {
+        if (joiner == null) {
+            throw new java.lang.IllegalStateException("This assembler streams chunks to a ChunkHandler, call deliver instead");
+        }
+        String groupId = message.getStringProperty(GROUP_ID_PROPERTY);
+        if (groupId == null) {
+            return MessagePayloadUtils.readText(message);
+        }
+        return deliver(message) ? joiner.take(groupId) : null;
+    }
+
+    /**
+     * Pass a received chunk, and any held chunks it was the gap before, to the handler. A chunk that arrives ahead of
+     * a gap is held until the gap is filled. If the handler throws, the rest of the payload is dropped so a
+     * redelivery starts from the first chunk again.
+     *
+     * @return true if this completed a payload. A message that is not part of a group is handed over as a single last
+     * chunk and also returns true.
+     */
+    public boolean deliver(Message message) throws JMSException {
+        long now = System.currentTimeMillis();
+        expireStaleGroups(now);
+        String groupId = message.getStringProperty(GROUP_ID_PROPERTY);
+        if (groupId == null) {
+            deliverChunk(null, 1, message, true);
+            return true;
+        }
+        PendingGroup group = pendingGroups.get(groupId);
+        if (group == null) {
+            if (pendingGroups.size() >= maxPendingGroups) {
+                abandonEldest("more than " + maxPendingGroups + " payloads were incomplete at once");
+            }
+            group = new PendingGroup();
+            pendingGroups.put(groupId, group);
+        }
+        group.lastActivity = now;
+        int sequence = message.getIntProperty(GROUP_SEQ_PROPERTY);
+        if (message.propertyExists(LAST_CHUNK_PROPERTY) && message.getBooleanProperty(LAST_CHUNK_PROPERTY)) {
+            group.lastSequence = sequence;
+        }
+        if (sequence < group.nextSequence) {
+            LOGGER.debug("Ignoring redelivered chunk " + sequence + " of message group " + groupId);
+            return false;
+        }
+        if (sequence > group.nextSequence) {
+            group.heldChunks.put(sequence, message);
+            return false;
+        }
+        boolean delivered = false;
+        try {
+            Message next = message;
+            while (next != null) {
+                deliverChunk(groupId, group.nextSequence, next, group.nextSequence == group.lastSequence);
+                group.nextSequence++;
+                next = group.heldChunks.remove(group.nextSequence);
+            }
+            delivered = true;
+        } finally {
+            if (!delivered) {
+                discard(groupId);
+            }
+        }
+        if (group.lastSequence > 0 && group.nextSequence > group.lastSequence) {
+            pendingGroups.remove(groupId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return number of groups with chunks still outstanding.
+     */
+    public int getPendingGroupCount() {
+        return pendingGroups.size();
+    }
+
+    /**
+     * Drop any chunks held for {@code groupId}, e.g. after the producer's transaction is known to have been abandoned.
+     */
+    public void discard(String groupId) {
+        pendingGroups.remove(groupId);
+        if (joiner != null) {
+            joiner.onAbandoned(groupId, "discarded");
+        }
+    }
+
+    /**
+     * Abandon every payload that has not received a chunk within the group timeout. Called on every delivery, and can
+     * also be called periodically by an idle consumer.
+     */
+    public void expireStaleGroups() {
+        expireStaleGroups(System.currentTimeMillis());
+    }
+
+    private void expireStaleGroups(long now) {
+        Iterator<Map.Entry<String, PendingGroup>> groups = pendingGroups.entrySet().iterator();
+        while (groups.hasNext()) {
+            Map.Entry<String, PendingGroup> entry = groups.next();
+            if (now - entry.getValue().lastActivity < groupTimeoutMillis) {
+                // Ordered by activity, so every later group is newer
+                return;
+            }
+            groups.remove();
+            abandoned(entry.getKey(), "no chunk received for " + groupTimeoutMillis + "ms");
+        }
+    }
+
+    private void abandonEldest(String reason) {
+        Iterator<String> groupIds = pendingGroups.keySet().iterator();
+        String groupId = groupIds.next();
+        groupIds.remove();
+        abandoned(groupId, reason);
+    }
+
+    private void abandoned(String groupId, String reason) {
+        LOGGER.warn("Abandoned incomplete message group " + groupId + ": " + reason);
+        try {
+            handler.onAbandoned(groupId, reason);
+        } catch (RuntimeException e) {
+            LOGGER.error("ChunkHandler.onAbandoned threw: " + e.getMessage(), e);
+        }
+    }
+
+    private void deliverChunk(String groupId, int sequence, Message message, boolean last) throws JMSException {
+        Reader chunk = MessagePayloadUtils.openReader(message);
+        try {
+            handler.onChunk(groupId, sequence, chunk, last);
+        } catch (IOException e) {
+            throw MessagePayloadUtils.toJMSException("Unable to handle chunk " + sequence + " of message group " + groupId, e);
+        } finally {
+            try {
+                chunk.close();
+            } catch (IOException e) { //NOSONAR
+                // Nothing left to read
+            }
+        }
+    }
+
+    private static class PendingGroup {
+
+        /**
+         * Chunks that arrived ahead of {@link #nextSequence}
+         */
+        private final Map<Integer, Message> heldChunks = new HashMap<Integer, Message>();
+
+        private int nextSequence = 1;
+
+        private int lastSequence = -1;
+
+        private long lastActivity;
+    }
+
+    /**
+     * Joins chunks into a String per group for {@link #accept(Message)}.
+     */
+    private static class JoiningHandler implements ChunkHandler {
+
+        private final Map<String, StringBuilder> payloads = new HashMap<String, StringBuilder>();
+
+        private final char[] buffer = new char[8192];
+
+        @Override
+        public void onChunk(String groupId, int sequence, Reader chunk, boolean last) throws IOException {
+            StringBuilder payload = payloads.get(groupId);
+            if (payload == null) {
+                payload = new StringBuilder();
+                payloads.put(groupId, payload);
+            }
+            int read = chunk.read(buffer);
+            while (read >= 0) {
+                payload.append(buffer, 0, read);
+                read = chunk.read(buffer);
+            }
+        }
+
+        @Override
+        public void onAbandoned(String groupId, String reason) {
+            payloads.remove(groupId);
+        }
+
+        String take(String groupId) {
+            StringBuilder payload = payloads.remove(groupId);
+            return payload == null ? "" : payload.toString();
+        }
+    }
+}
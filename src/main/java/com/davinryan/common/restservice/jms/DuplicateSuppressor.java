@@ -0,0 +1,235 @@
+package com.davinryan.common.restservice.jms;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Remembers recently published idempotency keys so that a retried publish of the same business message within a time
+ * window can be suppressed.
+ * <p>
+ * A key is first acquired with {@link #tryAcquire(String)}, which marks it in flight, and then either
+ * {@link #complete(String) completed} once the message has been sent or {@link #release(String) released} if sending
+ * failed. Only a completed key suppresses later publishes. A publish of a key that is still in flight waits for the
+ * first publish to finish: it is suppressed if that one completed, takes over if it was released, and fails if it
+ * does not finish within {@code inFlightWaitMillis}.
+ * <p>
+ * Only in-flight keys have an entry and latch to wait on, held in a {@link ConcurrentMap} so waiting on one key does
+ * not hold up others. Completed keys are just strings in time buckets, each a set of the keys completed during a
+ * tenth of the window. Expiry drops whole buckets, so a completed key is suppressed for at least the window and at
+ * most a tenth longer.
+ * <p>
+ * Memory is bounded by {@code maxKeys}: once that many completed keys are held the oldest are expired early, which
+ * shortens the effective window rather than growing without limit.
+ */
+public class DuplicateSuppressor {
+
+    /**
+     * Default time a publish of a key that is in flight waits for the first publish to finish.
+     */
+    public static final long DEFAULT_IN_FLIGHT_WAIT_MILLIS = 30000;
+
+    /**
+     * Number of buckets the window is split into
+     */
+    private static final int BUCKETS_PER_WINDOW = 10;
+
+    private final long windowMillis;
+
+    private final long bucketMillis;
+
+    private final int maxKeys;
+
+    private final long inFlightWaitMillis;
+
+    private final ConcurrentMap<String, InFlight> inFlight = new ConcurrentHashMap<String, InFlight>();
+
+    /**
+     * Completed keys, oldest bucket first. Guards itself and completedCount.
+     */
+    private final ArrayDeque<Bucket> buckets = new ArrayDeque<Bucket>();
+
+    private int completedCount;
+
+    /**
+     * @param windowMillis how long a completed key suppresses re-publication
+     * @param maxKeys      upper bound on completed keys held
+     */
+    public DuplicateSuppressor(long windowMillis, int maxKeys) {
+        this(windowMillis, maxKeys, DEFAULT_IN_FLIGHT_WAIT_MILLIS);
+    }
+
+    /**
+     * @param windowMillis       how long a completed key suppresses re-publication
+     * @param maxKeys            upper bound on completed keys held
+     * @param inFlightWaitMillis how long a publish of a key that is in flight waits for the first publish to finish
+     */
+    public DuplicateSuppressor(long windowMillis, int maxKeys, long inFlightWaitMillis) {
+        if (windowMillis < 1 || maxKeys < 1 || inFlightWaitMillis < 0) {
+            throw new IllegalArgumentException("windowMillis and maxKeys must be at least 1 and inFlightWaitMillis must not be negative");
+        }
+        this.windowMillis = windowMillis;
+        this.bucketMillis = Math.max(1, windowMillis / BUCKETS_PER_WINDOW);
+        this.maxKeys = maxKeys;
+        this.inFlightWaitMillis = inFlightWaitMillis;
+    }
+
+    /**
+     * Mark {@code key} in flight unless it has already been published within the window. If another thread has it in
+     * flight, wait for that publish to finish.
+     *
+     * @return true if the message should be published, in which case the caller must call {@link #complete(String)}
+     * or {@link #release(String)} afterwards, or false if it is a duplicate of a completed publish.
+     * @throws TimeoutException     if another publish of the key did not finish within the in-flight wait.
+     * @throws InterruptedException if interrupted while waiting for another publish of the key.
+     */
+    public boolean tryAcquire(String key) throws TimeoutException, InterruptedException {
+        long now = System.currentTimeMillis();
+        long deadline = now + inFlightWaitMillis;
+        while (true) {
+            InFlight mine = new InFlight();
+            InFlight existing = inFlight.putIfAbsent(key, mine);
+            if (existing == null) {
+                // complete() remembers a key before it stops being in flight, so this cannot miss one
+                if (isRemembered(key, now)) {
+                    inFlight.remove(key, mine);
+                    mine.done.countDown();
+                    return false;
+                }
+                return true;
+            }
+            if (existing.isDone()) {
+                if (existing.completed) {
+                    return false;
+                }
+                // Released, and already removed as that happens before done is counted down
+                continue;
+            }
+            long remaining = deadline - now;
+            if (remaining <= 0 || !existing.done.await(remaining, TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("Idempotency key '" + key + "' is still being published after " + inFlightWaitMillis + "ms");
+            }
+            now = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Record that the message for {@code key} was published, so publishes within the window are suppressed. Wakes any
+     * publish of the same key waiting in {@link #tryAcquire(String)}.
+     */
+    public void complete(String key) {
+        InFlight entry = inFlight.get(key);
+        if (entry == null || entry.isDone()) {
+            return;
+        }
+        remember(key, System.currentTimeMillis());
+        entry.completed = true;
+        inFlight.remove(key, entry);
+        entry.done.countDown();
+    }
+
+    /**
+     * Forget {@code key}, e.g. because publishing it failed and the caller is allowed to retry. A publish of the same
+     * key waiting in {@link #tryAcquire(String)} takes over.
+     */
+    public void release(String key) {
+        InFlight entry = inFlight.get(key);
+        if (entry == null || entry.isDone()) {
+            return;
+        }
+        inFlight.remove(key, entry);
+        entry.done.countDown();
+    }
+
+    /**
+     * @return number of keys currently remembered or in flight.
+     */
+    public int size() {
+        synchronized (buckets) {
+            expire(System.currentTimeMillis());
+            return completedCount + inFlight.size();
+        }
+    }
+
+    private boolean isRemembered(String key, long now) {
+        synchronized (buckets) {
+            expire(now);
+            for (Bucket bucket : buckets) {
+                if (bucket.keys.contains(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private void remember(String key, long now) {
+        synchronized (buckets) {
+            expire(now);
+            Bucket newest = buckets.peekLast();
+            if (newest == null || newest.start + bucketMillis <= now) {
+                newest = new Bucket(now);
+                buckets.addLast(newest);
+            }
+            if (newest.keys.add(key)) {
+                completedCount++;
+            }
+            while (completedCount > maxKeys) {
+                Bucket oldest = buckets.peekFirst();
+                Iterator<String> keys = oldest.keys.iterator();
+                keys.next();
+                keys.remove();
+                completedCount--;
+                if (oldest.keys.isEmpty()) {
+                    buckets.removeFirst();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop buckets whose newest possible key is older than the window. Must hold the buckets lock.
+     */
+    private void expire(long now) {
+        Bucket oldest = buckets.peekFirst();
+        while (oldest != null && oldest.start + bucketMillis + windowMillis <= now) {
+            buckets.removeFirst();
+            completedCount -= oldest.keys.size();
+            oldest = buckets.peekFirst();
+        }
+    }
+
+    /**
+     * Keys completed in one bucket interval. Insertion ordered so maxKeys can expire the oldest keys first.
+     */
+    private static final class Bucket {
+
+        private final long start;
+
+        private final Set<String> keys = new LinkedHashSet<String>();
+
+        Bucket(long start) {
+            this.start = start;
+        }
+    }
+
+    private static final class InFlight {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * Written before done is counted down, so visible to anyone who has seen isDone()
+         */
+        private volatile boolean completed;
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.davinryan.common.restservice.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link Future} for work that is completed by another thread, such as an asynchronous send. The result is set
+ * exactly once, either by {@link #complete(Object)} or {@link #fail(Throwable)}, and any registered
+ * {@link SendCallback} is notified on the completing thread. A callback that throws is logged and does not affect the
+ * completing thread or other futures it completes.
+ * <p>
+ * Cancelling withdraws the work if it has not started, see {@link #onCancel(Runnable)}.
+ *
+ * @param <T> the result type
+ */
+public class JmsFuture<T> implements Future<T> {
+
+    /**
+     * Logging instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmsFuture.class.getName());
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    private final SendCallback<? super T> callback;
+
+    private volatile T result;
+
+    private volatile Throwable failure;
+
+    private volatile boolean cancelled;
+
+    private volatile Runnable cancellationHook;
+
+    public JmsFuture() {
+        this(null);
+    }
+
+    public JmsFuture(SendCallback<? super T> callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Complete successfully.
+     *
+     * @return false if the future was already completed
+     */
+    public boolean complete(T value) {
+        if (!completed.compareAndSet(false, true)) {
+            return false;
+        }
+        result = value;
+        done.countDown();
+        if (callback != null) {
+            try {
+                callback.onSuccess(value);
+            } catch (RuntimeException e) {
+                LOGGER.error("SendCallback.onSuccess threw: " + e.getMessage(), e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Complete with a failure.
+     *
+     * @return false if the future was already completed
+     */
+    public boolean fail(Throwable cause) {
+        if (!completed.compareAndSet(false, true)) {
+            return false;
+        }
+        failure = cause;
+        done.countDown();
+        if (callback != null) {
+            try {
+                callback.onFailure(cause);
+            } catch (RuntimeException e) {
+                LOGGER.error("SendCallback.onFailure threw: " + e.getMessage(), e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Run {@code hook} when this future is cancelled, e.g. to remove the pending work from a queue. Runs straight away
+     * if the future has already been cancelled.
+     */
+    void onCancel(Runnable hook) {
+        cancellationHook = hook;
+        if (cancelled) {
+            hook.run();
+        }
+    }
+
+    /**
+     * Cancel the work if it has not completed. Work that was already handed to MQ may still be delivered.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!completed.compareAndSet(false, true)) {
+            return false;
+        }
+        cancelled = true;
+        failure = new CancellationException();
+        done.countDown();
+        Runnable hook = cancellationHook;
+        if (hook != null) {
+            hook.run();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        done.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("Timed out after " + timeout + " " + unit);
+        }
+        return report();
+    }
+
+    private T report() throws ExecutionException {
+        if (cancelled) {
+            throw (CancellationException) failure;
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+}
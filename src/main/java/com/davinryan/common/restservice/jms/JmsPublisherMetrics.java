@@ -0,0 +1,336 @@
+package com.davinryan.common.restservice.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Publish metrics for a {@link JmsQueuePublisher}. Recording is lock free and safe under concurrent sends. Register
+ * with JMX using {@link JmsQueuePublisher#registerMetrics(String)}.
+ * <p>
+ * A send is split into three timed phases: acquiring a session (borrowing from the pool, which includes creating one
+ * when none is idle), the send itself and releasing the session. Batches and streams record one latency sample per
+ * transaction.
+ * <p>
+ * Throughput is sampled once a second by the publisher, so reading it has no side effects. Asynchronous sends also
+ * record how long messages waited in the in-memory queue and how many were rejected.
+ */
+public class JmsPublisherMetrics implements JmsPublisherMetricsMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmsPublisherMetrics.class.getName());
+
+    static final String DOMAIN = "com.davinryan.common.restservice.jms";
+
+    private final StripedCounter sent = new StripedCounter();
+
+    private final StripedCounter failed = new StripedCounter();
+
+    private final StripedCounter inFlight = new StripedCounter();
+
+    private final StripedCounter reconnects = new StripedCounter();
+
+    private final StripedCounter duplicatesSuppressed = new StripedCounter();
+
+    private final ConcurrentMap<String, StripedCounter> failuresByType = new ConcurrentHashMap<String, StripedCounter>();
+
+    private final LatencyHistogram sessionAcquireLatency = new LatencyHistogram();
+
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+
+    private final LatencyHistogram sessionReleaseLatency = new LatencyHistogram();
+
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+
+    private final LatencyHistogram healthCheckLatency = new LatencyHistogram();
+
+    private final LatencyHistogram asyncQueueWait = new LatencyHistogram();
+
+    private final StripedCounter asyncRejected = new StripedCounter();
+
+    private volatile AsyncSendQueue asyncSendQueue;
+
+    /**
+     * Most recent throughput sample, replaced by {@link #sampleThroughput()}
+     */
+    private volatile ThroughputSample throughput = new ThroughputSample(System.nanoTime(), 0, 0);
+
+    private ObjectName objectName;
+
+    void sendStarted() {
+        inFlight.increment();
+    }
+
+    void sendSucceeded(long acquireNanos, long sendNanos, long releaseNanos) {
+        inFlight.decrement();
+        sent.increment();
+        sessionAcquireLatency.recordNanos(acquireNanos);
+        sendLatency.recordNanos(sendNanos);
+        sessionReleaseLatency.recordNanos(releaseNanos);
+        totalLatency.recordNanos(acquireNanos + sendNanos + releaseNanos);
+    }
+
+    void sendFailed(Throwable cause) {
+        sendsFailed(1, cause);
+    }
+
+    /**
+     * A chunk of {@link JmsQueuePublisher#sendBatch} messages is being sent in one transaction.
+     */
+    void sendsStarted(int count) {
+        inFlight.add(count);
+    }
+
+    /**
+     * A chunk of {@code count} messages was committed. The latencies are those of the whole transaction and are
+     * recorded once for the chunk.
+     */
+    void sendsSucceeded(int count, long acquireNanos, long sendNanos, long releaseNanos) {
+        inFlight.add(-count);
+        sent.add(count);
+        sessionAcquireLatency.recordNanos(acquireNanos);
+        sendLatency.recordNanos(sendNanos);
+        sessionReleaseLatency.recordNanos(releaseNanos);
+        totalLatency.recordNanos(acquireNanos + sendNanos + releaseNanos);
+    }
+
+    /**
+     * A {@link JmsQueuePublisher#sendStream} group of {@code chunkCount} messages was committed. The stream counted
+     * as one in-flight send.
+     */
+    void streamSucceeded(int chunkCount, long acquireNanos, long sendNanos, long releaseNanos) {
+        inFlight.decrement();
+        sent.add(chunkCount);
+        sessionAcquireLatency.recordNanos(acquireNanos);
+        sendLatency.recordNanos(sendNanos);
+        sessionReleaseLatency.recordNanos(releaseNanos);
+        totalLatency.recordNanos(acquireNanos + sendNanos + releaseNanos);
+    }
+
+    void sendsFailed(int count, Throwable cause) {
+        if (count == 0) {
+            return;
+        }
+        inFlight.add(-count);
+        failed.add(count);
+        String type = cause.getClass().getName();
+        StripedCounter counter = failuresByType.get(type);
+        if (counter == null) {
+            StripedCounter newCounter = new StripedCounter();
+            counter = failuresByType.putIfAbsent(type, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.add(count);
+    }
+
+    void reconnected() {
+        reconnects.increment();
+    }
+
+    void duplicateSuppressed() {
+        duplicatesSuppressed.increment();
+    }
+
+    void healthChecked(long nanos) {
+        healthCheckLatency.recordNanos(nanos);
+    }
+
+    /**
+     * An asynchronous send was taken from the queue after waiting {@code nanos}.
+     */
+    void asyncDequeued(long nanos) {
+        asyncQueueWait.recordNanos(nanos);
+    }
+
+    /**
+     * An asynchronous send was failed without being queued, e.g. the queue was full or shut down.
+     */
+    void asyncRejected() {
+        asyncRejected.increment();
+    }
+
+    void setAsyncSendQueue(AsyncSendQueue asyncSendQueue) {
+        this.asyncSendQueue = asyncSendQueue;
+    }
+
+    /**
+     * Record the throughput since the previous sample. Called periodically by a single thread.
+     */
+    void sampleThroughput() {
+        long now = System.nanoTime();
+        long count = sent.sum();
+        ThroughputSample previous = throughput;
+        double seconds = (now - previous.nanos) / 1e9;
+        double perSecond = seconds <= 0 ? 0 : (count - previous.count) / seconds;
+        throughput = new ThroughputSample(now, count, perSecond);
+    }
+
+    /**
+     * Register with the platform MBean server as {@code com.davinryan.common.restservice.jms:type=JmsQueuePublisher,name=<name>}.
+     */
+    synchronized void register(String name) throws JMException {
+        unregister();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName newObjectName = new ObjectName(DOMAIN + ":type=JmsQueuePublisher,name=" + ObjectName.quote(name));
+        server.registerMBean(this, newObjectName);
+        objectName = newObjectName;
+    }
+
+    synchronized void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                LOGGER.warn("Unable to unregister " + objectName + ": " + e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @Override
+    public Map<String, Long> getFailuresByExceptionType() {
+        Map<String, Long> failures = new TreeMap<String, Long>();
+        for (Map.Entry<String, StripedCounter> entry : failuresByType.entrySet()) {
+            failures.put(entry.getKey(), entry.getValue().sum());
+        }
+        return failures;
+    }
+
+    @Override
+    public long getInFlightCount() {
+        return inFlight.sum();
+    }
+
+    @Override
+    public double getThroughputPerSecond() {
+        return throughput.perSecond;
+    }
+
+    @Override
+    public long getReconnectCount() {
+        return reconnects.sum();
+    }
+
+    @Override
+    public long getDuplicatesSuppressedCount() {
+        return duplicatesSuppressed.sum();
+    }
+
+    @Override
+    public double getSessionAcquireLatencyMeanMillis() {
+        return sessionAcquireLatency.getMeanMillis();
+    }
+
+    @Override
+    public double getSessionAcquireLatencyP99Millis() {
+        return sessionAcquireLatency.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getSendLatencyMeanMillis() {
+        return sendLatency.getMeanMillis();
+    }
+
+    @Override
+    public double getSendLatencyP50Millis() {
+        return sendLatency.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getSendLatencyP99Millis() {
+        return sendLatency.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getSendLatencyMaxMillis() {
+        return sendLatency.getMaxMillis();
+    }
+
+    @Override
+    public double getSessionReleaseLatencyMeanMillis() {
+        return sessionReleaseLatency.getMeanMillis();
+    }
+
+    @Override
+    public double getSessionReleaseLatencyP99Millis() {
+        return sessionReleaseLatency.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getTotalLatencyP50Millis() {
+        return totalLatency.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getTotalLatencyP99Millis() {
+        return totalLatency.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getHealthCheckLatencyMeanMillis() {
+        return healthCheckLatency.getMeanMillis();
+    }
+
+    @Override
+    public double getHealthCheckLatencyMaxMillis() {
+        return healthCheckLatency.getMaxMillis();
+    }
+
+    @Override
+    public int getAsyncPendingCount() {
+        AsyncSendQueue queue = asyncSendQueue;
+        return queue == null ? 0 : queue.getPendingCount();
+    }
+
+    @Override
+    public long getAsyncRejectedCount() {
+        return asyncRejected.sum();
+    }
+
+    @Override
+    public double getAsyncQueueWaitMeanMillis() {
+        return asyncQueueWait.getMeanMillis();
+    }
+
+    @Override
+    public double getAsyncQueueWaitP99Millis() {
+        return asyncQueueWait.getPercentileMillis(99);
+    }
+
+    /**
+     * Immutable throughput sample.
+     */
+    private static final class ThroughputSample {
+
+        private final long nanos;
+
+        private final long count;
+
+        private final double perSecond;
+
+        ThroughputSample(long nanos, long count, double perSecond) {
+            this.nanos = nanos;
+            this.count = count;
+            this.perSecond = perSecond;
+        }
+    }
+}
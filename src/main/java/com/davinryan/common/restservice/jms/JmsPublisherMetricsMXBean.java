@@ -0,0 +1,67 @@
+package com.davinryan.common.restservice.jms;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link JmsPublisherMetrics}. All latencies are in milliseconds.
+ */
+public interface JmsPublisherMetricsMXBean {
+
+    long getSentCount();
+
+    long getFailedCount();
+
+    /**
+     * @return failed sends by exception class name.
+     */
+    Map<String, Long> getFailuresByExceptionType();
+
+    long getInFlightCount();
+
+    /**
+     * @return messages sent per second over the most recent one second sample.
+     */
+    double getThroughputPerSecond();
+
+    long getReconnectCount();
+
+    long getDuplicatesSuppressedCount();
+
+    double getSessionAcquireLatencyMeanMillis();
+
+    double getSessionAcquireLatencyP99Millis();
+
+    double getSendLatencyMeanMillis();
+
+    double getSendLatencyP50Millis();
+
+    double getSendLatencyP99Millis();
+
+    double getSendLatencyMaxMillis();
+
+    double getSessionReleaseLatencyMeanMillis();
+
+    double getSessionReleaseLatencyP99Millis();
+
+    double getTotalLatencyP50Millis();
+
+    double getTotalLatencyP99Millis();
+
+    double getHealthCheckLatencyMeanMillis();
+
+    double getHealthCheckLatencyMaxMillis();
+
+    /**
+     * @return asynchronous sends waiting in the in-memory queue.
+     */
+    int getAsyncPendingCount();
+
+    /**
+     * @return asynchronous sends failed without being queued because the queue was full or shut down.
+     */
+    long getAsyncRejectedCount();
+
+    double getAsyncQueueWaitMeanMillis();
+
+    double getAsyncQueueWaitP99Millis();
+}
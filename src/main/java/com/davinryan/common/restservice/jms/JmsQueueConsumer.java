@@ -0,0 +1,365 @@
+package com.davinryan.common.restservice.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Queue;
+import javax.jms.QueueConnection;
+import javax.jms.QueueConnectionFactory;
+import javax.jms.QueueReceiver;
+import javax.jms.QueueSender;
+import javax.jms.QueueSession;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A JMS Queue Consumer, the receiving counterpart of {@link JmsQueuePublisher}.
+ * <p>
+ * Runs a fixed number of receiver threads, each with its own transacted session and receiver on a shared connection.
+ * Each thread receives up to {@code batchSize} messages, passes them one at a time to the {@link MessageHandler} and
+ * acknowledges them all with a single commit. This acts as a client side prefetch: the provider only needs one
+ * acknowledgement round trip per batch, and no session is created per message. Provider prefetch buffers, where
+ * supported, are configured on the connection factory.
+ * <p>
+ * The trace context of each message (see {@link JmsTraceContext}) is put into the MDC while it is handled, so
+ * consumer logs can be joined with the producer's, and the time each message waited on the queue is recorded.
+ * <p>
+ * A message whose {@value #DELIVERY_COUNT_PROPERTY} exceeds {@code maxDeliveryAttempts} is not passed to the handler
+ * again. It is moved to the backout queue in the same transaction, or logged and discarded if there is no backout
+ * queue. Providers that do not set {@value #DELIVERY_COUNT_PROPERTY} are not limited. After a batch is rolled back its
+ * messages are handled one per transaction, so a poison message does not use up the attempts of the messages that
+ * happened to share its batch.
+ * <p>
+ * A connection that reports an error through its {@link ExceptionListener} is closed by the receivers and re-created.
+ */
+public class JmsQueueConsumer {
+
+    /**
+     * Logging instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmsQueueConsumer.class.getName());
+
+    private static final long RECEIVE_TIMEOUT_MILLIS = 1000;
+
+    private static final long RETRY_INITIAL_DELAY_MILLIS = 1000;
+
+    private static final long RETRY_MAX_DELAY_MILLIS = 60000;
+
+    /**
+     * JMS defined property counting how many times a message has been delivered.
+     */
+    public static final String DELIVERY_COUNT_PROPERTY = "JMSXDeliveryCount";
+
+    /**
+     * Default number of deliveries after which a message is backed out.
+     */
+    public static final int DEFAULT_MAX_DELIVERY_ATTEMPTS = 5;
+
+    /**
+     * The MQ Queue Connection Factory as setup in the application server
+     */
+    private final QueueConnectionFactory queueConnectionFactory;
+
+    /**
+     * The MQ Queue as setup in the application server
+     */
+    private final Queue source;
+
+    private final MessageHandler handler;
+
+    private final int batchSize;
+
+    /**
+     * Where messages that exceed the delivery limit are moved, null to discard them
+     */
+    private final Queue backoutQueue;
+
+    private final int maxDeliveryAttempts;
+
+    private final List<Thread> receiverThreads = new ArrayList<Thread>();
+
+    private final LatencyHistogram queueDwell = new LatencyHistogram();
+
+    /**
+     * The JMS connection to MQ, guarded by this
+     */
+    private QueueConnection connection;
+
+    /**
+     * Connection that reported an error through its ExceptionListener and must be replaced
+     */
+    private volatile QueueConnection brokenConnection;
+
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a new QueueConsumer and starts receiving.
+     *
+     * @param concurrency number of receiver threads, and therefore sessions
+     * @param batchSize   maximum number of messages acknowledged by one commit
+     */
+    public JmsQueueConsumer(QueueConnectionFactory queueConnectionFactory, Queue source, MessageHandler handler,
+                            int concurrency, int batchSize) {
+        this(queueConnectionFactory, source, handler, concurrency, batchSize, null, DEFAULT_MAX_DELIVERY_ATTEMPTS);
+    }
+
+    /**
+     * Constructs a new QueueConsumer and starts receiving.
+     *
+     * @param concurrency         number of receiver threads, and therefore sessions
+     * @param batchSize           maximum number of messages acknowledged by one commit
+     * @param backoutQueue        where messages delivered more than {@code maxDeliveryAttempts} times are moved, or
+     *                            null to log and discard them
+     * @param maxDeliveryAttempts number of deliveries a message gets before it is backed out
+     */
+    public JmsQueueConsumer(QueueConnectionFactory queueConnectionFactory, Queue source, MessageHandler handler,
+                            int concurrency, int batchSize, Queue backoutQueue, int maxDeliveryAttempts) {
+        if (concurrency < 1 || batchSize < 1 || maxDeliveryAttempts < 1) {
+            throw new IllegalArgumentException("concurrency, batchSize and maxDeliveryAttempts must be at least 1");
+        }
+        this.queueConnectionFactory = queueConnectionFactory;
+        this.source = source;
+        this.handler = handler;
+        this.batchSize = batchSize;
+        this.backoutQueue = backoutQueue;
+        this.maxDeliveryAttempts = maxDeliveryAttempts;
+        for (int i = 0; i < concurrency; i++) {
+            Thread thread = new Thread(new Receiver(), "jms-consumer-" + i);
+            thread.setDaemon(true);
+            receiverThreads.add(thread);
+        }
+        for (Thread thread : receiverThreads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop receiving. Each receiver finishes and commits the batch it is working on before stopping, then the
+     * connection is closed.
+     *
+     * @param timeoutMillis how long to wait for the receivers to stop
+     */
+    public void tearDown(long timeoutMillis) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Thread thread : receiverThreads) {
+            try {
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        closeConnection();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private synchronized QueueConnection getConnection() throws JMSException {
+        if (null == connection) {
+            final QueueConnection newConnection = this.queueConnectionFactory.createQueueConnection("mqm", "");
+            try {
+                newConnection.setExceptionListener(new ExceptionListener() {
+                    @Override
+                    public void onException(JMSException exception) {
+                        // Closing the connection from the provider's own callback thread can deadlock, so leave it
+                        // to the receivers
+                        LOGGER.error("JMS Connection reported an error: " + exception.getMessage(), exception);
+                        brokenConnection = newConnection;
+                    }
+                });
+            } catch (JMSException e) {
+                // Some providers do not allow exception listeners in a container, receive failures are handled instead
+                LOGGER.warn("Unable to register JMS ExceptionListener: " + e.getMessage());
+            }
+            try {
+                newConnection.start();
+            } catch (JMSException e) {
+                newConnection.close();
+                throw e;
+            }
+            connection = newConnection;
+        }
+        return connection;
+    }
+
+    private synchronized void connectionFailed(QueueConnection failedConnection) {
+        if (failedConnection == connection) {
+            closeConnection();
+        }
+    }
+
+    private synchronized void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (JMSException e) {
+                LOGGER.error("Error closing JMS Connection: ", e.getMessage(), e);
+            }
+            connection = null;
+        }
+    }
+
+    /**
+     * @return mean time messages spent on the queue before being received, from {@link JmsTraceContext}.
+     */
+    public double getQueueDwellMeanMillis() {
+        return queueDwell.getMeanMillis();
+    }
+
+    /**
+     * @return 99th percentile of time messages spent on the queue before being received.
+     */
+    public double getQueueDwellP99Millis() {
+        return queueDwell.getPercentileMillis(99);
+    }
+
+    private class Receiver implements Runnable {
+
+        /**
+         * Number of upcoming messages to handle one per transaction after a batch was rolled back
+         */
+        private int singleMessageBatches;
+
+        @Override
+        public void run() {
+            long retryDelay = RETRY_INITIAL_DELAY_MILLIS;
+            List<Message> batch = new ArrayList<Message>(batchSize);
+            while (active()) {
+                QueueConnection currentConnection = null;
+                QueueSession session = null;
+                try {
+                    currentConnection = getConnection();
+                    session = currentConnection.createQueueSession(true, Session.SESSION_TRANSACTED);
+                    QueueReceiver receiver = session.createReceiver(source);
+                    QueueSender backoutSender = backoutQueue == null ? null : session.createSender(backoutQueue);
+                    retryDelay = RETRY_INITIAL_DELAY_MILLIS;
+                    while (active() && brokenConnection != currentConnection) {
+                        receiveBatch(session, receiver, backoutSender, batch);
+                    }
+                    if (brokenConnection == currentConnection) {
+                        LOGGER.info("Re-creating JMS Connection after it reported an error");
+                        closeSession(session);
+                        session = null;
+                        connectionFailed(currentConnection);
+                        continue;
+                    }
+                    receiver.close();
+                } catch (JMSException e) {
+                    LOGGER.error("Error receiving from MQ, retrying in " + retryDelay + "ms: " + e.getMessage());
+                    if (currentConnection != null && session == null) {
+                        // Could not even create a session so the shared connection is most likely dead
+                        connectionFailed(currentConnection);
+                    }
+                    sleep(retryDelay);
+                    retryDelay = Math.min(retryDelay * 2, RETRY_MAX_DELAY_MILLIS);
+                } finally {
+                    closeSession(session);
+                }
+            }
+            if (running) {
+                LOGGER.warn("JMS receiver " + Thread.currentThread().getName() + " was interrupted, stopping it");
+            }
+        }
+
+        /**
+         * An interrupt stops only this receiver, {@link #tearDown(long)} stops them all.
+         */
+        private boolean active() {
+            return running && !Thread.currentThread().isInterrupted();
+        }
+
+        private void receiveBatch(QueueSession session, QueueReceiver receiver, QueueSender backoutSender,
+                                  List<Message> batch) throws JMSException {
+            batch.clear();
+            int maxBatch = singleMessageBatches > 0 ? 1 : batchSize;
+            Message message = receiver.receive(RECEIVE_TIMEOUT_MILLIS);
+            while (message != null) {
+                batch.add(message);
+                if (batch.size() >= maxBatch) {
+                    break;
+                }
+                message = receiver.receiveNoWait();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            if (singleMessageBatches > 0) {
+                singleMessageBatches--;
+            }
+
+            for (Message received : batch) {
+                try {
+                    long dwellMillis = JmsTraceContext.restore(received);
+                    if (dwellMillis >= 0) {
+                        queueDwell.recordNanos(dwellMillis * 1000000L);
+                        if (LOGGER.isDebugEnabled()) {
+                            LOGGER.debug("Received JMS message " + received.getJMSMessageID() + " after " + dwellMillis + "ms on the queue");
+                        }
+                    }
+                    if (exceedsDeliveryLimit(received)) {
+                        backout(received, backoutSender);
+                    } else {
+                        handler.handle(received);
+                    }
+                } catch (Throwable e) { //NOSONAR - an Error must not kill the receiver without backing out the message
+                    LOGGER.error("Error handling JMS message " + received.getJMSMessageID() + ", rolling back batch of " + batch.size() + ": " + e.getMessage(), e);
+                    session.rollback();
+                    // Handle the redelivered messages one at a time so only the failing one uses up its attempts
+                    singleMessageBatches = batch.size();
+                    return;
+                } finally {
+                    JmsTraceContext.clear();
+                }
+            }
+            session.commit();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Committed batch of " + batch.size() + " JMS messages");
+            }
+        }
+
+        private boolean exceedsDeliveryLimit(Message message) throws JMSException {
+            return message.propertyExists(DELIVERY_COUNT_PROPERTY)
+                    && message.getIntProperty(DELIVERY_COUNT_PROPERTY) > maxDeliveryAttempts;
+        }
+
+        /**
+         * Move a message that keeps failing to the backout queue, or discard it if there is none. Either way it is
+         * removed from the source queue when the batch commits.
+         */
+        private void backout(Message message, QueueSender backoutSender) throws JMSException {
+            if (backoutSender == null) {
+                LOGGER.error("Discarding JMS message " + message.getJMSMessageID() + " [type='" + message.getJMSType()
+                        + "'] after " + maxDeliveryAttempts + " failed deliveries, no backout queue is configured");
+                return;
+            }
+            backoutSender.send(message);
+            LOGGER.error("Moved JMS message " + message.getJMSMessageID() + " [type='" + message.getJMSType()
+                    + "'] to backout queue " + backoutQueue + " after " + maxDeliveryAttempts + " failed deliveries");
+        }
+
+        private void closeSession(QueueSession session) {
+            if (session != null) {
+                try {
+                    session.close();
+                } catch (JMSException e) {
+                    LOGGER.error("Error closing MQ session: ", e.getMessage(), e);
+                }
+            }
+        }
+
+        private void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,9 +1,35 @@
 package com.davinryan.common.restservice.jms;
 
+import com.davinryan.common.restservice.warmup.StartupWarmUp;
+import com.davinryan.common.restservice.warmup.Warmable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.jms.*;
+import javax.management.JMException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * A JMS Queue Publisher for submitting Form XML Body messages onto an MQ Queue.
@@ -11,14 +37,89 @@ import javax.jms.*;
  * The binding between the java:comp/env name and the global JNDI name (as injected by the {@code @Resource()})<br>
  * annotation is performed in the ibm-ejb-jar-bnd.xml deployment decriptor file.
  * <p>
+ * Sends are thread safe and run concurrently. Each send borrows a session and sender from a bounded pool that shares
+ * the single JMS connection, rather than creating and closing a new session per message. {@link #sendBatch} borrows
+ * from a second pool of transacted sessions on the same connection.
+ * <p>
+ * Call {@link #enableAsyncSending} to also allow fire-and-forget sends via {@link #sendAsync}. These are queued in
+ * memory and sent by background threads so the caller does not wait for the MQ round trip.
+ * <p>
+ * If the connection fails (reported through the connection's {@link ExceptionListener} or found by the background
+ * health probe) it is re-created with exponential backoff and jitter. {@link #healthCheck()} only reads the state
+ * recorded by the probe so it is cheap to call as often as a load balancer likes.
+ * <p>
+ * Large payloads can optionally be sent compressed, see {@link #setCompressionThreshold(int)}.
+ * <p>
+ * Send latency, throughput, failures and reconnects are recorded in {@link JmsPublisherMetrics}, which can be exposed
+ * over JMX with {@link #registerMetrics(String)}.
+ * <p>
+ * Every message carries the trace context of the service call that sent it, see {@link JmsTraceContext}.
+ * <p>
+ * Container managed publishers register with {@link StartupWarmUp} after construction, see
+ * {@link #registerForWarmUp()}, so the whole session pool is opened before the first send.
  */
-public class JmsQueuePublisher implements MessagePublisher {
+public class JmsQueuePublisher implements MessagePublisher, Warmable {
 
     /**
      * Logging instance.
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(JmsQueuePublisher.class.getName());
 
+    /**
+     * Default maximum number of pooled sessions.
+     */
+    public static final int DEFAULT_POOL_SIZE = 10;
+
+    /**
+     * Default time to wait for a pooled session before giving up.
+     */
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Default number of messages committed together by {@link #sendBatch}.
+     */
+    public static final int DEFAULT_BATCH_COMMIT_SIZE = 100;
+
+    /**
+     * How long {@link #tearDown()} waits for queued asynchronous sends to drain.
+     */
+    public static final long ASYNC_DRAIN_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * Default delay before the first reconnect attempt. Doubles with every failed attempt.
+     */
+    public static final long DEFAULT_RECONNECT_INITIAL_DELAY_MILLIS = 1000;
+
+    /**
+     * Default upper bound on the delay between reconnect attempts.
+     */
+    public static final long DEFAULT_RECONNECT_MAX_DELAY_MILLIS = 60000;
+
+    /**
+     * Default interval between background health probes.
+     */
+    public static final long DEFAULT_HEALTH_PROBE_INTERVAL_MILLIS = 10000;
+
+    /**
+     * Interval at which {@link JmsPublisherMetrics#getThroughputPerSecond()} is sampled.
+     */
+    private static final long THROUGHPUT_SAMPLE_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Default number of characters per message sent by {@link #sendStream}.
+     */
+    public static final int DEFAULT_STREAM_CHUNK_SIZE = 65536;
+
+    /**
+     * Number of characters encoded at a time when compressing a payload.
+     */
+    private static final int COMPRESSION_BUFFER_SIZE = 8192;
+
+    /**
+     * Options used by sends that do not specify any: persistent, default priority and no expiry.
+     */
+    private static final SendOptions DEFAULT_SEND_OPTIONS = SendOptions.persistent();
+
     /**
      * The MQ Queue Connection Factory as setup in the application server
      */
@@ -32,34 +133,312 @@ public class JmsQueuePublisher implements MessagePublisher {
     /**
      * The JMS connection to MQ
      */
-    private QueueConnection connection;
+    private volatile QueueConnection connection;
+
+    /**
+     * Pool of sessions and senders sharing {@link #connection}
+     */
+    private volatile QueueSessionPool sessionPool;
+
+    /**
+     * Pool of transacted sessions and senders sharing {@link #connection}, used by {@link #sendBatch}
+     */
+    private volatile QueueSessionPool transactedSessionPool;
+
+    /**
+     * Maximum number of pooled sessions
+     */
+    private final int poolSize;
+
+    /**
+     * How long a send waits for a pooled session
+     */
+    private final long borrowTimeoutMillis;
+
+    /**
+     * Number of messages per transaction in {@link #sendBatch}
+     */
+    private volatile int batchCommitSize = DEFAULT_BATCH_COMMIT_SIZE;
+
+    /**
+     * Queue of pending asynchronous sends, null until {@link #enableAsyncSending} is called
+     */
+    private volatile AsyncSendQueue asyncSendQueue;
+
+    /**
+     * Runs reconnect attempts and health probes
+     */
+    private final ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "jms-publisher-monitor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Random jitter = new Random();
+
+    private volatile long reconnectInitialDelayMillis = DEFAULT_RECONNECT_INITIAL_DELAY_MILLIS;
+
+    private volatile long reconnectMaxDelayMillis = DEFAULT_RECONNECT_MAX_DELAY_MILLIS;
+
+    private volatile long healthProbeIntervalMillis = DEFAULT_HEALTH_PROBE_INTERVAL_MILLIS;
+
+    /**
+     * Payloads longer than this many characters are sent compressed, 0 disables compression
+     */
+    private volatile int compressionThreshold;
+
+    /**
+     * Characters per message sent by {@link #sendStream}
+     */
+    private volatile int streamChunkSize = DEFAULT_STREAM_CHUNK_SIZE;
+
+    /**
+     * Send, failure, latency and health metrics
+     */
+    private final JmsPublisherMetrics metrics = new JmsPublisherMetrics();
+
+    /**
+     * Whether every send logs its details at INFO
+     */
+    private volatile boolean logSendDetails = true;
+
+    /**
+     * Suppresses re-publication of idempotency keys, null when disabled
+     */
+    private volatile DuplicateSuppressor duplicateSuppressor;
+
+    /**
+     * Number of consecutive failed reconnect attempts, guarded by this
+     */
+    private int reconnectAttempts;
+
+    /**
+     * True while a reconnect attempt is scheduled, guarded by this
+     */
+    private boolean reconnectScheduled;
+
+    /**
+     * True once {@link #tearDown()} has been called
+     */
+    private volatile boolean tornDown;
+
+    /**
+     * Last known health of the connection as recorded by the background probe
+     */
+    private volatile HealthState healthState = HealthState.down("Connection has not been initialised");
 
     /**
      * Constructs a new QueuePublisher.
      */
     public JmsQueuePublisher(QueueConnectionFactory queueConnectionFactory, Queue dest) {
+        this(queueConnectionFactory, dest, DEFAULT_POOL_SIZE, DEFAULT_BORROW_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructs a new QueuePublisher.
+     *
+     * @param poolSize            maximum number of sessions, and therefore concurrent sends, on the connection
+     * @param borrowTimeoutMillis how long a send waits for a free session before failing
+     */
+    public JmsQueuePublisher(QueueConnectionFactory queueConnectionFactory, Queue dest, int poolSize, long borrowTimeoutMillis) {
         this.queueConnectionFactory = queueConnectionFactory;
         this.destination = dest;
+        this.poolSize = poolSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
         init();
     }
 
+    /**
+     * Register with {@link StartupWarmUp} so the next warm up opens the session pool. Called by the container once
+     * the publisher is fully constructed; call it yourself if the publisher is not container managed.
+     */
+    @PostConstruct
+    public void registerForWarmUp() {
+        StartupWarmUp.register(this);
+    }
+
+    /**
+     * Open every pooled session now so early sends do not pay for session creation.
+     *
+     * @throws JMSException if the connection is down or a session cannot be created
+     */
+    @Override
+    public void warmUp() throws JMSException {
+        QueueSessionPool pool = sessionPool;
+        if (pool == null) {
+            throw new JMSException("Cannot warm up JMS publisher for " + destination + ", not connected");
+        }
+        int idle = pool.prefill(poolSize);
+        LOGGER.info("Opened {} JMS sessions for {}", idle, destination);
+    }
+
     /**
      * Initialises the connection
      */
     private synchronized void init() {
         if (null == connection) {
             try {
-                connection = this.queueConnectionFactory.createQueueConnection("mqm", "");
+                connect();
             } catch (JMSException e) {
                 LOGGER.error("Error creating JMS Connection: " + e.getMessage(), e);
+                healthState = HealthState.down(e.getMessage());
+                scheduleReconnect();
             }
         }
+        scheduleHealthProbe();
+        monitor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                metrics.sampleThroughput();
+            }
+        }, THROUGHPUT_SAMPLE_INTERVAL_MILLIS, THROUGHPUT_SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Clean up the connection
+     * Creates the connection and its session pool. Must be called while holding the lock on this.
      */
-    public synchronized void tearDown() {
+    private void connect() throws JMSException {
+        final QueueConnection newConnection = this.queueConnectionFactory.createQueueConnection("mqm", "");
+        try {
+            newConnection.setExceptionListener(new ExceptionListener() {
+                @Override
+                public void onException(final JMSException exception) {
+                    LOGGER.error("JMS Connection reported an error: " + exception.getMessage(), exception);
+                    try {
+                        // Closing the connection from the provider's own callback thread can deadlock
+                        monitor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                connectionFailed(newConnection, exception);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) { //NOSONAR
+                        // Monitor has been shut down by tearDown
+                    }
+                }
+            });
+        } catch (JMSException e) {
+            // Some providers do not allow exception listeners in a container, the health probe will spot failures instead
+            LOGGER.warn("Unable to register JMS ExceptionListener: " + e.getMessage());
+        }
+        connection = newConnection;
+        sessionPool = new QueueSessionPool(newConnection, destination, poolSize, borrowTimeoutMillis);
+        transactedSessionPool = new QueueSessionPool(newConnection, destination, poolSize, borrowTimeoutMillis, true);
+        reconnectAttempts = 0;
+        healthState = HealthState.up();
+    }
+
+    /**
+     * Discard a failed connection and start trying to reconnect.
+     */
+    private synchronized void connectionFailed(QueueConnection failedConnection, JMSException cause) {
+        if (tornDown || failedConnection != connection) {
+            // Already torn down or already replaced
+            return;
+        }
+        healthState = HealthState.down(cause.getMessage());
+        closeConnection();
+        scheduleReconnect();
+    }
+
+    /**
+     * Schedule the next reconnect attempt using exponential backoff with jitter. Must be called while holding the lock
+     * on this.
+     */
+    private void scheduleReconnect() {
+        if (reconnectScheduled || tornDown) {
+            return;
+        }
+        long backoff = reconnectInitialDelayMillis << Math.min(reconnectAttempts, 20);
+        long cappedBackoff = Math.min(Math.max(backoff, 0), reconnectMaxDelayMillis);
+        // Jitter between 50% and 100% of the backoff so a fleet of nodes does not reconnect in lock step
+        long delay = cappedBackoff / 2 + (long) (jitter.nextDouble() * (cappedBackoff / 2 + 1));
+        reconnectScheduled = true;
+        LOGGER.info("Attempting to reconnect to MQ in " + delay + "ms (attempt " + (reconnectAttempts + 1) + ")");
+        monitor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                reconnect();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void reconnect() {
+        reconnectScheduled = false;
+        if (tornDown || connection != null) {
+            return;
+        }
+        int failedAttempts = reconnectAttempts;
+        try {
+            connect();
+            metrics.reconnected();
+            LOGGER.info("Reconnected to MQ after " + failedAttempts + " failed attempts");
+        } catch (JMSException e) {
+            reconnectAttempts++;
+            LOGGER.error("Error re-creating JMS Connection: " + e.getMessage());
+            healthState = HealthState.down(e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    private void scheduleHealthProbe() {
+        if (tornDown) {
+            return;
+        }
+        try {
+            monitor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        probeHealth();
+                    } finally {
+                        scheduleHealthProbe();
+                    }
+                }
+            }, healthProbeIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) { //NOSONAR
+            // Monitor has been shut down by tearDown
+        }
+    }
+
+    /**
+     * Opens and closes a real session to check MQ is alive and records the result for {@link #healthCheck()}.
+     */
+    private void probeHealth() {
+        QueueConnection currentConnection = connection;
+        if (null == currentConnection) {
+            return;
+        }
+        QueueSession session = null;
+        long startNanos = System.nanoTime();
+        try {
+            session = createSession(currentConnection);
+            metrics.healthChecked(System.nanoTime() - startNanos);
+            healthState = HealthState.up();
+        } catch (JMSException e) {
+            LOGGER.error("MQ health probe failed: " + e.getMessage());
+            metrics.healthChecked(System.nanoTime() - startNanos);
+            connectionFailed(currentConnection, e);
+        } finally {
+            closeSession(session);
+        }
+    }
+
+    /**
+     * Close the connection and its session pool. Must be called while holding the lock on this.
+     */
+    private void closeConnection() {
+        if (sessionPool != null) {
+            sessionPool.close();
+            sessionPool = null;
+        }
+        if (transactedSessionPool != null) {
+            transactedSessionPool.close();
+            transactedSessionPool = null;
+        }
         if (connection != null) {
             try {
                 connection.close();
@@ -70,45 +449,534 @@ public class JmsQueuePublisher implements MessagePublisher {
         }
     }
 
+    /**
+     * Clean up the connection
+     */
+    public synchronized void tearDown() {
+        if (asyncSendQueue != null) {
+            asyncSendQueue.shutdown(ASYNC_DRAIN_TIMEOUT_MILLIS);
+            asyncSendQueue = null;
+            metrics.setAsyncSendQueue(null);
+        }
+        tornDown = true;
+        monitor.shutdownNow();
+        metrics.unregister();
+        closeConnection();
+        healthState = HealthState.down("Publisher has been torn down");
+    }
+
+    /**
+     * Send payloads longer than {@code compressionThreshold} characters as gzipped {@link BytesMessage}s marked with
+     * the {@link MessagePayloadUtils#CONTENT_ENCODING_PROPERTY} property. Consumers must decode them with
+     * {@link MessagePayloadUtils}. Set to 0 (the default) to always send a {@link TextMessage}.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Turn the INFO lines logged for every send on or off: four per message and one per batch or streamed message
+     * group. They are on by default.
+     */
+    public void setLogSendDetails(boolean logSendDetails) {
+        this.logSendDetails = logSendDetails;
+    }
+
+    /**
+     * Suppress sends whose {@link SendOptions#getIdempotencyKey()} was already sent within the suppressor's window. A
+     * send of a key that another thread is still sending waits for it to finish. Pass null to disable.
+     */
+    public void setDuplicateSuppressor(DuplicateSuppressor duplicateSuppressor) {
+        this.duplicateSuppressor = duplicateSuppressor;
+    }
+
+    /**
+     * @return send, failure, latency and health metrics for this publisher.
+     */
+    public JmsPublisherMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Expose {@link #getMetrics()} over JMX as
+     * {@code com.davinryan.common.restservice.jms:type=JmsQueuePublisher,name=<name>}. Unregistered by
+     * {@link #tearDown()}.
+     *
+     * @throws JMException if the MBean could not be registered, e.g. the name is already in use.
+     */
+    public void registerMetrics(String name) throws JMException {
+        metrics.register(name);
+    }
+
+    /**
+     * Set the delay before the first reconnect attempt. The delay doubles with each failed attempt.
+     */
+    public void setReconnectInitialDelayMillis(long reconnectInitialDelayMillis) {
+        this.reconnectInitialDelayMillis = reconnectInitialDelayMillis;
+    }
+
+    /**
+     * Set the upper bound on the delay between reconnect attempts.
+     */
+    public void setReconnectMaxDelayMillis(long reconnectMaxDelayMillis) {
+        this.reconnectMaxDelayMillis = reconnectMaxDelayMillis;
+    }
+
+    /**
+     * Set how often the background probe checks MQ. Takes effect after the next probe.
+     */
+    public void setHealthProbeIntervalMillis(long healthProbeIntervalMillis) {
+        this.healthProbeIntervalMillis = healthProbeIntervalMillis;
+    }
+
     /*
      * (non-Javadoc)
      *
      * @see nz.co.acc.egateway.common.messaging.JMSClientLocal#send()
      */
     @Override
-    public synchronized void send(String text, String jmsType, String sendingAppPropertyName,
-                                  String sendingAppPropertyNameValue) throws JMSException {
-        if (null == connection) {
-            throw new JMSException("Connection is null, and is unlikely to have been initialised");
-        }
+    public void send(String text, String jmsType, String sendingAppPropertyName,
+                     String sendingAppPropertyNameValue) throws JMSException {
+        send(text, jmsType, DEFAULT_SEND_OPTIONS, sendingAppPropertyName, sendingAppPropertyNameValue);
+    }
 
-        QueueSession session = null;
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If a {@link DuplicateSuppressor} has been set and {@code options} carry an idempotency key that was already sent
+     * within the suppression window, the message is not sent again. If another thread is still sending the same key this
+     * waits for it, and fails if it does not finish within the suppressor's in-flight wait.
+     */
+    @Override
+    public void send(String text, String jmsType, SendOptions options) throws JMSException {
+        DuplicateSuppressor suppressor = duplicateSuppressor;
+        String idempotencyKey = options.getIdempotencyKey();
+        if (suppressor == null || idempotencyKey == null) {
+            send(text, jmsType, options, null, null);
+            return;
+        }
+        if (!acquire(suppressor, idempotencyKey)) {
+            LOGGER.info("Suppressed duplicate JMS message [type='" + jmsType + "'] [idempotencyKey='" + idempotencyKey + "']");
+            metrics.duplicateSuppressed();
+            return;
+        }
+        boolean sent = false;
+        try {
+            send(text, jmsType, options, null, null);
+            sent = true;
+        } finally {
+            if (sent) {
+                suppressor.complete(idempotencyKey);
+            } else {
+                // Allow the caller to retry
+                suppressor.release(idempotencyKey);
+            }
+        }
+    }
 
+    /**
+     * Acquire {@code idempotencyKey}, waiting for a concurrent send of the same key to finish.
+     *
+     * @return false if the key has already been sent
+     * @throws JMSException if a concurrent send of the key did not finish in time
+     */
+    private static boolean acquire(DuplicateSuppressor suppressor, String idempotencyKey) throws JMSException {
         try {
-            session = createSession(connection);
+            return suppressor.tryAcquire(idempotencyKey);
+        } catch (TimeoutException e) {
+            throw MessagePayloadUtils.toJMSException("Unable to send", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMSException("Interrupted while waiting for another send of idempotency key '" + idempotencyKey + "'");
+        }
+    }
+
+    private void send(String text, String jmsType, SendOptions options, String sendingAppPropertyName,
+                      String sendingAppPropertyNameValue) throws JMSException {
+        QueueSessionPool pool = sessionPool;
+        metrics.sendStarted();
+        if (null == connection || null == pool) {
+            JMSException e = new JMSException("Connection is null, MQ is unavailable or a reconnect is in progress");
+            metrics.sendFailed(e);
+            throw e;
+        }
 
-            QueueSender messageSender = createMessageSender(session);
+        long startNanos = System.nanoTime();
+        QueueSessionPool.PooledSession pooledSession;
+        try {
+            pooledSession = pool.borrow();
+        } catch (JMSException e) {
+            metrics.sendFailed(e);
+            throw e;
+        }
+        long acquiredNanos = System.nanoTime();
+        long sentNanos = acquiredNanos;
+        boolean broken = true;
 
-            TextMessage message = createMessage(text, jmsType, sendingAppPropertyName, sendingAppPropertyNameValue, session);
+        try {
+            Message message = createMessage(text, jmsType, options, pooledSession.getSession());
+            if (sendingAppPropertyName != null) {
+                message.setStringProperty(sendingAppPropertyName, sendingAppPropertyNameValue);
+            }
 
             // Set ACC specific JMSType and Sending Application
-            LOGGER.info("#####################################");
-            LOGGER.info("Sending JMS message to Queue");
-            LOGGER.info("#####################################");
-            LOGGER.info("Message Properties: [type='" + jmsType + "'] [sendingAppPropertyName='" + sendingAppPropertyName + "'] [sendingAppPropertyNameValue='" + sendingAppPropertyNameValue + "']");
+            if (logSendDetails) {
+                LOGGER.info("#####################################");
+                LOGGER.info("Sending JMS message to Queue");
+                LOGGER.info("#####################################");
+                if (sendingAppPropertyName != null) {
+                    LOGGER.info("Message Properties: [type='" + jmsType + "'] [sendingAppPropertyName='" + sendingAppPropertyName + "'] [sendingAppPropertyNameValue='" + sendingAppPropertyNameValue + "']");
+                } else {
+                    LOGGER.info("Message Properties: [type='" + jmsType + "'] " + options);
+                }
+            }
 
-            sendMessage(messageSender, message);
-            // Finalise messageSender.
-            messageSender.close();
+            sendMessage(pooledSession.getSender(), message, options);
+            sentNanos = System.nanoTime();
+            broken = false;
 
         } catch (JMSException e) {
             LOGGER.error("Error sending to MQ: ", e.getMessage());
+            metrics.sendFailed(e);
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.sendFailed(e);
             throw e;
         } finally {
-            closeSession(session);
+            pool.release(pooledSession, broken);
+        }
+        metrics.sendSucceeded(acquiredNanos - startNanos, sentNanos - acquiredNanos, System.nanoTime() - sentNanos);
+    }
+
+    /**
+     * Start background sender threads so that {@link #sendAsync} can be used. Messages that pile up in the queue are
+     * coalesced into batches of up to {@link #getBatchCommitSize()} messages.
+     *
+     * @param senderThreads      number of threads sending from the queue. Should not exceed the session pool size.
+     * @param queueCapacity      maximum number of messages waiting to be sent
+     * @param backpressurePolicy what to do when the queue is full
+     */
+    public synchronized void enableAsyncSending(int senderThreads, int queueCapacity, BackpressurePolicy backpressurePolicy) {
+        if (asyncSendQueue != null) {
+            throw new java.lang.IllegalStateException("Asynchronous sending is already enabled");
+        }
+        asyncSendQueue = new AsyncSendQueue(this, senderThreads, queueCapacity, backpressurePolicy, batchCommitSize, metrics);
+        metrics.setAsyncSendQueue(asyncSendQueue);
+    }
+
+    /**
+     * Queue a Form message (XML as String) to be sent in the background.
+     *
+     * @return a future that completes once the message has been sent to MQ, or fails with the {@link JMSException}.
+     * Cancelling it before a sender thread takes the message removes it from the in-memory queue.
+     */
+    public Future<Void> sendAsync(String text, String jmsType, String sendingAppPropertyName,
+                                  String sendingAppPropertyNameValue) {
+        return sendAsync(text, jmsType, sendingAppPropertyName, sendingAppPropertyNameValue, null);
+    }
+
+    /**
+     * Queue a Form message (XML as String) to be sent in the background, notifying {@code callback} when done.
+     *
+     * @return a future that completes once the message has been sent to MQ, or fails with the {@link JMSException}.
+     * Cancelling it before a sender thread takes the message removes it from the in-memory queue.
+     */
+    public Future<Void> sendAsync(String text, String jmsType, String sendingAppPropertyName,
+                                  String sendingAppPropertyNameValue, SendCallback<? super Void> callback) {
+        AsyncSendQueue queue = asyncSendQueue;
+        if (queue == null) {
+            throw new java.lang.IllegalStateException("Asynchronous sending has not been enabled, call enableAsyncSending first");
+        }
+        return queue.submit(text, jmsType, sendingAppPropertyName, sendingAppPropertyNameValue, callback);
+    }
+
+    @Override
+    public BatchSendResult sendBatch(List<String> forms, String jmsType, String sendingAppPropertyName,
+                                     String sendingAppPropertyNameValue) throws JMSException {
+        return sendBatch(forms, jmsType, Collections.nCopies(forms.size(), DEFAULT_SEND_OPTIONS), sendingAppPropertyName,
+                sendingAppPropertyNameValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If a {@link DuplicateSuppressor} has been set and {@code options} carry an idempotency key that was already sent
+     * within the suppression window, nothing is sent and the result is marked as a suppressed duplicate. The key is
+     * released again if any message in the batch fails.
+     */
+    @Override
+    public BatchSendResult sendBatch(List<String> forms, String jmsType, SendOptions options) throws JMSException {
+        DuplicateSuppressor suppressor = duplicateSuppressor;
+        String idempotencyKey = options.getIdempotencyKey();
+        List<SendOptions> messageOptions = Collections.nCopies(forms.size(), options);
+        if (suppressor == null || idempotencyKey == null) {
+            return sendBatch(forms, jmsType, messageOptions, null, null);
+        }
+        if (!acquire(suppressor, idempotencyKey)) {
+            LOGGER.info("Suppressed duplicate JMS batch [type='" + jmsType + "'] [idempotencyKey='" + idempotencyKey + "']");
+            metrics.duplicateSuppressed();
+            BatchSendResult result = new BatchSendResult(forms.size());
+            result.markDuplicateSuppressed();
+            return result;
+        }
+        boolean sent = false;
+        try {
+            BatchSendResult result = sendBatch(forms, jmsType, messageOptions, null, null);
+            sent = !result.hasFailures();
+            return result;
+        } finally {
+            if (sent) {
+                suppressor.complete(idempotencyKey);
+            } else {
+                // Allow the caller to retry
+                suppressor.release(idempotencyKey);
+            }
+        }
+    }
+
+    /**
+     * Send {@code forms} in transacted chunks, each with its own options. Used by {@link AsyncSendQueue} to send queued
+     * messages together while keeping the trace context each was queued with.
+     */
+    BatchSendResult sendBatch(List<String> forms, String jmsType, List<SendOptions> messageOptions) throws JMSException {
+        return sendBatch(forms, jmsType, messageOptions, null, null);
+    }
+
+    private BatchSendResult sendBatch(List<String> forms, String jmsType, List<SendOptions> messageOptions,
+                                      String sendingAppPropertyName, String sendingAppPropertyNameValue) throws JMSException {
+        QueueSessionPool pool = transactedSessionPool;
+        if (null == connection || null == pool) {
+            throw new JMSException("Connection is null, MQ is unavailable or a reconnect is in progress");
+        }
+        BatchSendResult result = new BatchSendResult(forms.size());
+        if (forms.isEmpty()) {
+            return result;
+        }
+
+        int commitSize = batchCommitSize;
+        if (logSendDetails) {
+            LOGGER.info("Sending batch of " + forms.size() + " JMS messages to Queue in chunks of " + commitSize + " [type='" + jmsType + "']");
+        }
+        int chunkStart = 0;
+        while (chunkStart < forms.size()) {
+            int chunkEnd = Math.min(chunkStart + commitSize, forms.size());
+            try {
+                sendChunk(pool, forms, chunkStart, chunkEnd, jmsType, messageOptions, sendingAppPropertyName,
+                        sendingAppPropertyNameValue, result);
+            } catch (JMSException e) {
+                // No session could be borrowed, so nothing after this chunk can be sent
+                LOGGER.error("Error sending batch to MQ: " + e.getMessage());
+                for (int i = chunkStart; i < forms.size(); i++) {
+                    result.addFailure(i, e);
+                }
+                break;
+            }
+            chunkStart = chunkEnd;
+        }
+        return result;
+    }
+
+    /**
+     * Send {@code forms[chunkStart, chunkEnd)} on a pooled transacted session and commit them together. Messages that
+     * fail to send, or every message if the commit fails, are added to {@code result}.
+     *
+     * @throws JMSException if no session could be borrowed.
+     */
+    private void sendChunk(QueueSessionPool pool, List<String> forms, int chunkStart, int chunkEnd, String jmsType,
+                           List<SendOptions> messageOptions, String sendingAppPropertyName,
+                           String sendingAppPropertyNameValue, BatchSendResult result) throws JMSException {
+        int chunkCount = chunkEnd - chunkStart;
+        metrics.sendsStarted(chunkCount);
+        long startNanos = System.nanoTime();
+        QueueSessionPool.PooledSession pooledSession;
+        try {
+            pooledSession = pool.borrow();
+        } catch (JMSException e) {
+            metrics.sendsFailed(chunkCount, e);
+            throw e;
+        }
+        long acquiredNanos = System.nanoTime();
+        long sentNanos = acquiredNanos;
+        List<Integer> sentInChunk = new ArrayList<Integer>(chunkCount);
+        int failedInChunk = 0;
+        boolean broken = true;
+
+        try {
+            QueueSession session = pooledSession.getSession();
+            for (int i = chunkStart; i < chunkEnd; i++) {
+                try {
+                    SendOptions options = messageOptions.get(i);
+                    Message message = createMessage(forms.get(i), jmsType, options, session);
+                    if (sendingAppPropertyName != null) {
+                        message.setStringProperty(sendingAppPropertyName, sendingAppPropertyNameValue);
+                    }
+                    sendMessage(pooledSession.getSender(), message, options);
+                    sentInChunk.add(i);
+                } catch (JMSException e) {
+                    LOGGER.error("Error sending batch message " + i + " to MQ: " + e.getMessage());
+                    result.addFailure(i, e);
+                    metrics.sendFailed(e);
+                    failedInChunk++;
+                }
+            }
+            session.commit();
+            sentNanos = System.nanoTime();
+            broken = false;
+        } catch (JMSException e) {
+            LOGGER.error("Error committing batch messages " + chunkStart + " to " + (chunkEnd - 1) + " to MQ: " + e.getMessage());
+            for (Integer index : sentInChunk) {
+                result.addFailure(index, e);
+            }
+            metrics.sendsFailed(sentInChunk.size(), e);
+            return;
+        } catch (RuntimeException e) {
+            metrics.sendsFailed(chunkCount - failedInChunk, e);
+            throw e;
+        } finally {
+            // A broken session is closed, which rolls back anything not committed
+            pool.release(pooledSession, broken);
+        }
+        metrics.sendsSucceeded(sentInChunk.size(), acquiredNanos - startNanos, sentNanos - acquiredNanos, System.nanoTime() - sentNanos);
+    }
+
+    @Override
+    public String sendStream(InputStream form, String charsetName, String jmsType, String sendingAppPropertyName,
+                             String sendingAppPropertyNameValue) throws JMSException {
+        try {
+            return sendStream(new InputStreamReader(form, charsetName), jmsType, sendingAppPropertyName, sendingAppPropertyNameValue);
+        } catch (UnsupportedEncodingException e) {
+            throw MessagePayloadUtils.toJMSException("Unsupported charset " + charsetName, e);
         }
     }
 
+    @Override
+    public String sendStream(Reader form, String jmsType, String sendingAppPropertyName,
+                             String sendingAppPropertyNameValue) throws JMSException {
+        QueueSessionPool pool = transactedSessionPool;
+        metrics.sendStarted();
+        if (null == connection || null == pool) {
+            JMSException e = new JMSException("Connection is null, MQ is unavailable or a reconnect is in progress");
+            metrics.sendFailed(e);
+            throw e;
+        }
+        String groupId = "ID:" + UUID.randomUUID().toString();
+        int chunkSize = streamChunkSize;
+        long startNanos = System.nanoTime();
+        QueueSessionPool.PooledSession pooledSession;
+        try {
+            pooledSession = pool.borrow();
+        } catch (JMSException e) {
+            metrics.sendFailed(e);
+            throw e;
+        }
+        long acquiredNanos = System.nanoTime();
+        long sentNanos = acquiredNanos;
+        int sequence = 1;
+        boolean broken = true;
+
+        try {
+            QueueSession session = pooledSession.getSession();
+            if (logSendDetails) {
+                LOGGER.info("Streaming JMS message group " + groupId + " to Queue in chunks of " + chunkSize + " characters [type='" + jmsType + "']");
+            }
+
+            // Read one chunk ahead so the final chunk can be flagged, keeping at most two chunks in memory
+            char[] current = new char[chunkSize];
+            char[] next = new char[chunkSize];
+            int currentLength = readChunk(form, current, 0);
+            while (true) {
+                int carried = 0;
+                if (currentLength == chunkSize && Character.isHighSurrogate(current[chunkSize - 1])) {
+                    // Never split a surrogate pair between chunks, move its first half to the next chunk
+                    next[0] = current[chunkSize - 1];
+                    currentLength--;
+                    carried = 1;
+                }
+                int nextLength = carried == 0 && currentLength < chunkSize ? -1 : readChunk(form, next, carried);
+                boolean last = nextLength <= 0;
+                Message message = createMessage(new String(current, 0, Math.max(currentLength, 0)), jmsType,
+                        sendingAppPropertyName, sendingAppPropertyNameValue, session);
+                message.setStringProperty(ChunkedMessageAssembler.GROUP_ID_PROPERTY, groupId);
+                message.setIntProperty(ChunkedMessageAssembler.GROUP_SEQ_PROPERTY, sequence);
+                message.setBooleanProperty(ChunkedMessageAssembler.LAST_CHUNK_PROPERTY, last);
+                sendMessage(pooledSession.getSender(), message, DEFAULT_SEND_OPTIONS);
+                if (last) {
+                    break;
+                }
+                char[] swap = current;
+                current = next;
+                next = swap;
+                currentLength = nextLength;
+                sequence++;
+            }
+            session.commit();
+            sentNanos = System.nanoTime();
+            broken = false;
+        } catch (IOException e) {
+            JMSException jmsException = MessagePayloadUtils.toJMSException("Unable to read payload for message group " + groupId, e);
+            metrics.sendFailed(jmsException);
+            throw jmsException;
+        } catch (JMSException e) {
+            LOGGER.error("Error streaming to MQ: " + e.getMessage());
+            metrics.sendFailed(e);
+            throw e;
+        } catch (RuntimeException e) {
+            metrics.sendFailed(e);
+            throw e;
+        } finally {
+            // A broken session is closed, which rolls back any chunks already sent
+            pool.release(pooledSession, broken);
+        }
+        metrics.streamSucceeded(sequence, acquiredNanos - startNanos, sentNanos - acquiredNanos, System.nanoTime() - sentNanos);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Committed " + sequence + " chunks for message group " + groupId);
+        }
+        return groupId;
+    }
+
+    /**
+     * Set how many characters {@link #sendStream} puts in each message. A chunk that would end half way through a
+     * surrogate pair is one character shorter.
+     */
+    public void setStreamChunkSize(int streamChunkSize) {
+        if (streamChunkSize < 2) {
+            throw new IllegalArgumentException("streamChunkSize must be at least 2 but was " + streamChunkSize);
+        }
+        this.streamChunkSize = streamChunkSize;
+    }
+
+    /**
+     * Fill {@code buffer} from {@code reader}, after the {@code offset} characters already in it.
+     *
+     * @return number of characters in the buffer, less than the buffer length only at the end of the stream, or -1 if
+     * the buffer is empty because the stream was already exhausted.
+     */
+    private static int readChunk(Reader reader, char[] buffer, int offset) throws IOException {
+        int total = offset;
+        while (total < buffer.length) {
+            int read = reader.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Set how many messages {@link #sendBatch} commits per transaction.
+     */
+    public void setBatchCommitSize(int batchCommitSize) {
+        if (batchCommitSize < 1) {
+            throw new IllegalArgumentException("batchCommitSize must be at least 1 but was " + batchCommitSize);
+        }
+        this.batchCommitSize = batchCommitSize;
+    }
+
+    public int getBatchCommitSize() {
+        return batchCommitSize;
+    }
+
     private void closeSession(QueueSession session) {
         if (session != null) {
             try {
@@ -122,21 +990,15 @@ public class JmsQueuePublisher implements MessagePublisher {
         }
     }
 
+    /**
+     * Reports the health recorded by the most recent background probe, connection error or reconnect. This does not
+     * talk to MQ.
+     */
     @Override
     public void healthCheck() throws JMSException {
-        if (null == connection) {
-            throw new JMSException("Connection is null, and is unlikely to have been initialised");
-        }
-
-        QueueSession session = null;
-
-        try {
-            session = createSession(connection);
-        } catch (JMSException e) {
-            LOGGER.error("Error sending to MQ: ", e.getMessage());
-            throw e;
-        } finally {
-            closeSession(session);
+        HealthState state = healthState;
+        if (!state.up) {
+            throw new JMSException("MQ is unavailable as of " + new Date(state.checkedAt) + ": " + state.reason);
         }
     }
 
@@ -146,40 +1008,115 @@ public class JmsQueuePublisher implements MessagePublisher {
         }
         // Transactional session = true
         QueueSession session = connection.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Creating persistant message messageSender with TimeToLive=0");
-        }
         return session;
     }
 
-    private QueueSender createMessageSender(QueueSession session) throws JMSException {
-        // Set persistent and TTL of zero (default)
-        QueueSender messageSender = session.createSender(destination);
-        messageSender.setDeliveryMode(DeliveryMode.PERSISTENT);
-        messageSender.setTimeToLive(0);
-        return messageSender;
-    }
-
-    private void sendMessage(QueueSender messageSender, TextMessage message) throws JMSException {
+    private void sendMessage(QueueSender messageSender, Message message, SendOptions options) throws JMSException {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Sending message");
         }
         // Send message
-        messageSender.send(message);
+        messageSender.send(message, options.getDeliveryMode(), options.getPriority(), options.getTimeToLive());
         if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("Message sent. Closing messageSender");
+            LOGGER.debug("Message sent");
         }
     }
 
-    private TextMessage createMessage(String text, String jmsType, String sendingAppPropertyName, String sendingAppPropertyNameValue, QueueSession session) throws JMSException {
-        // Create message
-        // WARNING - DO NOT use createTextMessage(text) to set message. It gives
-        // different results depending on installed WMQ versions. An IBM bug, who'd have thought :)
-        TextMessage message = session.createTextMessage();
-        // setText seems to work consistently...
-        message.setText(text);
-        message.setJMSType(jmsType);
+    private Message createMessage(String text, String jmsType, String sendingAppPropertyName, String sendingAppPropertyNameValue, QueueSession session) throws JMSException {
+        Message message = createMessage(text, jmsType, session);
         message.setStringProperty(sendingAppPropertyName, sendingAppPropertyNameValue);
         return message;
     }
+
+    private Message createMessage(String text, String jmsType, SendOptions options, QueueSession session) throws JMSException {
+        Message message = createMessage(text, jmsType, session);
+        if (options.getCorrelationId() != null) {
+            message.setJMSCorrelationID(options.getCorrelationId());
+        }
+        for (Map.Entry<String, Object> property : options.getProperties().entrySet()) {
+            message.setObjectProperty(property.getKey(), property.getValue());
+        }
+        return message;
+    }
+
+    private Message createMessage(String text, String jmsType, QueueSession session) throws JMSException {
+        int threshold = compressionThreshold;
+        Message message;
+        if (threshold > 0 && text != null && text.length() > threshold) {
+            message = createCompressedMessage(text, session);
+        } else {
+            // Create message
+            // WARNING - DO NOT use createTextMessage(text) to set message. It gives
+            // different results depending on installed WMQ versions. An IBM bug, who'd have thought :)
+            TextMessage textMessage = session.createTextMessage();
+            // setText seems to work consistently...
+            textMessage.setText(text);
+            message = textMessage;
+        }
+        message.setJMSType(jmsType);
+        JmsTraceContext.inject(message);
+        return message;
+    }
+
+    /**
+     * Gzips {@code text} straight into the body of a {@link BytesMessage} a buffer at a time, so the full compressed
+     * copy is only ever held by the provider.
+     */
+    private BytesMessage createCompressedMessage(String text, QueueSession session) throws JMSException {
+        BytesMessage message = session.createBytesMessage();
+        message.setStringProperty(MessagePayloadUtils.CONTENT_ENCODING_PROPERTY, MessagePayloadUtils.GZIP);
+        GZIPOutputStream gzip = null;
+        try {
+            gzip = new GZIPOutputStream(new BytesMessageOutputStream(message), COMPRESSION_BUFFER_SIZE);
+            Writer writer = new OutputStreamWriter(gzip, MessagePayloadUtils.UTF_8);
+            for (int offset = 0; offset < text.length(); offset += COMPRESSION_BUFFER_SIZE) {
+                writer.write(text, offset, Math.min(COMPRESSION_BUFFER_SIZE, text.length() - offset));
+            }
+            writer.close();
+        } catch (IOException e) {
+            throw MessagePayloadUtils.toJMSException("Unable to compress message body", e);
+        } finally {
+            // Closing the gzip stream ends its Deflater, which otherwise holds native memory until finalized
+            closeQuietly(gzip);
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Compressed " + text.length() + " characters into a BytesMessage");
+        }
+        return message;
+    }
+
+    private static void closeQuietly(GZIPOutputStream gzip) {
+        if (gzip != null) {
+            try {
+                gzip.close();
+            } catch (IOException e) { //NOSONAR
+                // Already closed unless compression failed, and that failure has been reported
+            }
+        }
+    }
+
+    /**
+     * Immutable snapshot of the connection health.
+     */
+    private static final class HealthState {
+
+        private final boolean up;
+
+        private final String reason;
+
+        private final long checkedAt = System.currentTimeMillis();
+
+        private HealthState(boolean up, String reason) {
+            this.up = up;
+            this.reason = reason;
+        }
+
+        static HealthState up() {
+            return new HealthState(true, null);
+        }
+
+        static HealthState down(String reason) {
+            return new HealthState(false, reason);
+        }
+    }
 }
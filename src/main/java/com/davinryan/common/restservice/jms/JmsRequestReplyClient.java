@@ -0,0 +1,411 @@
+package com.davinryan.common.restservice.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Queue;
+import javax.jms.QueueConnection;
+import javax.jms.QueueConnectionFactory;
+import javax.jms.QueueReceiver;
+import javax.jms.QueueSession;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+import javax.jms.TextMessage;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Non-blocking request/reply over MQ.
+ * <p>
+ * All requests from one client share a single temporary reply queue, consumed by one listener. Each request is sent
+ * with a unique JMSCorrelationID and its {@link Future} is parked in a correlation map; the listener completes the
+ * matching future when the reply arrives. Request deadlines are kept in a {@link DelayQueue}, so a single timeout
+ * thread sleeps until the earliest deadline rather than scanning every outstanding request. Many thousands of requests
+ * can therefore be outstanding without a thread or a temporary queue each. Cancelling a future forgets its request.
+ * <p>
+ * If the connection reports an error through its {@link ExceptionListener}, requests waiting on its temporary reply
+ * queue are failed, since the queue goes with the connection, and a new connection and reply queue are created with
+ * exponential backoff. Requests made while reconnecting fail straight away.
+ * <p>
+ * The replying service must copy the request's JMSCorrelationID onto the reply and send it to the request's
+ * JMSReplyTo.
+ */
+public class JmsRequestReplyClient {
+
+    /**
+     * Logging instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmsRequestReplyClient.class.getName());
+
+    private static final long RECONNECT_INITIAL_DELAY_MILLIS = 1000;
+
+    private static final long RECONNECT_MAX_DELAY_MILLIS = 60000;
+
+    private final QueueConnectionFactory queueConnectionFactory;
+
+    private final Queue requestQueue;
+
+    private final int poolSize;
+
+    private final ConcurrentMap<String, PendingReply> pendingReplies = new ConcurrentHashMap<String, PendingReply>();
+
+    /**
+     * Requests in deadline order. Entries for requests that were answered or cancelled are skipped when they expire.
+     */
+    private final DelayQueue<PendingReply> deadlines = new DelayQueue<PendingReply>();
+
+    private final Thread timeoutThread;
+
+    /**
+     * Runs reconnect attempts
+     */
+    private final ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "jms-reply-monitor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Current connection and reply queue, null while reconnecting
+     */
+    private volatile ReplyChannel channel;
+
+    /**
+     * Number of consecutive failed reconnect attempts, guarded by this
+     */
+    private int reconnectAttempts;
+
+    private volatile boolean closed;
+
+    /**
+     * Connects to MQ and starts listening for replies.
+     *
+     * @param poolSize maximum number of requests sent concurrently
+     * @throws JMSException if the connection or reply queue could not be created
+     */
+    public JmsRequestReplyClient(QueueConnectionFactory queueConnectionFactory, Queue requestQueue, int poolSize) throws JMSException {
+        this.queueConnectionFactory = queueConnectionFactory;
+        this.requestQueue = requestQueue;
+        this.poolSize = poolSize;
+        this.channel = connect();
+        timeoutThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                expireTimedOutRequests();
+            }
+        }, "jms-reply-timeout");
+        timeoutThread.setDaemon(true);
+        timeoutThread.start();
+    }
+
+    /**
+     * Send a request and return straight away.
+     *
+     * @param options       delivery settings and properties. Any correlation id is replaced by the one used to match
+     *                      the reply.
+     * @param timeoutMillis how long to wait for the reply before the future fails with a {@link TimeoutException}
+     * @return a future completed with the reply message. Read its payload with {@link MessagePayloadUtils}.
+     * @throws JMSException if the request could not be sent
+     */
+    public Future<Message> request(String text, String jmsType, SendOptions options, long timeoutMillis) throws JMSException {
+        return request(text, jmsType, options, timeoutMillis, null);
+    }
+
+    /**
+     * Send a request and return straight away, notifying {@code callback} on the listener thread when the reply
+     * arrives or the request times out.
+     */
+    public Future<Message> request(String text, String jmsType, SendOptions options, long timeoutMillis,
+                                   SendCallback<? super Message> callback) throws JMSException {
+        ReplyChannel current = channel;
+        if (current == null) {
+            throw new JMSException("Not connected to MQ, a reconnect is in progress");
+        }
+        final String correlationId = "ID:" + UUID.randomUUID().toString();
+        final PendingReply pendingReply = new PendingReply(correlationId, current,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), new JmsFuture<Message>(callback));
+        pendingReplies.put(correlationId, pendingReply);
+        pendingReply.future.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                pendingReplies.remove(correlationId, pendingReply);
+            }
+        });
+
+        QueueSessionPool.PooledSession pooledSession;
+        try {
+            pooledSession = current.sessionPool.borrow();
+        } catch (JMSException e) {
+            pendingReplies.remove(correlationId);
+            throw e;
+        }
+        boolean broken = true;
+        try {
+            // WARNING - DO NOT use createTextMessage(text) to set message, see JmsQueuePublisher.
+            TextMessage message = pooledSession.getSession().createTextMessage();
+            message.setText(text);
+            message.setJMSType(jmsType);
+            message.setJMSCorrelationID(correlationId);
+            message.setJMSReplyTo(current.replyQueue);
+            for (Map.Entry<String, Object> property : options.getProperties().entrySet()) {
+                message.setObjectProperty(property.getKey(), property.getValue());
+            }
+            JmsTraceContext.inject(message);
+            pooledSession.getSender().send(message, options.getDeliveryMode(), options.getPriority(), options.getTimeToLive());
+            broken = false;
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Sent request " + correlationId + " to " + requestQueue);
+            }
+        } catch (JMSException e) {
+            pendingReplies.remove(correlationId);
+            LOGGER.error("Error sending request to MQ: " + e.getMessage());
+            throw e;
+        } finally {
+            current.sessionPool.release(pooledSession, broken);
+        }
+        deadlines.add(pendingReply);
+        return pendingReply.future;
+    }
+
+    /**
+     * @return number of requests still waiting for a reply.
+     */
+    public int getPendingCount() {
+        return pendingReplies.size();
+    }
+
+    /**
+     * Stop listening, fail every outstanding request and close the connection.
+     */
+    public void close() {
+        ReplyChannel current;
+        synchronized (this) {
+            closed = true;
+            current = channel;
+            channel = null;
+        }
+        monitor.shutdownNow();
+        timeoutThread.interrupt();
+        if (current != null) {
+            current.close();
+        }
+        failPending(null, "Request/reply client was closed before a reply arrived");
+    }
+
+    private ReplyChannel connect() throws JMSException {
+        final QueueConnection newConnection = queueConnectionFactory.createQueueConnection("mqm", "");
+        try {
+            // Only ever used by the provider's listener thread once the connection is started
+            QueueSession replySession = newConnection.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
+            TemporaryQueue replyQueue = replySession.createTemporaryQueue();
+            QueueReceiver replyReceiver = replySession.createReceiver(replyQueue);
+            replyReceiver.setMessageListener(new MessageListener() {
+                @Override
+                public void onMessage(Message message) {
+                    onReply(message);
+                }
+            });
+            try {
+                newConnection.setExceptionListener(new ExceptionListener() {
+                    @Override
+                    public void onException(final JMSException exception) {
+                        LOGGER.error("JMS Connection reported an error: " + exception.getMessage(), exception);
+                        try {
+                            // Closing the connection from the provider's own callback thread can deadlock
+                            monitor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    connectionFailed(newConnection);
+                                }
+                            });
+                        } catch (RejectedExecutionException e) { //NOSONAR
+                            // Monitor has been shut down by close
+                        }
+                    }
+                });
+            } catch (JMSException e) {
+                // Some providers do not allow exception listeners in a container, failed sends are reported instead
+                LOGGER.warn("Unable to register JMS ExceptionListener: " + e.getMessage());
+            }
+            QueueSessionPool sessionPool = new QueueSessionPool(newConnection, requestQueue, poolSize, JmsQueuePublisher.DEFAULT_BORROW_TIMEOUT_MILLIS);
+            newConnection.start();
+            return new ReplyChannel(newConnection, replyQueue, sessionPool);
+        } catch (JMSException e) {
+            closeConnection(newConnection);
+            throw e;
+        }
+    }
+
+    /**
+     * Drop a failed connection, fail the requests waiting on its reply queue and start reconnecting.
+     */
+    private synchronized void connectionFailed(QueueConnection failedConnection) {
+        ReplyChannel current = channel;
+        if (closed || current == null || current.connection != failedConnection) {
+            // Already closed or already replaced
+            return;
+        }
+        channel = null;
+        current.close();
+        failPending(current, "Connection to MQ was lost before a reply arrived");
+        scheduleReconnect();
+    }
+
+    /**
+     * Schedule the next reconnect attempt with exponential backoff. Must be called while holding the lock on this.
+     */
+    private void scheduleReconnect() {
+        long delay = Math.min(RECONNECT_INITIAL_DELAY_MILLIS << Math.min(reconnectAttempts, 20), RECONNECT_MAX_DELAY_MILLIS);
+        LOGGER.info("Attempting to reconnect request/reply client to MQ in " + delay + "ms (attempt " + (reconnectAttempts + 1) + ")");
+        try {
+            monitor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    reconnect();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) { //NOSONAR
+            // Monitor has been shut down by close
+        }
+    }
+
+    private synchronized void reconnect() {
+        if (closed || channel != null) {
+            return;
+        }
+        try {
+            channel = connect();
+            LOGGER.info("Reconnected request/reply client to MQ after " + reconnectAttempts + " failed attempts");
+            reconnectAttempts = 0;
+        } catch (JMSException e) {
+            reconnectAttempts++;
+            LOGGER.error("Error re-creating JMS Connection for request/reply client: " + e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * Fail the requests waiting for a reply on {@code failedChannel}, or on any channel if it is null.
+     */
+    private void failPending(ReplyChannel failedChannel, String reason) {
+        Iterator<PendingReply> iterator = pendingReplies.values().iterator();
+        while (iterator.hasNext()) {
+            PendingReply pendingReply = iterator.next();
+            if (failedChannel == null || pendingReply.channel == failedChannel) {
+                iterator.remove();
+                pendingReply.future.fail(new JMSException(reason));
+            }
+        }
+    }
+
+    private void onReply(Message message) {
+        try {
+            String correlationId = message.getJMSCorrelationID();
+            PendingReply pendingReply = correlationId == null ? null : pendingReplies.remove(correlationId);
+            if (pendingReply == null) {
+                LOGGER.warn("Discarding reply with unknown, expired or cancelled correlation id " + correlationId);
+                return;
+            }
+            pendingReply.future.complete(message);
+        } catch (JMSException e) {
+            LOGGER.error("Error reading reply from MQ: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Fail requests as their deadlines pass, until interrupted by {@link #close()}.
+     */
+    private void expireTimedOutRequests() {
+        while (!closed) {
+            PendingReply expired;
+            try {
+                expired = deadlines.take();
+            } catch (InterruptedException e) { //NOSONAR
+                // Interrupted by close
+                return;
+            }
+            if (pendingReplies.remove(expired.correlationId, expired)) {
+                expired.future.fail(new TimeoutException("No reply to request " + expired.correlationId + " within timeout"));
+            }
+        }
+    }
+
+    private static void closeConnection(QueueConnection connection) {
+        try {
+            connection.close();
+        } catch (JMSException e) {
+            LOGGER.error("Error closing JMS Connection: ", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A connection with its temporary reply queue and pool of request sessions.
+     */
+    private static class ReplyChannel {
+
+        private final QueueConnection connection;
+
+        private final TemporaryQueue replyQueue;
+
+        private final QueueSessionPool sessionPool;
+
+        ReplyChannel(QueueConnection connection, TemporaryQueue replyQueue, QueueSessionPool sessionPool) {
+            this.connection = connection;
+            this.replyQueue = replyQueue;
+            this.sessionPool = sessionPool;
+        }
+
+        void close() {
+            sessionPool.close();
+            closeConnection(connection);
+        }
+    }
+
+    private static class PendingReply implements Delayed {
+
+        private final String correlationId;
+
+        private final ReplyChannel channel;
+
+        private final long deadlineNanos;
+
+        private final JmsFuture<Message> future;
+
+        PendingReply(String correlationId, ReplyChannel channel, long deadlineNanos, JmsFuture<Message> future) {
+            this.correlationId = correlationId;
+            this.channel = channel;
+            this.deadlineNanos = deadlineNanos;
+            this.future = future;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            long difference = deadlineNanos - ((PendingReply) other).deadlineNanos;
+            return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+        }
+    }
+}
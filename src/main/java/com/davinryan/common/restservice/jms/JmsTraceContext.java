@@ -0,0 +1,131 @@
+package com.davinryan.common.restservice.jms;
+
+import com.davinryan.common.restservice.logging.LogServiceCallWithMDCAspect;
+import org.slf4j.MDC;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * Carries the trace context of a service call across MQ.
+ * <p>
+ * On the producer side {@link #inject(Message)} copies the cid and operation id of the call currently being logged by
+ * {@link LogServiceCallWithMDCAspect}, plus the send time, onto the message as properties. On the consumer side
+ * {@link #restore(Message)} puts them back into the MDC and returns how long the message waited on the queue, so
+ * producer and consumer logs can be joined and each hop's latency measured.
+ * <p>
+ * Messages sent later from another thread, such as {@link JmsQueuePublisher#sendAsync} and {@link MessageOutbox}
+ * sends, take a snapshot with {@link #capture(String, String)} when the caller queues them. The snapshot is sent as
+ * {@link SendOptions} properties, which are applied after {@link #inject(Message)} and so win over whatever the sending
+ * thread has.
+ */
+public class JmsTraceContext {
+
+    /**
+     * String property holding the correlation id of the producing call.
+     */
+    public static final String CORRELATION_ID_PROPERTY = "cid";
+
+    /**
+     * String property holding the id of the producing operation.
+     */
+    public static final String PARENT_OPERATION_ID_PROPERTY = "parentOperationId";
+
+    /**
+     * Long property holding the producer's clock, in epoch millis, when the message was sent.
+     */
+    public static final String SEND_TIMESTAMP_PROPERTY = "sendTimestamp";
+
+    /**
+     * MDC key for the correlation id, matching {@link LogServiceCallWithMDCAspect}.
+     */
+    public static final String MDC_CORRELATION_ID = "cid";
+
+    /**
+     * MDC key for the id of the producing operation.
+     */
+    public static final String MDC_PARENT_OPERATION_ID = "parentOperationId";
+
+    private JmsTraceContext() {
+    }
+
+    /**
+     * Copy the current thread's trace context onto {@code message}. A cid already set on the message, e.g. through
+     * {@link SendOptions}, is left alone.
+     */
+    public static void inject(Message message) throws JMSException {
+        String correlationId = LogServiceCallWithMDCAspect.currentCorrelationId();
+        if (correlationId != null && !message.propertyExists(CORRELATION_ID_PROPERTY)) {
+            message.setStringProperty(CORRELATION_ID_PROPERTY, correlationId);
+        }
+        String operationId = LogServiceCallWithMDCAspect.currentOperationId();
+        if (operationId != null) {
+            message.setStringProperty(PARENT_OPERATION_ID_PROPERTY, operationId);
+        }
+        message.setLongProperty(SEND_TIMESTAMP_PROPERTY, System.currentTimeMillis());
+    }
+
+    /**
+     * @return options carrying the current thread's trace context, the current time and the sending application
+     * property, for a message that will be sent later from another thread.
+     */
+    static SendOptions capture(String sendingAppPropertyName, String sendingAppPropertyNameValue) {
+        return sendOptions(sendingAppPropertyName, sendingAppPropertyNameValue,
+                LogServiceCallWithMDCAspect.currentCorrelationId(), LogServiceCallWithMDCAspect.currentOperationId(),
+                System.currentTimeMillis());
+    }
+
+    /**
+     * @return options carrying a previously captured trace context and the sending application property.
+     */
+    static SendOptions sendOptions(String sendingAppPropertyName, String sendingAppPropertyNameValue, String correlationId,
+                                   String operationId, long sendTimestamp) {
+        SendOptions options = new SendOptions();
+        if (sendingAppPropertyName != null && sendingAppPropertyNameValue != null) {
+            options.setProperty(sendingAppPropertyName, sendingAppPropertyNameValue);
+        }
+        if (correlationId != null) {
+            options.setProperty(CORRELATION_ID_PROPERTY, correlationId);
+        }
+        if (operationId != null) {
+            options.setProperty(PARENT_OPERATION_ID_PROPERTY, operationId);
+        }
+        options.setProperty(SEND_TIMESTAMP_PROPERTY, sendTimestamp);
+        return options;
+    }
+
+    /**
+     * @return the cid of {@code message}, falling back to its JMSCorrelationID.
+     */
+    public static String getCorrelationId(Message message) throws JMSException {
+        String correlationId = message.getStringProperty(CORRELATION_ID_PROPERTY);
+        return correlationId != null ? correlationId : message.getJMSCorrelationID();
+    }
+
+    /**
+     * Put the trace context of {@code message} into the MDC. Call {@link #clear()} once the message has been handled.
+     *
+     * @return milliseconds between the producer sending and now, or -1 if the message has no send timestamp. Subject
+     * to clock skew between producer and consumer hosts.
+     */
+    public static long restore(Message message) throws JMSException {
+        String correlationId = getCorrelationId(message);
+        MDC.put(MDC_CORRELATION_ID, String.format("cid='%s' ", correlationId == null ? "unspecified" : correlationId));
+        String parentOperationId = message.getStringProperty(PARENT_OPERATION_ID_PROPERTY);
+        if (parentOperationId != null) {
+            MDC.put(MDC_PARENT_OPERATION_ID, parentOperationId);
+        }
+        if (!message.propertyExists(SEND_TIMESTAMP_PROPERTY)) {
+            return -1;
+        }
+        return Math.max(0, System.currentTimeMillis() - message.getLongProperty(SEND_TIMESTAMP_PROPERTY));
+    }
+
+    /**
+     * Remove what {@link #restore(Message)} put into the MDC.
+     */
+    public static void clear() {
+        MDC.remove(MDC_CORRELATION_ID);
+        MDC.remove(MDC_PARENT_OPERATION_ID);
+    }
+}
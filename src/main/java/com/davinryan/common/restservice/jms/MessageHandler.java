@@ -0,0 +1,15 @@
+package com.davinryan.common.restservice.jms;
+
+import javax.jms.Message;
+
+/**
+ * Handles messages received by a {@link JmsQueueConsumer}.
+ */
+public interface MessageHandler {
+
+    /**
+     * Handle one message. Throwing rolls back the transaction the message was received in, so every message in that
+     * batch will be redelivered; handlers should therefore be idempotent.
+     */
+    void handle(Message message) throws Exception; //NOSONAR
+}
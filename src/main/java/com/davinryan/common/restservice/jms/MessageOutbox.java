@@ -0,0 +1,646 @@
+package com.davinryan.common.restservice.jms;
+
+import com.davinryan.common.restservice.logging.LogServiceCallWithMDCAspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.JMSException;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A local, disk-backed store-and-forward outbox in front of a {@link MessagePublisher} such as
+ * {@link JmsQueuePublisher}.
+ * <p>
+ * {@link #send} appends the message to an append-only, memory-mapped segment file and returns once it has been
+ * written to disk, so the caller only pays the local append and not the MQ round trip, and does not fail when MQ is
+ * down. Concurrent appends share a single fsync. A background forwarder sends the stored messages to MQ in order,
+ * retrying with backoff while MQ is unavailable, and records how far it has got in an offset file so it carries on
+ * from the same place after a restart. Fully forwarded segments are deleted.
+ * <p>
+ * The trace context of the sending call and the time it was appended are stored with each message and forwarded as
+ * {@link SendOptions} properties, see {@link JmsTraceContext#capture(String, String)}, so a forwarded message carries
+ * the caller's cid and send time rather than the forwarder's.
+ * <p>
+ * A message that still fails after {@link #setMaxForwardAttempts(int) maxForwardAttempts} tries while MQ passes its
+ * health check is parked: it is appended to the {@value #PARKED_FILE} file in the outbox directory, in the same
+ * length prefixed encoding as the segments, and forwarding moves on to the next message. Failures while MQ is
+ * unavailable are retried without limit.
+ * <p>
+ * Delivery is at least once: a message forwarded just before a crash may be forwarded again after the restart, and a
+ * {@link #send} that failed because the disk could not be flushed may still be forwarded if a later flush succeeds.
+ */
+public class MessageOutbox {
+
+    /**
+     * Logging instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageOutbox.class.getName());
+
+    /**
+     * Default size of each segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Default number of times a message is tried against a healthy MQ before it is parked.
+     */
+    public static final int DEFAULT_MAX_FORWARD_ATTEMPTS = 10;
+
+    /**
+     * Name of the file that parked messages are appended to.
+     */
+    public static final String PARKED_FILE = "outbox.parked";
+
+    private static final String OFFSET_FILE = "outbox.offset";
+
+    private static final int OFFSET_FILE_SIZE = 16;
+
+    private static final int OFFSET_FORCE_INTERVAL = 100;
+
+    private static final long FORWARD_RETRY_INITIAL_DELAY_MILLIS = 100;
+
+    private static final long FORWARD_RETRY_MAX_DELAY_MILLIS = 30000;
+
+    private static final long FLUSH_RETRY_INITIAL_DELAY_MILLIS = 10;
+
+    private static final long FLUSH_RETRY_MAX_DELAY_MILLIS = 5000;
+
+    private static final long IDLE_WAIT_MILLIS = 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int RECORD_FIELDS = 7;
+
+    private final File directory;
+
+    private final MessagePublisher publisher;
+
+    private final int segmentSize;
+
+    private final ConcurrentSkipListMap<Long, OutboxSegment> segments = new ConcurrentSkipListMap<Long, OutboxSegment>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition appended = lock.newCondition();
+
+    private final Condition flushed = lock.newCondition();
+
+    /**
+     * Segments written to since the last fsync, guarded by lock
+     */
+    private final List<OutboxSegment> dirtySegments = new ArrayList<OutboxSegment>();
+
+    private final RandomAccessFile offsetFile;
+
+    private final MappedByteBuffer offsetBuffer;
+
+    private final Thread flusher;
+
+    private final Thread forwarder;
+
+    /**
+     * Segment currently appended to, guarded by lock
+     */
+    private OutboxSegment writeSegment;
+
+    /**
+     * Number of records appended and number known to be on disk, guarded by lock
+     */
+    private long appendedCount;
+
+    private long durableCount;
+
+    /**
+     * Position up to which records are on disk and may be forwarded, guarded by lock
+     */
+    private long durableSegmentId;
+
+    private int durableOffset;
+
+    /**
+     * Appends up to this count were covered by a failed flush and have been failed, guarded by lock
+     */
+    private long failedCount;
+
+    /**
+     * Cause of the most recent failed flush, guarded by lock
+     */
+    private IOException flushFailure;
+
+    private volatile int maxForwardAttempts = DEFAULT_MAX_FORWARD_ATTEMPTS;
+
+    private volatile long parkedCount;
+
+    private volatile boolean closed;
+
+    public MessageOutbox(File directory, MessagePublisher publisher) throws IOException {
+        this(directory, publisher, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Open the outbox in {@code directory}, creating it if necessary, and start forwarding anything left over from a
+     * previous run.
+     *
+     * @param segmentSize size in bytes of each segment file. Larger messages get a segment of their own.
+     */
+    public MessageOutbox(File directory, MessagePublisher publisher, int segmentSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create outbox directory " + directory);
+        }
+        this.directory = directory;
+        this.publisher = publisher;
+        this.segmentSize = segmentSize;
+
+        openSegments();
+        durableSegmentId = writeSegment.getId();
+        durableOffset = writeSegment.getWriteOffset();
+
+        offsetFile = new RandomAccessFile(new File(directory, OFFSET_FILE), "rw");
+        offsetBuffer = offsetFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, OFFSET_FILE_SIZE);
+
+        flusher = new Thread(new Flusher(), "jms-outbox-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        forwarder = new Thread(new Forwarder(), "jms-outbox-forwarder");
+        forwarder.setDaemon(true);
+        forwarder.start();
+    }
+
+    /**
+     * Store a Form message (XML as String) for forwarding to MQ. Returns once the message is on local disk.
+     *
+     * @throws IOException if the message could not be stored, could not be flushed to disk or the outbox has been
+     *                     closed.
+     */
+    public void send(String text, String jmsType, String sendingAppPropertyName, String sendingAppPropertyNameValue) throws IOException {
+        byte[] payload = encode(text, jmsType, sendingAppPropertyName, sendingAppPropertyNameValue,
+                LogServiceCallWithMDCAspect.currentCorrelationId(), LogServiceCallWithMDCAspect.currentOperationId(),
+                System.currentTimeMillis());
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Outbox has been closed");
+            }
+            if (!writeSegment.hasRoomFor(payload.length)) {
+                rollSegment(payload.length);
+            }
+            writeSegment.append(payload);
+            if (!dirtySegments.contains(writeSegment)) {
+                dirtySegments.add(writeSegment);
+            }
+            long sequence = ++appendedCount;
+            appended.signalAll();
+            // The flusher either flushes or fails everything appended before it stops, even when closing
+            while (durableCount < sequence) {
+                if (failedCount >= sequence) {
+                    throw new IOException("Unable to flush outbox message to disk: " + flushFailure.getMessage(), flushFailure);
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop forwarding, flush anything appended to disk and close the files. Messages not yet forwarded stay on disk
+     * and are forwarded when the outbox is next opened.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appended.signalAll();
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        forwarder.interrupt();
+        joinQuietly(forwarder);
+        joinQuietly(flusher);
+        offsetBuffer.force();
+        try {
+            offsetFile.close();
+        } catch (IOException e) {
+            LOGGER.error("Error closing outbox offset file: " + e.getMessage(), e);
+        }
+        for (OutboxSegment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    /**
+     * Set how many times a message is tried while MQ passes its health check before it is parked.
+     */
+    public void setMaxForwardAttempts(int maxForwardAttempts) {
+        if (maxForwardAttempts < 1) {
+            throw new IllegalArgumentException("maxForwardAttempts must be at least 1 but was " + maxForwardAttempts);
+        }
+        this.maxForwardAttempts = maxForwardAttempts;
+    }
+
+    /**
+     * @return number of messages parked since the outbox was opened.
+     */
+    public long getParkedCount() {
+        return parkedCount;
+    }
+
+    /**
+     * @return number of segment files still holding messages that have not been forwarded.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    private void openSegments() throws IOException {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long id = OutboxSegment.parseId(file.getName());
+                if (id >= 0) {
+                    segments.put(id, OutboxSegment.open(directory, id, segmentSize));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            writeSegment = OutboxSegment.open(directory, 1, segmentSize);
+            segments.put(writeSegment.getId(), writeSegment);
+        } else {
+            writeSegment = segments.lastEntry().getValue();
+            if (writeSegment.isRolled()) {
+                writeSegment = OutboxSegment.open(directory, writeSegment.getId() + 1, segmentSize);
+                segments.put(writeSegment.getId(), writeSegment);
+            }
+        }
+        LOGGER.info("Opened outbox " + directory + " with " + segments.size() + " segments");
+    }
+
+    /**
+     * Close off the current segment and start a new one big enough for {@code payloadLength}. Must be called while
+     * holding lock.
+     */
+    private void rollSegment(int payloadLength) throws IOException {
+        int size = Math.max(segmentSize, payloadLength + OutboxSegment.HEADER_SIZE + 4);
+        OutboxSegment next = OutboxSegment.open(directory, writeSegment.getId() + 1, size);
+        writeSegment.markRolled();
+        if (!dirtySegments.contains(writeSegment)) {
+            dirtySegments.add(writeSegment);
+        }
+        segments.put(next.getId(), next);
+        writeSegment = next;
+    }
+
+    /**
+     * Encode a record as length prefixed fields. The trace context fields come last so records written before they
+     * were added still decode.
+     */
+    private static byte[] encode(String text, String jmsType, String sendingAppPropertyName, String sendingAppPropertyNameValue,
+                                 String correlationId, String operationId, long sendTimestamp) {
+        byte[][] fields = new byte[][]{bytes(jmsType), bytes(sendingAppPropertyName), bytes(sendingAppPropertyNameValue),
+                bytes(text), bytes(correlationId), bytes(operationId), bytes(Long.toString(sendTimestamp))};
+        int length = 0;
+        for (byte[] field : fields) {
+            length += 4 + (field == null ? 0 : field.length);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        for (byte[] field : fields) {
+            if (field == null) {
+                payload.putInt(-1);
+            } else {
+                payload.putInt(field.length);
+                payload.put(field);
+            }
+        }
+        return payload.array();
+    }
+
+    private static String[] decode(byte[] payload) {
+        ByteBuffer source = ByteBuffer.wrap(payload);
+        String[] fields = new String[RECORD_FIELDS];
+        for (int i = 0; i < fields.length && source.hasRemaining(); i++) {
+            int length = source.getInt();
+            if (length >= 0) {
+                fields[i] = new String(payload, source.position(), length, UTF_8);
+                source.position(source.position() + length);
+            }
+        }
+        return fields;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(UTF_8);
+    }
+
+    private void writeOffset(long segmentId, int offset, boolean force) {
+        offsetBuffer.putLong(0, segmentId);
+        offsetBuffer.putInt(8, offset);
+        offsetBuffer.putInt(12, (int) (segmentId ^ (segmentId >>> 32)) ^ offset ^ 0x5EED);
+        if (force) {
+            offsetBuffer.force();
+        }
+    }
+
+    /**
+     * @return the persisted forwarding position, or the start of the oldest segment if there is none or it is invalid.
+     */
+    private long[] readOffset() {
+        long segmentId = offsetBuffer.getLong(0);
+        int offset = offsetBuffer.getInt(8);
+        boolean valid = offsetBuffer.getInt(12) == ((int) (segmentId ^ (segmentId >>> 32)) ^ offset ^ 0x5EED);
+        Map.Entry<Long, OutboxSegment> first = segments.firstEntry();
+        if (!valid || segmentId < first.getKey()) {
+            return new long[]{first.getKey(), 0};
+        }
+        return new long[]{segmentId, offset};
+    }
+
+    /**
+     * Append a message that could not be forwarded to the parked file and force it to disk.
+     */
+    private void park(byte[] payload) throws IOException {
+        FileOutputStream file = new FileOutputStream(new File(directory, PARKED_FILE), true);
+        try {
+            DataOutputStream output = new DataOutputStream(file);
+            output.writeInt(payload.length);
+            output.write(payload);
+            output.flush();
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        parkedCount++;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) { //NOSONAR
+            // Interrupted by close, the loops check closed
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Forces appended records to disk. Every append that arrives while a force is running is covered by the next one,
+     * so under load many appends share one fsync.
+     * <p>
+     * If a force fails, the appends it covered are failed so their callers do not wait forever, and the flusher backs
+     * off before trying again.
+     */
+    private class Flusher implements Runnable {
+
+        @Override
+        public void run() {
+            List<OutboxSegment> toForce = new ArrayList<OutboxSegment>();
+            long retryDelay = FLUSH_RETRY_INITIAL_DELAY_MILLIS;
+            while (true) {
+                long target;
+                long segmentId;
+                int offset;
+                lock.lock();
+                try {
+                    while (appendedCount == durableCount && !closed) {
+                        appended.awaitUninterruptibly();
+                    }
+                    if (appendedCount == durableCount) {
+                        return;
+                    }
+                    target = appendedCount;
+                    segmentId = writeSegment.getId();
+                    offset = writeSegment.getWriteOffset();
+                    toForce.clear();
+                    toForce.addAll(dirtySegments);
+                    dirtySegments.clear();
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    for (OutboxSegment segment : toForce) {
+                        segment.force();
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.error("Error flushing outbox to disk, retrying in " + retryDelay + "ms: " + e.getMessage(), e);
+                    boolean giveUp;
+                    lock.lock();
+                    try {
+                        // Fail the appenders waiting on this flush, or every appender once closing, and put the
+                        // segments back to try again
+                        giveUp = closed;
+                        failedCount = giveUp ? appendedCount : target;
+                        flushFailure = new IOException(e.getMessage(), e);
+                        flushed.signalAll();
+                        for (OutboxSegment segment : toForce) {
+                            if (!dirtySegments.contains(segment)) {
+                                dirtySegments.add(segment);
+                            }
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    if (giveUp) {
+                        return;
+                    }
+                    sleep(retryDelay);
+                    retryDelay = Math.min(retryDelay * 2, FLUSH_RETRY_MAX_DELAY_MILLIS);
+                    continue;
+                }
+                retryDelay = FLUSH_RETRY_INITIAL_DELAY_MILLIS;
+
+                lock.lock();
+                try {
+                    durableCount = target;
+                    durableSegmentId = segmentId;
+                    durableOffset = offset;
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends durable records to MQ in order.
+     */
+    private class Forwarder implements Runnable {
+
+        @Override
+        public void run() {
+            long[] position = readOffset();
+            long segmentId = position[0];
+            int offset = (int) position[1];
+            int sinceForce = 0;
+            long retryDelay = FORWARD_RETRY_INITIAL_DELAY_MILLIS;
+            int failedAttempts = 0;
+            LOGGER.info("Outbox forwarding from segment " + segmentId + " offset " + offset);
+
+            while (!closed) {
+                OutboxSegment segment = segments.get(segmentId);
+                if (segment == null) {
+                    // Segment was never created, e.g. the offset was persisted just before a roll
+                    Map.Entry<Long, OutboxSegment> next = segments.higherEntry(segmentId);
+                    if (next == null) {
+                        waitForData();
+                        continue;
+                    }
+                    segmentId = next.getKey();
+                    offset = 0;
+                    continue;
+                }
+
+                if (!isDurable(segmentId, offset)) {
+                    if (sinceForce > 0) {
+                        offsetBuffer.force();
+                        sinceForce = 0;
+                    }
+                    waitForData();
+                    continue;
+                }
+
+                if (segment.isRolledAt(offset)) {
+                    segments.remove(segmentId);
+                    segment.delete();
+                    segmentId++;
+                    offset = 0;
+                    writeOffset(segmentId, offset, true);
+                    continue;
+                }
+
+                byte[] payload = segment.read(offset);
+                if (payload == null) {
+                    // Leave the file in place for investigation but stop tracking it
+                    LOGGER.error("Unreadable record in outbox segment " + segmentId + " at offset " + offset + ", skipping to next segment");
+                    segments.remove(segmentId);
+                    segment.close();
+                    segmentId++;
+                    offset = 0;
+                    continue;
+                }
+
+                String[] fields = decode(payload);
+                Exception failure = null;
+                try {
+                    forward(fields);
+                } catch (JMSException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+                if (failure != null) {
+                    // Only count attempts against a healthy MQ, so an outage never parks messages
+                    if (isPublisherHealthy() && ++failedAttempts >= maxForwardAttempts) {
+                        if (!parkOrRetry(payload, fields[0], segmentId, offset, failedAttempts, failure)) {
+                            sleep(retryDelay);
+                            retryDelay = Math.min(retryDelay * 2, FORWARD_RETRY_MAX_DELAY_MILLIS);
+                            continue;
+                        }
+                    } else {
+                        LOGGER.error("Error forwarding outbox message to MQ, retrying in " + retryDelay + "ms: " + failure.getMessage());
+                        sleep(retryDelay);
+                        retryDelay = Math.min(retryDelay * 2, FORWARD_RETRY_MAX_DELAY_MILLIS);
+                        continue;
+                    }
+                }
+                failedAttempts = 0;
+                retryDelay = FORWARD_RETRY_INITIAL_DELAY_MILLIS;
+                offset += OutboxSegment.HEADER_SIZE + payload.length;
+                sinceForce++;
+                boolean force = sinceForce >= OFFSET_FORCE_INTERVAL;
+                writeOffset(segmentId, offset, force);
+                if (force) {
+                    sinceForce = 0;
+                }
+            }
+            writeOffset(segmentId, offset, true);
+        }
+
+        private void forward(String[] fields) throws JMSException {
+            if (fields[6] == null) {
+                // Stored before trace context was recorded
+                publisher.send(fields[3], fields[0], fields[1], fields[2]);
+                return;
+            }
+            publisher.send(fields[3], fields[0], JmsTraceContext.sendOptions(fields[1], fields[2], fields[4], fields[5],
+                    Long.parseLong(fields[6])));
+        }
+
+        private boolean isPublisherHealthy() {
+            try {
+                publisher.healthCheck();
+                return true;
+            } catch (JMSException e) { //NOSONAR
+                return false;
+            } catch (RuntimeException e) { //NOSONAR
+                return false;
+            }
+        }
+
+        /**
+         * @return true if the message was parked and forwarding can move past it, false if parking failed and it must
+         * be retried.
+         */
+        private boolean parkOrRetry(byte[] payload, String jmsType, long segmentId, int offset, int attempts, Exception failure) {
+            try {
+                park(payload);
+            } catch (IOException e) {
+                LOGGER.error("Unable to park outbox message, it will be retried: " + e.getMessage(), e);
+                return false;
+            }
+            LOGGER.error("Parked outbox message [type='" + jmsType + "'] from segment " + segmentId + " offset " + offset
+                    + " in " + PARKED_FILE + " after " + attempts + " failed attempts: " + failure.getMessage(), failure);
+            return true;
+        }
+
+        /**
+         * @return true if there is a durable record (or rolled marker) at the given position.
+         */
+        private boolean isDurable(long segmentId, int offset) {
+            lock.lock();
+            try {
+                return segmentId < durableSegmentId || (segmentId == durableSegmentId && offset < durableOffset);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void waitForData() {
+            lock.lock();
+            try {
+                if (!closed) {
+                    flushed.await(IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) { //NOSONAR
+                // Interrupted by close, the loop checks closed
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
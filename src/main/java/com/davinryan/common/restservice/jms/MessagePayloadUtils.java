@@ -0,0 +1,103 @@
+package com.davinryan.common.restservice.jms;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decodes the payload of messages sent by {@link JmsQueuePublisher}. Small payloads arrive as a plain
+ * {@link TextMessage}; payloads above the publisher's compression threshold arrive as a gzipped UTF-8
+ * {@link BytesMessage} with the {@link #CONTENT_ENCODING_PROPERTY} property set to {@link #GZIP}.
+ */
+public class MessagePayloadUtils {
+
+    /**
+     * String property naming how the body of a {@link BytesMessage} is encoded.
+     */
+    public static final String CONTENT_ENCODING_PROPERTY = "contentEncoding";
+
+    /**
+     * Value of {@link #CONTENT_ENCODING_PROPERTY} for a gzipped UTF-8 body.
+     */
+    public static final String GZIP = "gzip";
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private MessagePayloadUtils() {
+    }
+
+    /**
+     * Open a reader over the payload of {@code message} without materialising it first. Prefer this over
+     * {@link #readText(Message)} for large payloads.
+     *
+     * @throws JMSException if the message type or content encoding is not supported.
+     */
+    public static Reader openReader(Message message) throws JMSException {
+        if (message instanceof TextMessage) {
+            String text = ((TextMessage) message).getText();
+            return new StringReader(text == null ? "" : text);
+        }
+        if (message instanceof BytesMessage) {
+            String encoding = message.getStringProperty(CONTENT_ENCODING_PROPERTY);
+            BytesMessageInputStream input = new BytesMessageInputStream((BytesMessage) message);
+            if (encoding == null) {
+                return new InputStreamReader(input, UTF_8);
+            }
+            if (GZIP.equals(encoding)) {
+                try {
+                    return new InputStreamReader(new GZIPInputStream(input, BUFFER_SIZE), UTF_8);
+                } catch (IOException e) {
+                    throw toJMSException("Unable to read gzipped message body", e);
+                }
+            }
+            throw new JMSException("Unsupported " + CONTENT_ENCODING_PROPERTY + " '" + encoding + "'");
+        }
+        throw new JMSException("Unsupported message type " + (message == null ? null : message.getClass().getName()));
+    }
+
+    /**
+     * Read the whole payload of {@code message} as a String.
+     *
+     * @throws JMSException if the message type or content encoding is not supported.
+     */
+    public static String readText(Message message) throws JMSException {
+        if (message instanceof TextMessage) {
+            return ((TextMessage) message).getText();
+        }
+        Reader reader = openReader(message);
+        try {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[BUFFER_SIZE];
+            int read = reader.read(buffer);
+            while (read >= 0) {
+                text.append(buffer, 0, read);
+                read = reader.read(buffer);
+            }
+            return text.toString();
+        } catch (IOException e) {
+            throw toJMSException("Unable to read message body", e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) { //NOSONAR
+                // Nothing to release, the body has already been read
+            }
+        }
+    }
+
+    static JMSException toJMSException(String message, Exception cause) {
+        JMSException jmsException = new JMSException(message + ": " + cause.getMessage());
+        jmsException.setLinkedException(cause);
+        jmsException.initCause(cause);
+        return jmsException;
+    }
+}
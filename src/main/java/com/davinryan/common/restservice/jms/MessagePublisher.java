@@ -1,6 +1,9 @@
 package com.davinryan.common.restservice.jms;
 
 import javax.jms.JMSException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.List;
 
 /**
  * Interface for sending messages
@@ -16,6 +19,47 @@ public interface MessagePublisher {
      */
     void send(String form, String jmsType, String sendingAppPropertyName, String sendingAppPropertyNameValue) throws JMSException;
 
+    /**
+     * Send a Form message (XML as String) with the delivery mode, priority, time to live, correlation id and
+     * properties given by {@code options}.
+     *
+     * @throws JMSException
+     */
+    void send(String form, String jmsType, SendOptions options) throws JMSException;
+
+    /**
+     * Send many Form messages (XML as String) with the same type and sending application. Messages are sent on a
+     * transacted session and committed once per chunk rather than once per message.
+     *
+     * @return the messages that could not be sent. A failed commit fails every message in that chunk.
+     * @throws JMSException if nothing could be sent at all e.g. no connection.
+     */
+    BatchSendResult sendBatch(List<String> forms, String jmsType, String sendingAppPropertyName, String sendingAppPropertyNameValue) throws JMSException;
+
+    /**
+     * As {@link #sendBatch(List, String, String, String)} with every message sent using {@code options}. An
+     * idempotency key in {@code options} identifies the batch as a whole.
+     *
+     * @throws JMSException
+     */
+    BatchSendResult sendBatch(List<String> forms, String jmsType, SendOptions options) throws JMSException;
+
+    /**
+     * Send a Form message (XML) of any size without holding it all in memory. The payload is read a chunk at a time and
+     * each chunk sent as one message of an ordered JMS message group, all in a single transaction. Consumers put the
+     * payload back together, or stream it chunk by chunk, with {@link ChunkedMessageAssembler}. A surrogate pair is never
+     * split between chunks, so each chunk is valid text on its own.
+     *
+     * @return the JMSXGroupID of the group of chunks.
+     * @throws JMSException if the payload could not be read or sent, in which case no chunk is committed.
+     */
+    String sendStream(Reader form, String jmsType, String sendingAppPropertyName, String sendingAppPropertyNameValue) throws JMSException;
+
+    /**
+     * As {@link #sendStream(Reader, String, String, String)} for a payload encoded in {@code charsetName}.
+     */
+    String sendStream(InputStream form, String charsetName, String jmsType, String sendingAppPropertyName, String sendingAppPropertyNameValue) throws JMSException;
+
     /**
      * This method will check that MQ is still alive.
      */
@@ -0,0 +1,191 @@
+package com.davinryan.common.restservice.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * One memory-mapped, append-only segment file of a {@link MessageOutbox}.
+ * <p>
+ * Each record is a 4 byte payload length, a 4 byte CRC32 of the payload and then the payload. A length of 0 marks the
+ * end of the written data (the file is zero filled when created) and a length of -1 marks a segment that was rolled
+ * over to the next one. A record whose checksum does not match, e.g. one torn by a crash, is treated as the end of the
+ * data.
+ */
+class OutboxSegment {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxSegment.class.getName());
+
+    static final String PREFIX = "outbox-";
+
+    static final String SUFFIX = ".seg";
+
+    static final int HEADER_SIZE = 8;
+
+    static final int ROLLED = -1;
+
+    private final long id;
+
+    private final File file;
+
+    private final RandomAccessFile randomAccessFile;
+
+    private final MappedByteBuffer buffer;
+
+    private int writeOffset;
+
+    private OutboxSegment(long id, File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer) {
+        this.id = id;
+        this.file = file;
+        this.randomAccessFile = randomAccessFile;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Open the segment with {@code id} in {@code directory}, creating it with {@code size} bytes if it does not exist.
+     */
+    static OutboxSegment open(File directory, long id, int size) throws IOException {
+        File file = new File(directory, fileName(id));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            long length = Math.max(randomAccessFile.length(), size);
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            OutboxSegment segment = new OutboxSegment(id, file, randomAccessFile, buffer);
+            segment.writeOffset = segment.findEnd();
+            return segment;
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    static String fileName(long id) {
+        return String.format("%s%020d%s", PREFIX, id, SUFFIX);
+    }
+
+    /**
+     * @return the segment id encoded in {@code fileName}, or -1 if it is not a segment file.
+     */
+    static long parseId(String fileName) {
+        if (!fileName.startsWith(PREFIX) || !fileName.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(PREFIX.length(), fileName.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) { //NOSONAR
+            return -1;
+        }
+    }
+
+    long getId() {
+        return id;
+    }
+
+    int getWriteOffset() {
+        return writeOffset;
+    }
+
+    boolean isRolled() {
+        return writeOffset + 4 <= buffer.capacity() && buffer.getInt(writeOffset) == ROLLED;
+    }
+
+    /**
+     * @return true if a record of {@code payloadLength} bytes fits while leaving room for the rolled marker.
+     */
+    boolean hasRoomFor(int payloadLength) {
+        return (long) writeOffset + HEADER_SIZE + payloadLength + 4 <= buffer.capacity();
+    }
+
+    void append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer target = buffer.duplicate();
+        target.position(writeOffset + HEADER_SIZE);
+        target.put(payload);
+        buffer.putInt(writeOffset + 4, (int) crc.getValue());
+        // Length goes last so a reader never sees a length without its payload
+        buffer.putInt(writeOffset, payload.length);
+        writeOffset += HEADER_SIZE + payload.length;
+    }
+
+    void markRolled() {
+        buffer.putInt(writeOffset, ROLLED);
+    }
+
+    /**
+     * Read the record at {@code offset}.
+     *
+     * @return the payload, or null if there is no valid record at {@code offset}.
+     */
+    byte[] read(int offset) {
+        if (offset + HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || (long) offset + HEADER_SIZE + length > buffer.capacity()) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset + HEADER_SIZE);
+        source.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            LOGGER.warn("Checksum mismatch in outbox segment " + file.getName() + " at offset " + offset + ", treating as end of data");
+            return null;
+        }
+        return payload;
+    }
+
+    /**
+     * @return true if the record at {@code offset} is the rolled marker.
+     */
+    boolean isRolledAt(int offset) {
+        return offset + 4 <= buffer.capacity() && buffer.getInt(offset) == ROLLED;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() {
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            LOGGER.error("Error closing outbox segment " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Close and delete the segment file. Platforms that keep mapped files locked until the mapping is garbage
+     * collected delete it on exit instead.
+     */
+    void delete() {
+        close();
+        if (!file.delete()) {
+            LOGGER.warn("Unable to delete outbox segment " + file.getName() + " now, will delete on exit");
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Scan from the start of the segment to the end of the last valid record.
+     */
+    private int findEnd() {
+        int offset = 0;
+        byte[] payload = read(offset);
+        while (payload != null) {
+            offset += HEADER_SIZE + payload.length;
+            payload = read(offset);
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,254 @@
+package com.davinryan.common.restservice.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Queue;
+import javax.jms.QueueConnection;
+import javax.jms.QueueSender;
+import javax.jms.QueueSession;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of {@link QueueSession} and {@link QueueSender} pairs that all share a single
+ * {@link QueueConnection}. All sessions in a pool are either non-transacted or transacted. JMS sessions are single
+ * threaded so each pooled session is only ever lent to one thread at a time, but different threads can send
+ * concurrently on different sessions.
+ * <p>
+ * A pool belongs to one connection. On reconnect the owner closes it and creates a new pool for the new connection.
+ * <p>
+ * Sessions are validated when borrowed and discarded when returned broken, so a session that failed mid send is never
+ * handed out again.
+ */
+class QueueSessionPool {
+
+    /**
+     * Logging instance.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueueSessionPool.class.getName());
+
+    private final Queue destination;
+
+    private final int maxSize;
+
+    private final long borrowTimeoutMillis;
+
+    private final boolean transacted;
+
+    private final Semaphore permits;
+
+    private final ConcurrentLinkedQueue<PooledSession> idleSessions = new ConcurrentLinkedQueue<PooledSession>();
+
+    private final QueueConnection connection;
+
+    private volatile boolean closed;
+
+    QueueSessionPool(QueueConnection connection, Queue destination, int maxSize, long borrowTimeoutMillis) {
+        this(connection, destination, maxSize, borrowTimeoutMillis, false);
+    }
+
+    /**
+     * @param transacted true for sessions whose sends are only delivered once the borrower commits. A transacted
+     *                   session must be committed or rolled back before it is released, or released as broken.
+     */
+    QueueSessionPool(QueueConnection connection, Queue destination, int maxSize, long borrowTimeoutMillis, boolean transacted) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1 but was " + maxSize);
+        }
+        this.connection = connection;
+        this.destination = destination;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.transacted = transacted;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Borrow a session from the pool, creating one if no idle session is available. Every successful borrow must be
+     * followed by exactly one call to {@link #release(PooledSession, boolean)}.
+     *
+     * @throws JMSException if no session became available within the borrow timeout or a new session could not be
+     *                      created.
+     */
+    PooledSession borrow() throws JMSException {
+        if (closed) {
+            throw new JMSException("Session pool has been closed");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new JMSException("Timed out after " + borrowTimeoutMillis + "ms waiting for one of " + maxSize + " pooled JMS sessions");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMSException("Interrupted while waiting for a pooled JMS session");
+        }
+
+        try {
+            PooledSession pooledSession = idleSessions.poll();
+            while (pooledSession != null && !pooledSession.isValid()) {
+                pooledSession.close();
+                pooledSession = idleSessions.poll();
+            }
+            if (pooledSession == null) {
+                pooledSession = createSession();
+            }
+            return pooledSession;
+        } catch (JMSException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Return a session to the pool.
+     *
+     * @param pooledSession the session that was borrowed
+     * @param broken        true if the session failed while in use and should be discarded
+     */
+    void release(PooledSession pooledSession, boolean broken) {
+        try {
+            if (broken || closed) {
+                pooledSession.close();
+            } else {
+                idleSessions.offer(pooledSession);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close all idle sessions and stop lending new ones. Sessions still in use are closed when they are released.
+     */
+    void close() {
+        closed = true;
+        closeIdleSessions();
+    }
+
+    /**
+     * Open sessions until {@code count} (capped at the pool size) are idle, so the first sends do not pay for session
+     * creation.
+     *
+     * @return number of idle sessions afterwards
+     */
+    int prefill(int count) throws JMSException {
+        List<PooledSession> borrowed = new ArrayList<PooledSession>();
+        try {
+            for (int i = 0; i < Math.min(count, maxSize); i++) {
+                borrowed.add(borrow());
+            }
+        } finally {
+            for (PooledSession pooledSession : borrowed) {
+                release(pooledSession, false);
+            }
+        }
+        return idleSessions.size();
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    int getIdleCount() {
+        return idleSessions.size();
+    }
+
+    int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    private void closeIdleSessions() {
+        PooledSession pooledSession = idleSessions.poll();
+        while (pooledSession != null) {
+            pooledSession.close();
+            pooledSession = idleSessions.poll();
+        }
+    }
+
+    private PooledSession createSession() throws JMSException {
+        if (null == connection) {
+            throw new JMSException("Connection is null, and is unlikely to have been initialised");
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Creating pooled JMS session");
+        }
+        QueueSession session = connection.createQueueSession(transacted, transacted ? Session.SESSION_TRANSACTED : Session.AUTO_ACKNOWLEDGE);
+        try {
+            // Set persistent and TTL of zero (default)
+            QueueSender sender = session.createSender(destination);
+            sender.setDeliveryMode(DeliveryMode.PERSISTENT);
+            sender.setTimeToLive(0);
+            return new PooledSession(session, sender);
+        } catch (JMSException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    /**
+     * A session and its sender as lent out by the pool.
+     */
+    static class PooledSession {
+
+        private final QueueSession session;
+
+        private final QueueSender sender;
+
+        PooledSession(QueueSession session, QueueSender sender) {
+            this.session = session;
+            this.sender = sender;
+        }
+
+        QueueSession getSession() {
+            return session;
+        }
+
+        QueueSender getSender() {
+            return sender;
+        }
+
+        /**
+         * A closed or broken session throws on any method call, so this is a cheap way to validate it without a round
+         * trip to MQ.
+         */
+        boolean isValid() {
+            try {
+                session.getTransacted();
+                sender.getDeliveryMode();
+                return true;
+            } catch (JMSException e) { //NOSONAR
+                LOGGER.debug("Discarding invalid pooled JMS session: " + e.getMessage());
+                return false;
+            } catch (RuntimeException e) { //NOSONAR
+                LOGGER.debug("Discarding invalid pooled JMS session: " + e.getMessage());
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Closing pooled session");
+                }
+                sender.close();
+            } catch (JMSException e) {
+                LOGGER.error("Error closing MQ sender: " + e.getMessage(), e);
+            }
+            try {
+                session.close();
+            } catch (JMSException e) {
+                LOGGER.error("Error closing MQ session: " + e.getMessage(), e);
+            }
+        }
+    }
+}
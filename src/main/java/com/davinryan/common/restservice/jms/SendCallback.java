@@ -0,0 +1,14 @@
+package com.davinryan.common.restservice.jms;
+
+/**
+ * Callback notified when an asynchronous JMS operation completes. Called on the thread that completed the operation
+ * so implementations should return quickly.
+ *
+ * @param <T> the result type
+ */
+public interface SendCallback<T> {
+
+    void onSuccess(T result);
+
+    void onFailure(Throwable cause);
+}
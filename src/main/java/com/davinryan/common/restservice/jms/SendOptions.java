@@ -0,0 +1,153 @@
+package com.davinryan.common.restservice.jms;
+
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-message delivery settings for {@link MessagePublisher#send(String, String, SendOptions)}. Create one instance per
+ * kind of message and reuse it across calls. Once configured an instance can be shared between threads as long as it
+ * is not modified again.
+ * <p>
+ * Defaults match {@link MessagePublisher#send(String, String, String, String)}: persistent, default priority and
+ * no expiry.
+ */
+public class SendOptions {
+
+    private int deliveryMode = DeliveryMode.PERSISTENT;
+
+    private int priority = Message.DEFAULT_PRIORITY;
+
+    private long timeToLive = Message.DEFAULT_TIME_TO_LIVE;
+
+    private String correlationId;
+
+    private String idempotencyKey;
+
+    private final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+
+    public SendOptions() {
+    }
+
+    /**
+     * Copy {@code other}, e.g. to add a correlation id to shared options.
+     */
+    public SendOptions(SendOptions other) {
+        this.deliveryMode = other.deliveryMode;
+        this.priority = other.priority;
+        this.timeToLive = other.timeToLive;
+        this.correlationId = other.correlationId;
+        this.idempotencyKey = other.idempotencyKey;
+        this.properties.putAll(other.properties);
+    }
+
+    /**
+     * @return options for business messages that must survive an MQ restart.
+     */
+    public static SendOptions persistent() {
+        return new SendOptions();
+    }
+
+    /**
+     * @param timeToLive milliseconds before MQ may discard the message, 0 for never.
+     * @return options for high volume messages, such as telemetry, that are cheaper to lose than to persist.
+     */
+    public static SendOptions nonPersistent(long timeToLive) {
+        SendOptions options = new SendOptions();
+        options.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        options.setTimeToLive(timeToLive);
+        return options;
+    }
+
+    public int getDeliveryMode() {
+        return deliveryMode;
+    }
+
+    /**
+     * @param deliveryMode {@link DeliveryMode#PERSISTENT} or {@link DeliveryMode#NON_PERSISTENT}
+     */
+    public void setDeliveryMode(int deliveryMode) {
+        if (deliveryMode != DeliveryMode.PERSISTENT && deliveryMode != DeliveryMode.NON_PERSISTENT) {
+            throw new IllegalArgumentException("deliveryMode must be DeliveryMode.PERSISTENT or DeliveryMode.NON_PERSISTENT but was " + deliveryMode);
+        }
+        this.deliveryMode = deliveryMode;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @param priority 0 (lowest) to 9 (highest)
+     */
+    public void setPriority(int priority) {
+        if (priority < 0 || priority > 9) {
+            throw new IllegalArgumentException("priority must be between 0 and 9 but was " + priority);
+        }
+        this.priority = priority;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * @param timeToLive milliseconds before MQ may discard the message, 0 for never.
+     */
+    public void setTimeToLive(long timeToLive) {
+        if (timeToLive < 0) {
+            throw new IllegalArgumentException("timeToLive must not be negative but was " + timeToLive);
+        }
+        this.timeToLive = timeToLive;
+    }
+
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    public void setCorrelationId(String correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    /**
+     * Set a business key, such as the {@code Request} correlation id, identifying this message. When the publisher has
+     * a {@link DuplicateSuppressor} a second send with the same key within its window is skipped. The key is per
+     * message, so set it on a copy of any shared options.
+     */
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    /**
+     * @return message properties, in the order they were added.
+     */
+    public Map<String, Object> getProperties() {
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * Add a message property. Values must be one of the types JMS allows for properties: String, Boolean, Byte, Short,
+     * Integer, Long, Float or Double.
+     */
+    public void setProperty(String name, Object value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public String toString() {
+        return "SendOptions{" +
+                "deliveryMode=" + deliveryMode +
+                ", priority=" + priority +
+                ", timeToLive=" + timeToLive +
+                ", correlationId='" + correlationId + '\'' +
+                ", idempotencyKey='" + idempotencyKey + '\'' +
+                ", properties=" + properties.keySet() +
+                '}';
+    }
+}
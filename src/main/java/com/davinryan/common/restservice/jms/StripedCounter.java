@@ -0,0 +1,53 @@
+package com.davinryan.common.restservice.jms;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads increments from different threads over separate cache lines so that many threads sending at
+ * once do not contend on a single value. Reads sum the stripes and are therefore only eventually consistent.
+ */
+class StripedCounter {
+
+    /**
+     * Longs per stripe, 8 x 8 bytes keeps each stripe on its own 64 byte cache line.
+     */
+    private static final int PADDING = 8;
+
+    private static final int STRIPES = nextPowerOfTwo(Runtime.getRuntime().availableProcessors() * 2);
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    void add(long delta) {
+        cells.addAndGet(index(), delta);
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    void decrement() {
+        add(-1);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    private static int index() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        int power = 1;
+        while (power < value) {
+            power <<= 1;
+        }
+        return power;
+    }
+}
@@ -1,8 +1,8 @@
 package com.davinryan.common.restservice.logging;
 
 import com.davinryan.common.restservice.domain.request.Request;
+import com.davinryan.common.restservice.domain.response.Response;
 import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.annotation.After;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
@@ -12,13 +12,22 @@ import org.slf4j.MDC;
 import org.slf4j.Marker;
 
 import java.lang.annotation.AnnotationFormatError;
+import java.security.SecureRandom;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Add this class as a bean instance in your spring context and add the {@link LogServiceCallWithMDC} annotation to your public
  * service method if you want to log using the Mapped Diagnostic Context or MDC.
+ * <p>
+ * When {@link StructuredOperationLogger} is enabled the BEGIN and END lines are written as discrete key/value fields
+ * (operation, operation id, cid, type, elapsed time and outcome) instead of a rendered map.
+ * <p>
+ * Each call is given a unique operation id, held in the MDC under operationId for the duration of the call so
+ * it can be added to every log line with {@code %X{operationId}}. It is sent on MQ messages by the JMS publishers, and
+ * the consumer restores it as {@code parentOperationId}, so consumer logs can be joined to the producing call.
  *
  * WARNING: this annoation only works with public methods who have only a single parameter of type
  * {@link Request}.
@@ -29,11 +38,17 @@ public class LogServiceCallWithMDCAspect {
     private static final Logger LOGGER = LoggerFactory.getLogger(LogServiceCallWithMDCAspect.class);
     private static final String CORRELATION_ID = "cid";
     private static final String TYPE = "type";
-
-    private static final ThreadLocal<Stack<String>> OPERATION_STACK = new ThreadLocal<Stack<String>>() {
+    private static final String OPERATION_ID = "operationId";
+    private static final String PARENT_OPERATION_ID = "parentOperationId";
+    private static final String BEGIN = "BEGIN";
+    private static final String END = "END";
+    private static final String OUTCOME_EXCEPTION = "EXCEPTION";
+    private static final String OUTCOME_SUCCESS = "SUCCESS";
+
+    private static final ThreadLocal<Stack<OperationFrame>> OPERATION_STACK = new ThreadLocal<Stack<OperationFrame>>() {
         @Override
-        protected Stack<String> initialValue() {
-            return new Stack<String>();
+        protected Stack<OperationFrame> initialValue() {
+            return new Stack<OperationFrame>();
         }
 
     };
@@ -53,41 +68,96 @@ public class LogServiceCallWithMDCAspect {
             }
             if (object instanceof Request) {
                 requestCount++;
-                logBegin(LOGGER, (Request) object, "Received " + object.getClass().getName() + " request");
+                beginOperation(LOGGER, (Request) object, null);
             }
         }
 
-        return pjp.proceed();
-    }
+        if (requestCount == 0) {
+            return pjp.proceed();
+        }
 
-    @After("anyPublicMethod() && @annotation(logServiceCallWithMDC)")
-    public void afterLogAction(LogServiceCallWithMDC logServiceCallWithMDC) { //NOSONAR
-        logEnd(LOGGER);
+        String outcome = OUTCOME_EXCEPTION;
+        try {
+            Object result = pjp.proceed();
+            outcome = result instanceof Response && ((Response) result).getStatus() != null
+                    ? ((Response) result).getStatus().name() : OUTCOME_SUCCESS;
+            return result;
+        } finally {
+            OPERATION_STACK.get().peek().outcome = outcome;
+            logEnd(LOGGER);
+        }
     }
 
     public static void logBegin(Logger logger, Request request, String message) {
-        Map<String, String> parameters = new LinkedHashMap<String, String>();
-        parameters.put("operation", message);
-        logBegin(logger, request, parameters);
+        beginOperation(logger, request, message);
+    }
+
+    /**
+     * @return the correlation id of the operation currently being logged on this thread, or null if there is none.
+     */
+    public static String currentCorrelationId() {
+        Stack<OperationFrame> stack = OPERATION_STACK.get();
+        return stack.isEmpty() ? null : stack.peek().correlationId;
+    }
+
+    /**
+     * @return a unique id for the operation currently being logged on this thread, or null if there is none.
+     */
+    public static String currentOperationId() {
+        Stack<OperationFrame> stack = OPERATION_STACK.get();
+        return stack.isEmpty() ? null : stack.peek().id;
+    }
+
+    /**
+     * @return the name of the operation currently being logged on this thread, or null if there is none.
+     */
+    public static String currentOperation() {
+        Stack<OperationFrame> stack = OPERATION_STACK.get();
+        return stack.isEmpty() ? null : stack.peek().name;
     }
 
     /**
      * Sets the Correlation ID for the current thread, writes a BEGIN operation to the logOperation, and pushes the operation onto
      * the stack.
+     *
+     * @param message description for the plain text BEGIN line, or null for the default. Structured events always use
+     *                the operation name so BEGIN and END carry the same value.
      */
-    private static void logBegin(Logger logger, Request operation, Map<String, String> parameters) {
+    private static void beginOperation(Logger logger, Request operation, String message) {
         String cidExpression = String.format("cid='%s' ", operation.getCorrelationId() == null ? "unspecified" : operation.getCorrelationId());
         MDC.put(CORRELATION_ID, cidExpression);
         String operationName = operation.getClass().getSimpleName();
-        logOperation(logger, "BEGIN " + operationName, parameters);
-        OPERATION_STACK.get().push(operationName);
+        OperationFrame frame = new OperationFrame(operationName, operation.getCorrelationId(), MDC.get(OPERATION_ID));
+        MDC.put(OPERATION_ID, frame.id);
+        if (StructuredOperationLogger.isEnabled()) {
+            StructuredOperationLogger.logEvent(logger.getName(), BEGIN, operationName, frame.id,
+                    MDC.get(PARENT_OPERATION_ID), frame.correlationId, operationName, -1, null);
+        } else {
+            Map<String, String> parameters = new LinkedHashMap<String, String>();
+            parameters.put("operation", message != null ? message : "Received " + operation.getClass().getName() + " request");
+            logOperation(logger, BEGIN + " " + operationName, parameters);
+        }
+        OPERATION_STACK.get().push(frame);
     }
 
     /**
-     * Pops the last operation off the stack and logs an END operation.
+     * Pops the last operation off the stack, logs an END operation and puts the enclosing operation's id back into the
+     * MDC.
      */
     public static void logEnd(Logger logger) {
-        logOperation(logger, "END " + OPERATION_STACK.get().pop() + "'}", null);
+        OperationFrame frame = OPERATION_STACK.get().pop();
+        if (StructuredOperationLogger.isEnabled()) {
+            long elapsedMillis = (System.nanoTime() - frame.startNanos) / 1000000L;
+            StructuredOperationLogger.logEvent(logger.getName(), END, frame.name, frame.id,
+                    MDC.get(PARENT_OPERATION_ID), frame.correlationId, frame.name, elapsedMillis, frame.outcome);
+        } else {
+            logOperation(logger, END + " " + frame.name + "'}", null);
+        }
+        if (frame.enclosingOperationId != null) {
+            MDC.put(OPERATION_ID, frame.enclosingOperationId);
+        } else {
+            MDC.remove(OPERATION_ID);
+        }
         if (OPERATION_STACK.get().isEmpty()) {
             MDC.remove(CORRELATION_ID);
             MDC.remove(TYPE);
@@ -107,5 +177,37 @@ public class LogServiceCallWithMDCAspect {
         logger.info(marker, properties.toString());
     }
 
+    /**
+     * An operation currently in progress on this thread.
+     */
+    private static class OperationFrame {
+
+        /**
+         * Random per JVM prefix plus a counter is unique across nodes without the cost of a UUID per call.
+         */
+        private static final String ID_PREFIX = Long.toHexString(new SecureRandom().nextLong()) + "-";
+
+        private static final AtomicLong NEXT_ID = new AtomicLong();
+
+        private final String id = ID_PREFIX + Long.toHexString(NEXT_ID.incrementAndGet());
 
+        private final String name;
+
+        private final String correlationId;
+
+        /**
+         * Operation id in the MDC before this operation began, restored when it ends
+         */
+        private final String enclosingOperationId;
+
+        private final long startNanos = System.nanoTime();
+
+        private String outcome;
+
+        OperationFrame(String name, String correlationId, String enclosingOperationId) {
+            this.name = name;
+            this.correlationId = correlationId;
+            this.enclosingOperationId = enclosingOperationId;
+        }
+    }
 }
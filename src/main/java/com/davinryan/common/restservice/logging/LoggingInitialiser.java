@@ -1,6 +1,10 @@
 package com.davinryan.common.restservice.logging;
 
-import com.davinryan.common.restservice.jee.JeeUtils;
+import com.davinryan.common.restservice.config.ConfigurationException;
+import com.davinryan.common.restservice.config.ServiceConfiguration;
+import com.davinryan.common.restservice.config.ServiceConfigurationLoader;
+import com.davinryan.common.restservice.jee.CachingJndiLookup;
+import com.davinryan.common.restservice.reflection.ReflectionUtils;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configurator;
 import org.slf4j.Logger;
@@ -16,7 +20,15 @@ import javax.servlet.ServletContextListener;
  * Looks in web.xml for serviceName and then uses this to look for a JNDI variable called [serviceName].debug. If this
  * is present and set to true then logging is initialised from log4j-debug.xml instead of the normal log4j.xml.
  * <p>
+ * If a JNDI variable called [serviceName].structuredLogging is present and set to true then service calls are logged
+ * as discrete key/value fields by {@link StructuredOperationLogger}.
+ * <p>
+ * All [serviceName].* JNDI variables are loaded once into a {@link ServiceConfiguration} snapshot. Classes named in
+ * the comma separated web.xml parameter configKeys can declare further {@link com.davinryan.common.restservice.config.ConfigKey}
+ * fields; their values are type checked here so a bad value fails startup.
+ * <p>
  * This class also writes start and stop messages to the logs (because Websphere's logging only goes to System Out).
+ * When the application stops it clears the library's static caches so the application's classes can be unloaded.
  *
  */
 public class LoggingInitialiser implements ServletContextListener {
@@ -25,9 +37,9 @@ public class LoggingInitialiser implements ServletContextListener {
 
     private static final String SERVICE_NAME = "serviceName";
 
-    private static final String LOG4J2_DEBUG_XML = "log4j2-debug.xml";
+    private static final String CONFIG_KEYS = "configKeys";
 
-    private static final JeeUtils jeeUtils = new JeeUtils();
+    private static final String LOG4J2_DEBUG_XML = "log4j2-debug.xml";
 
     /**
      * @see ServletContextListener#contextInitialized(ServletContextEvent)
@@ -39,8 +51,10 @@ public class LoggingInitialiser implements ServletContextListener {
         if (serviceName == null) {
             LOGGER.error(SERVICE_NAME + " is not defined");
         } else {
+            ServiceConfiguration configuration = loadConfiguration(event, serviceName);
+
             // check whether debugging is enabled for this service
-            if (Boolean.parseBoolean(jeeUtils.jndiLookup(serviceName + ".debug", "false"))) {
+            if (configuration.isDebug()) {
                 // Try to load log4j2 first
                 LoggerContext log4j2Context = Configurator.initialize(null, LOG4J2_DEBUG_XML);
 
@@ -49,6 +63,7 @@ public class LoggingInitialiser implements ServletContextListener {
                     LOGGER.error(LOG4J2_DEBUG_XML + " not found");
                 }
             }
+            StructuredOperationLogger.setEnabled(configuration.isStructuredLogging());
         }
         LOGGER.info("{} starting - version={}", serviceName, null);
     }
@@ -59,6 +74,22 @@ public class LoggingInitialiser implements ServletContextListener {
     @Override
     public void contextDestroyed(ServletContextEvent event) {
         LOGGER.info("{} stopping", getServiceName(event));
+        CachingJndiLookup.getShared().shutdown();
+        // Cached reflection data references the application's classes, which would stop them being unloaded if this
+        // library is shared between applications
+        RedactUtil.clearCache();
+        ReflectionUtils.clearCache();
+    }
+
+    private static ServiceConfiguration loadConfiguration(ServletContextEvent event, String serviceName) {
+        String configKeyClasses = event.getServletContext().getInitParameter(CONFIG_KEYS);
+        try {
+            return new ServiceConfigurationLoader(serviceName, ServiceConfigurationLoader.keysDeclaredBy(
+                    configKeyClasses == null ? new String[0] : configKeyClasses.split(","))).loadAndPublish();
+        } catch (ConfigurationException e) {
+            LOGGER.error(serviceName + " has invalid configuration", e);
+            throw e;
+        }
     }
 
     private static String getServiceName(ServletContextEvent event) {
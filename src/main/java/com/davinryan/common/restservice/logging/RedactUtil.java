@@ -5,25 +5,58 @@ import org.joda.time.LocalDate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.annotation.Annotation;
+import org.springframework.util.ReflectionUtils;
+
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.davinryan.common.restservice.reflection.ReflectionUtils.findGetterMethod;
 import static com.davinryan.common.restservice.reflection.ReflectionUtils.findSetterMethod;
-import static com.davinryan.common.restservice.reflection.ReflectionUtils.invokeGetterMethod;
-import static com.davinryan.common.restservice.reflection.ReflectionUtils.invokeSetterMethod;
 
 /**
  * Utility class that can scan any object that uses {@link RedactWhenLogging} and Redact those fields as long as they
  * use a supported type.
+ * <p>
+ * The fields, getters and redacting setters of each class are worked out once and cached; {@link #precompute(Class)}
+ * lets start up do this ahead of the first request.
  */
 public class RedactUtil {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LogUtil.class.getName());
 
+    private static final String REDACTED = "REDACTED";
+
+    private static final ConcurrentMap<Class<?>, FieldMetadata[]> METADATA = new ConcurrentHashMap<Class<?>, FieldMetadata[]>();
+
     private RedactUtil() {}
 
+    /**
+     * Forget the cached metadata of every class, so undeployed classes and their class loader can be collected.
+     * Called by {@link LoggingInitialiser} when the application stops.
+     */
+    public static void clearCache() {
+        METADATA.clear();
+    }
+
+    /**
+     * Work out and cache how {@code type} is redacted.
+     *
+     * @return true if {@code type} declares any {@link RedactWhenLogging} fields
+     */
+    public static boolean precompute(Class<?> type) {
+        for (FieldMetadata field : metadataFor(type)) {
+            if (field.redacted) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 
     /**
      * Will redact fields that are annotated with {@link RedactWhenLogging}.
@@ -36,19 +69,19 @@ public class RedactUtil {
         if (objectToRedact == null) {
             return null;
         }
-        for (Field field : objectToRedact.getClass().getDeclaredFields()) {
-            Class fieldType = field.getType();
-            String fieldName = field.getName();
-            Annotation[] annotations = field.getDeclaredAnnotations();
-            if (objectToRedact instanceof Collection || objectToRedact.getClass().isArray()) {
+        boolean collection = objectToRedact instanceof Collection || objectToRedact.getClass().isArray();
+        for (FieldMetadata field : metadataFor(objectToRedact.getClass())) {
+            if (collection) {
                 redactCollection(objectToRedact);
-            } else {
-                redactField(objectToRedact, fieldType, fieldName, annotations);
+            } else if (field.redactSetter != null) {
+                ReflectionUtils.makeAccessible(field.redactSetter);
+                ReflectionUtils.invokeMethod(field.redactSetter, objectToRedact, field.redactedValue);
             }
 
             // Iterate over children
-            if (findGetterMethod(objectToRedact, fieldName) != null) {
-                Object childObjectToRedact = invokeGetterMethod(objectToRedact, fieldName);
+            if (field.getter != null) {
+                ReflectionUtils.makeAccessible(field.getter);
+                Object childObjectToRedact = ReflectionUtils.invokeMethod(field.getter, objectToRedact);
                 if (childObjectToRedact != null) {
                     redactObject(childObjectToRedact);
                 }
@@ -79,29 +112,47 @@ public class RedactUtil {
         return objectToRedact;
     }
 
-    private static <T> void redactField(T objectContainingField, Class fieldType, String fieldName, Annotation[] annotations) {
-        for (Annotation annotation : annotations) {
-            if (annotation.annotationType() == RedactWhenLogging.class && fieldType == String.class) {
-                if (findSetterMethod(objectContainingField, fieldName, fieldType) != null) {
-                    invokeSetterMethod(objectContainingField, fieldName, "REDACTED");
-                }
-            }
-            else if (annotation.annotationType() == RedactWhenLogging.class && fieldType == DateTime.class) {
-                if (findSetterMethod(objectContainingField, fieldName, fieldType) != null) {
-                    invokeSetterMethod(objectContainingField, fieldName, null);
-                }
+    private static FieldMetadata[] metadataFor(Class<?> type) {
+        FieldMetadata[] metadata = METADATA.get(type);
+        if (metadata == null) {
+            List<FieldMetadata> fields = new ArrayList<FieldMetadata>();
+            for (Field field : type.getDeclaredFields()) {
+                fields.add(new FieldMetadata(type, field));
             }
-            else if (annotation.annotationType() == RedactWhenLogging.class && fieldType == LocalDate.class) {
-                if (findSetterMethod(objectContainingField, fieldName, fieldType) != null) {
-                    invokeSetterMethod(objectContainingField, fieldName, null);
-                }
-            }
-            else if (annotation.annotationType() == RedactWhenLogging.class) {
+            metadata = fields.toArray(new FieldMetadata[fields.size()]);
+            METADATA.putIfAbsent(type, metadata);
+        }
+        return metadata;
+    }
+
+    private static final class FieldMetadata {
+
+        private final boolean redacted;
+
+        private final Method getter;
+
+        private final Method redactSetter;
+
+        private final Object redactedValue;
+
+        private FieldMetadata(Class<?> type, Field field) {
+            Class<?> fieldType = field.getType();
+            String fieldName = field.getName();
+            this.getter = findGetterMethod(type, fieldName);
+            this.redacted = field.isAnnotationPresent(RedactWhenLogging.class);
+            Method setter = null;
+            Object value = null;
+            if (redacted && (fieldType == String.class || fieldType == DateTime.class || fieldType == LocalDate.class)) {
+                setter = findSetterMethod(type, fieldName, fieldType);
+                value = fieldType == String.class ? REDACTED : null;
+            } else if (redacted) {
                 LOGGER.warn("Failed to Redact field '" + fieldName + "'. This field's fieldType of '" + fieldType
                         + "' is not supported by annotation " + RedactWhenLogging.class
                         + ". Field types that are supported are: [" + String.class +"," + DateTime.class + "," + LocalDate.class + "]. Either remove the annotation" +
                         " or change the field to use a supported fieldType.");
             }
+            this.redactSetter = setter;
+            this.redactedValue = value;
         }
     }
 }
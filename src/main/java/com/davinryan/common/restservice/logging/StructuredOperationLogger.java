@@ -0,0 +1,106 @@
+package com.davinryan.common.restservice.logging;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.message.MapMessage;
+
+/**
+ * Writes service call BEGIN/END events as discrete key/value fields instead of a single rendered sentence. Use this
+ * together with a JSON layout (or a {@code %m} pattern, as the message renders itself as JSON) so your log shipper can
+ * index operation, operation id, cid, type, elapsed time and outcome without regex-parsing them back out of the message.
+ * The operation id is unique per call, and an operation started while handling an MQ message also carries the
+ * producer's operation id as parentOperationId, so consumer events can be joined to the producing call.
+ * <p>
+ * Enable it with {@link #setEnabled(boolean)} or by setting the JNDI variable [serviceName].structuredLogging to true
+ * (see {@link LoggingInitialiser}).
+ * <p>
+ * A new message is created per event. Log4j 2.3 has no reusable message support, and async loggers or appenders keep a
+ * reference to the message after the call returns, so sharing one per thread would corrupt queued events.
+ */
+public class StructuredOperationLogger {
+
+    public static final String EVENT = "event";
+    public static final String OPERATION = "operation";
+    public static final String OPERATION_ID = "operationId";
+    public static final String PARENT_OPERATION_ID = "parentOperationId";
+    public static final String CORRELATION_ID = "cid";
+    public static final String TYPE = "type";
+    public static final String ELAPSED_MILLIS = "elapsedMillis";
+    public static final String OUTCOME = "outcome";
+
+    private static volatile boolean enabled;
+
+    private StructuredOperationLogger() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        StructuredOperationLogger.enabled = enabled;
+    }
+
+    /**
+     * Log a single operation event.
+     *
+     * @param loggerName    name of the logger to write to
+     * @param event         BEGIN or END
+     * @param operation     the operation name, the same for BEGIN and END
+     * @param operationId   unique id of this call of the operation, the same for BEGIN and END
+     * @param parentOperationId id of the operation that caused this one, e.g. the producer of an MQ message, or null
+     * @param correlationId the correlation id of the request
+     * @param type          the request type
+     * @param elapsedMillis elapsed time of the operation, or a negative number if not known yet
+     * @param outcome       the outcome of the operation, or null if not known yet
+     */
+    public static void logEvent(String loggerName, String event, String operation, String operationId,
+                                String parentOperationId, String correlationId, String type, long elapsedMillis,
+                                String outcome) {
+        org.apache.logging.log4j.Logger logger = LogManager.getLogger(loggerName);
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        OperationMessage message = new OperationMessage();
+        message.put(EVENT, event);
+        message.put(OPERATION, operation);
+        message.put(OPERATION_ID, operationId);
+        if (parentOperationId != null) {
+            message.put(PARENT_OPERATION_ID, parentOperationId);
+        }
+        message.put(CORRELATION_ID, correlationId == null ? "unspecified" : correlationId);
+        if (type != null) {
+            message.put(TYPE, type);
+        }
+        if (elapsedMillis >= 0) {
+            message.put(ELAPSED_MILLIS, Long.toString(elapsedMillis));
+        }
+        if (outcome != null) {
+            message.put(OUTCOME, outcome);
+        }
+        logger.info(message);
+    }
+
+    /**
+     * {@link MapMessage} that renders as JSON by default so that a plain {@code %m} pattern still produces discrete
+     * fields.
+     */
+    static class OperationMessage extends MapMessage {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String getFormattedMessage() {
+            StringBuilder buffer = new StringBuilder(256);
+            asJson(buffer);
+            return buffer.toString();
+        }
+
+        @Override
+        public String getFormattedMessage(String[] formats) {
+            if (formats == null || formats.length == 0) {
+                return getFormattedMessage();
+            }
+            return super.getFormattedMessage(formats);
+        }
+    }
+}
@@ -4,9 +4,14 @@ import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Useful library for doing reflection stuff.
+ * <p>
+ * Method lookups are cached per class, including misses, so repeated getter/setter discovery is a map lookup.
  */
 public class ReflectionUtils {
 
@@ -14,9 +19,22 @@ public class ReflectionUtils {
 
     private static final String GETTER_PREFIX = "get";
 
+    private static final Method NO_METHOD = findNoMethodMarker();
+
+    private static final ConcurrentMap<MethodKey, Method> METHOD_CACHE = new ConcurrentHashMap<MethodKey, Method>();
+
     private ReflectionUtils() {
     }
 
+    /**
+     * Forget every cached method. Cached methods keep their classes, and so their class loaders, reachable, so call
+     * this when an application using this library is undeployed, as
+     * {@link com.davinryan.common.restservice.logging.LoggingInitialiser} does.
+     */
+    public static void clearCache() {
+        METHOD_CACHE.clear();
+    }
+
     /**
      * Invoke the getter method with the given {@code name} on the supplied
      * target object with the supplied {@code value}.
@@ -49,6 +67,25 @@ public class ReflectionUtils {
         return org.springframework.util.ReflectionUtils.invokeMethod(method, target);
     }
 
+    /**
+     * Read several properties of {@code target} through their getters, e.g. to build a key from a request.
+     *
+     * @param target the object to read
+     * @param names  property names
+     * @return the values in the order of {@code names}
+     * @throws IllegalArgumentException if {@code target} has no getter for one of the names
+     */
+    public static Object[] getPropertyValues(Object target, String... names) {
+        Object[] values = new Object[names.length];
+        for (int i = 0; i < names.length; i++) {
+            if (findGetterMethod(target, names[i]) == null) {
+                throw new IllegalArgumentException("No getter for '" + names[i] + "' on " + target.getClass().getName());
+            }
+            values[i] = invokeGetterMethod(target, names[i]);
+        }
+        return values;
+    }
+
     /**
      * Find a getter method for a given field.
      *
@@ -59,11 +96,22 @@ public class ReflectionUtils {
      * @return getter method corresponding to name.
      */
     public static Method findGetterMethod(Object target, String name) {
+        return findGetterMethod(target.getClass(), name);
+    }
+
+    /**
+     * Find a getter method for a given field of {@code type}.
+     *
+     * @param type the class to search
+     * @param name the name of the getter method or the corresponding property name
+     * @return getter method corresponding to name.
+     */
+    public static Method findGetterMethod(Class<?> type, String name) {
         String getterMethodName = name;
         if (!name.startsWith(GETTER_PREFIX)) {
             getterMethodName = GETTER_PREFIX + StringUtils.capitalize(name);
         }
-        return findMethod(target, name, getterMethodName);
+        return findMethod(type, name, getterMethodName, new Class<?>[0]);
     }
 
     /**
@@ -77,13 +125,25 @@ public class ReflectionUtils {
      * @return setter method corresponding to name.
      */
     public static Method findSetterMethod(Object target, String name, Class<?> type) {
+        return findSetterMethod(target.getClass(), name, type);
+    }
+
+    /**
+     * Find a setter method for a given field of {@code targetType}.
+     *
+     * @param targetType the class to search
+     * @param name       the name of the setter method or the corresponding property name
+     * @param type       the formal parameter type declared by the setter method
+     * @return setter method corresponding to name.
+     */
+    public static Method findSetterMethod(Class<?> targetType, String name, Class<?> type) {
         String setterMethodName = name;
         if (!name.startsWith(SETTER_PREFIX)) {
             setterMethodName = SETTER_PREFIX + StringUtils.capitalize(name);
         }
         Class<?>[] paramTypes = type != null ? new Class<?>[]{type} : null;
 
-        return findMethod(target, name, setterMethodName, paramTypes);
+        return findMethod(targetType, name, setterMethodName, paramTypes);
     }
 
     /**
@@ -150,35 +210,62 @@ public class ReflectionUtils {
     /**
      * Find a method for a given field.
      *
-     * @param target     the target object on which to invoke the specified setter
-     *                   method
+     * @param type       the class to search
      * @param name       the corresponding property name
      * @param methodName the name of the method to invoke
-     * @param paramTypes the formal parameter types declared by the method
-     * @return setter method corresponding to name.
+     * @param paramTypes the formal parameter types declared by the method, or null to match any
+     * @return method corresponding to name.
      */
-    private static Method findMethod(Object target, String name, String methodName, Class<?>... paramTypes) {
-        Method method = org.springframework.util.ReflectionUtils.findMethod(target.getClass(), methodName, paramTypes);
-        if (method == null && !methodName.equals(name)) {
-            return org.springframework.util.ReflectionUtils.findMethod(target.getClass(), name, paramTypes);
+    private static Method findMethod(Class<?> type, String name, String methodName, Class<?>[] paramTypes) {
+        MethodKey key = new MethodKey(type, methodName, paramTypes);
+        Method method = METHOD_CACHE.get(key);
+        if (method == null) {
+            method = org.springframework.util.ReflectionUtils.findMethod(type, methodName, paramTypes);
+            if (method == null && !methodName.equals(name)) {
+                method = org.springframework.util.ReflectionUtils.findMethod(type, name, paramTypes);
+            }
+            METHOD_CACHE.putIfAbsent(key, method == null ? NO_METHOD : method);
         }
-        return method;
+        return method == NO_METHOD ? null : method;
     }
 
-    /**
-     * Find a method for a given field.
-     *
-     * @param target     the target object on which to invoke the specified setter
-     *                   method
-     * @param name       the corresponding property name
-     * @param methodName the name of the method to invoke
-     * @return setter method corresponding to name.
-     */
-    private static Method findMethod(Object target, String name, String methodName) {
-        Method method = org.springframework.util.ReflectionUtils.findMethod(target.getClass(), methodName);
-        if (method == null && !methodName.equals(name)) {
-            return org.springframework.util.ReflectionUtils.findMethod(target.getClass(), name);
+    private static Method findNoMethodMarker() {
+        try {
+            return ReflectionUtils.class.getDeclaredMethod("findNoMethodMarker");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class MethodKey {
+
+        private final Class<?> type;
+
+        private final String methodName;
+
+        private final Class<?>[] paramTypes;
+
+        private final int hash;
+
+        private MethodKey(Class<?> type, String methodName, Class<?>[] paramTypes) {
+            this.type = type;
+            this.methodName = methodName;
+            this.paramTypes = paramTypes;
+            this.hash = 31 * (31 * type.hashCode() + methodName.hashCode()) + Arrays.hashCode(paramTypes);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof MethodKey)) {
+                return false;
+            }
+            MethodKey key = (MethodKey) other;
+            return type == key.type && methodName.equals(key.methodName) && Arrays.equals(paramTypes, key.paramTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
-        return method;
     }
 }
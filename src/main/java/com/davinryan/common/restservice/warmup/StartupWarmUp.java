@@ -0,0 +1,256 @@
+package com.davinryan.common.restservice.warmup;
+
+import com.davinryan.common.restservice.logging.RedactUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.filter.TypeFilter;
+import org.springframework.util.ClassUtils;
+
+import javax.validation.Constraint;
+import javax.validation.Validator;
+import java.lang.annotation.Annotation;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Does the work that would otherwise be paid lazily by the first requests after deploy.
+ * <p>
+ * Classes in the configured packages are scanned and, in parallel, have their {@link RedactUtil} metadata worked out
+ * and, if they carry bean validation constraints (including our custom ones), their metadata built in the
+ * application's validator, see {@link #setValidator(Validator)}.
+ * Registered {@link Warmable} resources such as JMS publishers then open their sessions.
+ * <p>
+ * Run it from {@link WarmUpListener}, or directly once the application context is up.
+ */
+public class StartupWarmUp {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupWarmUp.class.getName());
+
+    private static final List<WeakReference<Warmable>> WARMABLES = new ArrayList<WeakReference<Warmable>>();
+
+    private final String[] packages;
+
+    private final int threads;
+
+    private Validator validator;
+
+    public StartupWarmUp(String[] packages, int threads) {
+        this.packages = packages.clone();
+        this.threads = Math.max(threads, 1);
+    }
+
+    /**
+     * Warm {@code warmable} on the next run. Only weakly referenced, so registering does not keep it alive.
+     */
+    public static void register(Warmable warmable) {
+        synchronized (WARMABLES) {
+            WARMABLES.add(new WeakReference<Warmable>(warmable));
+        }
+    }
+
+    /**
+     * The validator whose metadata cache should be warmed, the one the application validates with. If not set no
+     * validator metadata is built, as warming a validator the application never uses would gain nothing.
+     */
+    public void setValidator(Validator validator) {
+        this.validator = validator;
+    }
+
+    public WarmUpReport run() {
+        long start = System.currentTimeMillis();
+        List<String> failures = new ArrayList<String>();
+        Set<Class<?>> classes = scan(failures);
+        if (validator == null) {
+            LOGGER.debug("No validator set, skipping validator warm up");
+        }
+
+        int redacted = 0;
+        int validated = 0;
+        int warmed = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> classResults = new ArrayList<Future<int[]>>();
+            for (Class<?> type : classes) {
+                classResults.add(executor.submit(new ClassWarmUp(type, validator)));
+            }
+            List<Future<?>> resourceResults = new ArrayList<Future<?>>();
+            final List<Warmable> warmables = registered();
+            for (final Warmable warmable : warmables) {
+                resourceResults.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        warmable.warmUp();
+                        return null;
+                    }
+                }));
+            }
+
+            Iterator<Class<?>> types = classes.iterator();
+            for (Future<int[]> result : classResults) {
+                Class<?> type = types.next();
+                try {
+                    int[] counts = result.get();
+                    redacted += counts[0];
+                    validated += counts[1];
+                } catch (ExecutionException e) {
+                    failures.add(type.getName() + ": " + e.getCause());
+                }
+            }
+            for (int i = 0; i < resourceResults.size(); i++) {
+                try {
+                    resourceResults.get(i).get();
+                    warmed++;
+                } catch (ExecutionException e) {
+                    failures.add(warmables.get(i) + ": " + e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.add("interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        WarmUpReport report = new WarmUpReport(classes.size(), redacted, validated, warmed, failures,
+                System.currentTimeMillis() - start);
+        for (String failure : failures) {
+            LOGGER.warn("Warm up failed for {}", failure);
+        }
+        LOGGER.info(report.toString());
+        return report;
+    }
+
+    private Set<Class<?>> scan(List<String> failures) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition beanDefinition) {
+                AnnotationMetadata metadata = beanDefinition.getMetadata();
+                return metadata.isIndependent() && !metadata.isInterface() && !metadata.isAnnotation();
+            }
+        };
+        scanner.addIncludeFilter(new TypeFilter() {
+            @Override
+            public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) {
+                return true;
+            }
+        });
+
+        Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+        for (String basePackage : packages) {
+            if (StringUtils.isBlank(basePackage)) {
+                continue;
+            }
+            for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage.trim())) {
+                try {
+                    classes.add(ClassUtils.forName(candidate.getBeanClassName(), ClassUtils.getDefaultClassLoader()));
+                } catch (ClassNotFoundException e) {
+                    failures.add(candidate.getBeanClassName() + ": " + e);
+                } catch (LinkageError e) {
+                    failures.add(candidate.getBeanClassName() + ": " + e);
+                }
+            }
+        }
+        return classes;
+    }
+
+    private static List<Warmable> registered() {
+        List<Warmable> warmables = new ArrayList<Warmable>();
+        synchronized (WARMABLES) {
+            Iterator<WeakReference<Warmable>> references = WARMABLES.iterator();
+            while (references.hasNext()) {
+                Warmable warmable = references.next().get();
+                if (warmable == null) {
+                    references.remove();
+                } else {
+                    warmables.add(warmable);
+                }
+            }
+        }
+        return warmables;
+    }
+
+    private static boolean hasConstraints(Class<?> type) {
+        if (hasConstraint(type)) {
+            return true;
+        }
+        for (Field field : type.getDeclaredFields()) {
+            if (hasConstraint(field)) {
+                return true;
+            }
+        }
+        for (Method method : type.getDeclaredMethods()) {
+            if (hasConstraint(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasConstraint(AnnotatedElement element) {
+        for (Annotation annotation : element.getDeclaredAnnotations()) {
+            Class<? extends Annotation> annotationType = annotation.annotationType();
+            if (annotationType.isAnnotationPresent(Constraint.class) || isConstraintList(annotationType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Constraint {@code List} containers such as {@code OnlyZeroOrOneOfTheFollowingFields.List} are not constraints
+     * themselves but hold an array of them in {@code value()}.
+     */
+    private static boolean isConstraintList(Class<? extends Annotation> annotationType) {
+        try {
+            Class<?> valueType = annotationType.getMethod("value").getReturnType();
+            return valueType.isArray() && valueType.getComponentType().isAnnotationPresent(Constraint.class);
+        } catch (NoSuchMethodException e) { //NOSONAR
+            return false;
+        }
+    }
+
+    /**
+     * Warms one class and returns {redacted, validated} as 0 or 1.
+     */
+    private static final class ClassWarmUp implements Callable<int[]> {
+
+        private final Class<?> type;
+
+        private final Validator validator;
+
+        private ClassWarmUp(Class<?> type, Validator validator) {
+            this.type = type;
+            this.validator = validator;
+        }
+
+        @Override
+        public int[] call() {
+            int redacted = RedactUtil.precompute(type) ? 1 : 0;
+            int validated = 0;
+            if (validator != null && hasConstraints(type)) {
+                validator.getConstraintsForClass(type);
+                validated = 1;
+            }
+            return new int[]{redacted, validated};
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.davinryan.common.restservice.warmup;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.validation.Validator;
+
+/**
+ * ServletContextListener companion to {@link com.davinryan.common.restservice.logging.LoggingInitialiser} that runs
+ * {@link StartupWarmUp} before the application takes traffic.
+ * <p>
+ * Looks in web.xml for warmUpPackages (comma separated base packages to scan) and optionally warmUpThreads. Declare
+ * it after the listener that creates the application context so its JMS publishers have registered themselves and
+ * the application's {@link Validator} bean can be found and warmed.
+ */
+public class WarmUpListener implements ServletContextListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmUpListener.class.getName());
+
+    private static final String WARM_UP_PACKAGES = "warmUpPackages";
+
+    private static final String WARM_UP_THREADS = "warmUpThreads";
+
+    /**
+     * @see ServletContextListener#contextInitialized(ServletContextEvent)
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        String packages = event.getServletContext().getInitParameter(WARM_UP_PACKAGES);
+        String threads = event.getServletContext().getInitParameter(WARM_UP_THREADS);
+        StartupWarmUp warmUp = new StartupWarmUp(StringUtils.isBlank(packages) ? new String[0] : packages.split(","),
+                StringUtils.isBlank(threads) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads.trim()));
+        warmUp.setValidator(applicationValidator(event.getServletContext()));
+        warmUp.run();
+    }
+
+    /**
+     * @return the single (or primary) {@link Validator} bean of the root application context, or null if there is no
+     * context or it does not have exactly one.
+     */
+    private static Validator applicationValidator(ServletContext servletContext) {
+        WebApplicationContext context = WebApplicationContextUtils.getWebApplicationContext(servletContext);
+        if (context == null) {
+            LOGGER.debug("No web application context found, skipping validator warm up");
+            return null;
+        }
+        try {
+            return context.getBean(Validator.class);
+        } catch (NoSuchBeanDefinitionException e) { //NOSONAR - also covers more than one candidate
+            LOGGER.debug("No single Validator bean in the application context, skipping validator warm up: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @see ServletContextListener#contextDestroyed(ServletContextEvent)
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        // nothing to release
+    }
+}
@@ -0,0 +1,64 @@
+package com.davinryan.common.restservice.warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a {@link StartupWarmUp} run did and how long it took.
+ */
+public class WarmUpReport {
+
+    private final int classesScanned;
+
+    private final int redactedClasses;
+
+    private final int validatedClasses;
+
+    private final int resourcesWarmed;
+
+    private final List<String> failures;
+
+    private final long elapsedMillis;
+
+    WarmUpReport(int classesScanned, int redactedClasses, int validatedClasses, int resourcesWarmed,
+                 List<String> failures, long elapsedMillis) {
+        this.classesScanned = classesScanned;
+        this.redactedClasses = redactedClasses;
+        this.validatedClasses = validatedClasses;
+        this.resourcesWarmed = resourcesWarmed;
+        this.failures = Collections.unmodifiableList(new ArrayList<String>(failures));
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getClassesScanned() {
+        return classesScanned;
+    }
+
+    public int getRedactedClasses() {
+        return redactedClasses;
+    }
+
+    public int getValidatedClasses() {
+        return validatedClasses;
+    }
+
+    public int getResourcesWarmed() {
+        return resourcesWarmed;
+    }
+
+    public List<String> getFailures() {
+        return failures;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "Warm up took " + elapsedMillis + "ms: scanned " + classesScanned + " classes, " + redactedClasses
+                + " with redacted fields, " + validatedClasses + " with constraints, warmed " + resourcesWarmed
+                + " resources, " + failures.size() + " failures";
+    }
+}
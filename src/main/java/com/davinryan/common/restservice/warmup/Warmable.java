@@ -0,0 +1,12 @@
+package com.davinryan.common.restservice.warmup;
+
+/**
+ * A resource that can open its connections, sessions or caches ahead of the first request.
+ * <p>
+ * Register instances with {@link StartupWarmUp#register(Warmable)}; they are warmed by the next
+ * {@link StartupWarmUp#run()}.
+ */
+public interface Warmable {
+
+    void warmUp() throws Exception; //NOSONAR - failures are reported, not handled, by the caller
+}
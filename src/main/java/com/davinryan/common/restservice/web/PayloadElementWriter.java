@@ -0,0 +1,18 @@
+package com.davinryan.common.restservice.web;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes one payload element of a {@link com.davinryan.common.restservice.domain.response.StreamingResponse} as a
+ * JSON value. With Jackson this is typically
+ * {@code mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(writer, element)}.
+ * <p>
+ * Implementations must not close {@code writer}.
+ *
+ * @param <T> element type
+ */
+public interface PayloadElementWriter<T> {
+
+    void write(T element, Writer writer) throws IOException;
+}
@@ -0,0 +1,102 @@
+package com.davinryan.common.restservice.web;
+
+import com.davinryan.common.restservice.domain.response.StreamingResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+/**
+ * Writes a {@link StreamingResponse} as {@code {"status":"SUCCESS","payload":[...]}} without materialising the
+ * payload.
+ * <p>
+ * The envelope is written first, then each element through the {@link PayloadElementWriter} as it is pulled from the
+ * source. No Content-Length is set so the container uses chunked transfer, and the output is flushed every
+ * {@code flushEvery} elements so clients start receiving rows straight away and heap use stays flat. Register it ahead
+ * of the JSON converter in the MVC configuration.
+ */
+public class StreamingResponseHttpMessageConverter extends AbstractHttpMessageConverter<StreamingResponse<?>> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingResponseHttpMessageConverter.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final int DEFAULT_FLUSH_EVERY = 1000;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final PayloadElementWriter<Object> elementWriter;
+
+    private volatile int flushEvery = DEFAULT_FLUSH_EVERY;
+
+    @SuppressWarnings("unchecked")
+    public StreamingResponseHttpMessageConverter(PayloadElementWriter<?> elementWriter) {
+        super(new MediaType("application", "json", UTF_8));
+        this.elementWriter = (PayloadElementWriter<Object>) elementWriter;
+    }
+
+    /**
+     * Number of elements written between flushes to the client.
+     */
+    public void setFlushEvery(int flushEvery) {
+        if (flushEvery < 1) {
+            throw new IllegalArgumentException("flushEvery must be at least 1");
+        }
+        this.flushEvery = flushEvery;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return StreamingResponse.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected StreamingResponse<?> readInternal(Class<? extends StreamingResponse<?>> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("StreamingResponse can only be written");
+    }
+
+    @Override
+    protected void writeInternal(StreamingResponse<?> response, HttpOutputMessage outputMessage) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputMessage.getBody(), UTF_8), BUFFER_SIZE);
+        long count = 0;
+        try {
+            Iterator<?> elements = response.takeElements();
+            writer.write("{\"status\":\"");
+            writer.write(response.getStatus().name());
+            writer.write("\",\"payload\":[");
+            while (elements.hasNext()) {
+                if (count > 0) {
+                    writer.write(',');
+                }
+                elementWriter.write(elements.next(), writer);
+                if (++count % flushEvery == 0) {
+                    writer.flush();
+                }
+            }
+            writer.write("]}");
+            writer.flush();
+        } finally {
+            try {
+                response.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close streaming response source", e);
+            }
+        }
+        LOGGER.debug("Streamed {} payload elements", count);
+    }
+}
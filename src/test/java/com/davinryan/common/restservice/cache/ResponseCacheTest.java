@@ -0,0 +1,57 @@
+package com.davinryan.common.restservice.cache;
+
+import com.davinryan.common.restservice.domain.response.Response;
+import com.davinryan.common.restservice.domain.response.Response.ResponseStatus;
+import com.davinryan.common.restservice.domain.response.StreamingResponse;
+import com.davinryan.common.restservice.domain.response.SuccessResponse;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheTest {
+
+    private final ResponseCache cache = new ResponseCache(10, 60000, 0);
+
+    @Test
+    public void cachesSuccessResponseByReference() {
+        Response response = new SuccessResponse("form");
+
+        assertTrue(cache.put("key", response));
+
+        assertSame(response, cache.get("key").getResponse());
+    }
+
+    @Test
+    public void refusesFailureResponse() {
+        Response response = new SuccessResponse("partial");
+        response.setStatus(ResponseStatus.FAILURE);
+
+        assertFalse(cache.put("key", response));
+
+        assertNull(cache.get("key"));
+        assertEquals(1, cache.getStatistics().getUncacheableCount());
+    }
+
+    @Test
+    public void refusesStreamingResponse() {
+        assertFalse(cache.put("key", new StreamingResponse<String>(Arrays.asList("a", "b"))));
+
+        assertNull(cache.get("key"));
+        assertEquals(1, cache.getStatistics().getUncacheableCount());
+    }
+
+    @Test
+    public void refreshToStreamingResponseStopsServingTheOldOne() {
+        cache.put("key", new SuccessResponse("form"));
+
+        cache.refreshed("key", new StreamingResponse<String>(Arrays.asList("a", "b")));
+
+        assertNull(cache.get("key"));
+    }
+}
@@ -0,0 +1,137 @@
+package com.davinryan.common.restservice.concurrency;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the limit in rounds: each round takes every permit it can, then releases them all with the same latency.
+ */
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long NO_LOAD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void growsWhileLatencyStaysLow() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 10, 1, 200);
+
+        rounds(limit, 50, NO_LOAD_NANOS);
+
+        assertTrue("limit " + limit.getLimit(), limit.getLimit() > 20);
+    }
+
+    @Test
+    public void shrinksWhenLatencyRises() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 50, 1, 200);
+        rounds(limit, 5, NO_LOAD_NANOS);
+        int before = limit.getLimit();
+
+        rounds(limit, 5, 5 * NO_LOAD_NANOS);
+
+        assertTrue("limit " + limit.getLimit() + " was " + before, limit.getLimit() < before * 0.8);
+    }
+
+    @Test
+    public void recoversWhenLatencyFalls() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 50, 1, 200);
+        rounds(limit, 5, NO_LOAD_NANOS);
+        rounds(limit, 10, 5 * NO_LOAD_NANOS);
+        int slowed = limit.getLimit();
+
+        rounds(limit, 20, NO_LOAD_NANOS);
+
+        assertTrue("limit " + limit.getLimit() + " was " + slowed, limit.getLimit() > slowed * 2);
+    }
+
+    @Test
+    public void settlesNearCapacityOfAQueueingDependency() {
+        // Up to 10 calls run at the no-load latency, beyond that they queue
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 20, 1, 200);
+        rounds(limit, 200, 10);
+
+        int lowest = Integer.MAX_VALUE;
+        int highest = 0;
+        for (int round = 0; round < 500; round++) {
+            int permits = acquireAll(limit);
+            lowest = Math.min(lowest, limit.getLimit());
+            highest = Math.max(highest, limit.getLimit());
+            releaseAll(limit, permits, latency(permits, 10));
+        }
+
+        // Halving to probe the no-load latency accounts for the low end
+        assertTrue("lowest limit " + lowest, lowest >= 5);
+        assertTrue("highest limit " + highest, highest <= 10 * AdaptiveConcurrencyLimit.TOLERANCE + 2);
+    }
+
+    @Test
+    public void staysWithinMinAndMax() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 10, 5, 30);
+
+        rounds(limit, 200, NO_LOAD_NANOS);
+        assertTrue("limit " + limit.getLimit(), limit.getLimit() <= 30);
+
+        // Latency that keeps doubling stays ahead of every probe of the no-load latency
+        int lowest = Integer.MAX_VALUE;
+        for (int round = 1; round <= 30; round++) {
+            releaseAll(limit, acquireAll(limit), NO_LOAD_NANOS << round);
+            lowest = Math.min(lowest, limit.getLimit());
+        }
+        assertEquals(5, lowest);
+    }
+
+    @Test
+    public void doesNotGrowWhileMostOfTheLimitIsUnused() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 20, 1, 200);
+
+        for (int call = 0; call < 1000; call++) {
+            assertTrue(limit.tryAcquire());
+            limit.release(NO_LOAD_NANOS);
+        }
+
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    public void rejectsOverTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("test", 2, 1, 200);
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertEquals(false, limit.tryAcquire());
+        assertEquals(1, limit.getRejectedCount());
+    }
+
+    private static void rounds(AdaptiveConcurrencyLimit limit, int count, long rttNanos) {
+        for (int round = 0; round < count; round++) {
+            releaseAll(limit, acquireAll(limit), rttNanos);
+        }
+    }
+
+    private static void rounds(AdaptiveConcurrencyLimit limit, int count, int capacity) {
+        for (int round = 0; round < count; round++) {
+            int permits = acquireAll(limit);
+            releaseAll(limit, permits, latency(permits, capacity));
+        }
+    }
+
+    private static long latency(int concurrency, int capacity) {
+        return NO_LOAD_NANOS * Math.max(concurrency, capacity) / capacity;
+    }
+
+    private static int acquireAll(AdaptiveConcurrencyLimit limit) {
+        int permits = 0;
+        while (limit.tryAcquire()) {
+            permits++;
+        }
+        return permits;
+    }
+
+    private static void releaseAll(AdaptiveConcurrencyLimit limit, int permits, long rttNanos) {
+        for (int i = 0; i < permits; i++) {
+            limit.release(rttNanos);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.davinryan.common.restservice.concurrency;
+
+import com.davinryan.common.restservice.domain.request.Request;
+import com.davinryan.common.restservice.domain.response.Response;
+import com.davinryan.common.restservice.domain.response.Response.ResponseStatus;
+import com.davinryan.common.restservice.domain.response.SuccessResponse;
+import com.davinryan.common.restservice.logging.LogServiceCallWithMDCAspect;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CoalesceServiceCallsAspectTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoalesceServiceCallsAspectTest.class.getName());
+
+    private static final long WAIT_MILLIS = 5000;
+
+    private final CoalesceServiceCallsAspect aspect = new CoalesceServiceCallsAspect();
+
+    private final SlowFormService target = new SlowFormService();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private FormService service;
+
+    @Before
+    public void createProxy() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.addAspect(aspect);
+        service = factory.getProxy();
+    }
+
+    @After
+    public void releaseCalls() {
+        target.release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void waitersShareTheInFlightResponse() throws Exception {
+        Future<Response> first = callInBackground(1);
+        assertTrue(target.started.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        Future<Response> second = callInBackground(1);
+        waitForWaiter();
+
+        target.release.countDown();
+
+        assertSame(first.get(WAIT_MILLIS, TimeUnit.MILLISECONDS), second.get(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, target.calls.get());
+        assertEquals(1, aspect.getCoalescedCount());
+    }
+
+    @Test
+    public void waiterThatTimesOutFailsWithoutCallingTheMethod() throws Exception {
+        callInBackground(1);
+        assertTrue(target.started.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+        Response response = service.find(new FormRequest(1));
+
+        assertEquals(ResponseStatus.FAILURE, response.getStatus());
+        assertEquals(1, target.calls.get());
+        assertEquals(1, aspect.getExecutionCount());
+        assertEquals(1, aspect.getTimeoutCount());
+    }
+
+    @Test
+    public void timedOutResponseDoesNotCarryTheOtherCallersCid() throws Exception {
+        executor.submit(new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                Request request = new FormRequest(1);
+                request.setCorrelationId("leader-cid");
+                LogServiceCallWithMDCAspect.logBegin(LOGGER, request, null);
+                try {
+                    return service.find(new FormRequest(1));
+                } finally {
+                    LogServiceCallWithMDCAspect.logEnd(LOGGER);
+                }
+            }
+        });
+        assertTrue(target.started.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+        Response response = service.find(new FormRequest(1));
+
+        assertEquals(ResponseStatus.FAILURE, response.getStatus());
+        assertFalse(String.valueOf(response.getPayload()).contains("leader-cid"));
+    }
+
+    @Test
+    public void eachWaiterGetsItsOwnCopyOfTheFailure() throws Exception {
+        Future<Response> first = executor.submit(new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                return service.lock(new FormRequest(1));
+            }
+        });
+        assertTrue(target.started.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        Future<Response> second = executor.submit(new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                return service.lock(new FormRequest(1));
+            }
+        });
+        waitForWaiter();
+
+        target.release.countDown();
+
+        IllegalStateException leaderFailure = failureOf(first);
+        IllegalStateException waiterFailure = failureOf(second);
+        assertNotSame(leaderFailure, waiterFailure);
+        assertSame(leaderFailure, waiterFailure.getCause());
+        assertEquals(leaderFailure.getMessage(), waiterFailure.getMessage());
+        assertEquals(1, target.calls.get());
+        assertEquals(1, aspect.getCoalescedCount());
+    }
+
+    @Test
+    public void waiterThatTimesOutThrowsWhenTheMethodCannotReturnAResponse() throws Exception {
+        executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return service.findTitle(new FormRequest(1));
+            }
+        });
+        assertTrue(target.started.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+        try {
+            service.findTitle(new FormRequest(1));
+            fail("Expected the waiter to time out");
+        } catch (CoalescedCallTimeoutException e) {
+            // expected
+        }
+        assertEquals(1, target.calls.get());
+    }
+
+    @Test
+    public void differentKeysAreNotCoalesced() throws Exception {
+        target.release.countDown();
+
+        service.find(new FormRequest(1));
+        service.find(new FormRequest(2));
+
+        assertEquals(2, target.calls.get());
+        assertEquals(0, aspect.getInFlightCount());
+    }
+
+    private Future<Response> callInBackground(final int formId) {
+        return executor.submit(new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                return service.find(new FormRequest(formId));
+            }
+        });
+    }
+
+    private static IllegalStateException failureOf(Future<Response> call) throws Exception {
+        try {
+            call.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            throw new AssertionError("Expected the call to fail");
+        } catch (ExecutionException e) {
+            return (IllegalStateException) e.getCause();
+        }
+    }
+
+    private void waitForWaiter() throws InterruptedException {
+        // The waiter is parked on the in-flight call's latch, which nothing exposes, so give it time to get there
+        Thread.sleep(100);
+    }
+
+    public interface FormService {
+
+        Response find(FormRequest request);
+
+        String findTitle(FormRequest request);
+
+        Response lock(FormRequest request);
+    }
+
+    public static class SlowFormService implements FormService {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        @CoalesceServiceCalls(fields = "formId", timeoutMillis = 1000)
+        public Response find(FormRequest request) {
+            return new SuccessResponse(findTitle(request));
+        }
+
+        @Override
+        @CoalesceServiceCalls(fields = "formId", name = "lock", timeoutMillis = 1000)
+        public Response lock(FormRequest request) {
+            throw new IllegalStateException(findTitle(request) + " is already locked");
+        }
+
+        @Override
+        @CoalesceServiceCalls(fields = "formId", name = "findTitle", timeoutMillis = 200)
+        public String findTitle(FormRequest request) {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "Form " + request.getFormId();
+        }
+    }
+
+    public static class FormRequest extends Request {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int formId;
+
+        public FormRequest(int formId) {
+            this.formId = formId;
+        }
+
+        public int getFormId() {
+            return formId;
+        }
+    }
+}
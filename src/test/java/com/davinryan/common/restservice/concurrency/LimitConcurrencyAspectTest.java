@@ -0,0 +1,118 @@
+package com.davinryan.common.restservice.concurrency;
+
+import com.davinryan.common.restservice.domain.response.Response;
+import com.davinryan.common.restservice.domain.response.Response.ResponseStatus;
+import com.davinryan.common.restservice.domain.response.SuccessResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LimitConcurrencyAspectTest {
+
+    private static final long WAIT_MILLIS = 5000;
+
+    private final LimitConcurrencyAspect aspect = new LimitConcurrencyAspect();
+
+    private final BlockingFormService target = new BlockingFormService();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private FormService service;
+
+    @Before
+    public void createProxy() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.addAspect(aspect);
+        service = factory.getProxy();
+    }
+
+    @After
+    public void releaseCalls() {
+        target.release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void callOverTheLimitGetsAFailureResponse() throws Exception {
+        Future<Response> first = executor.submit(new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                return service.find();
+            }
+        });
+        assertTrue(target.started.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+        Response rejected = service.find();
+
+        assertEquals(ResponseStatus.FAILURE, rejected.getStatus());
+        assertEquals(1, aspect.getLimits().get("find").getRejectedCount());
+        target.release.countDown();
+        assertEquals(ResponseStatus.SUCCESS, first.get(WAIT_MILLIS, TimeUnit.MILLISECONDS).getStatus());
+    }
+
+    @Test
+    public void callOverTheLimitThrowsWhenTheMethodCannotReturnAResponse() throws Exception {
+        executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return service.findTitle();
+            }
+        });
+        assertTrue(target.started.await(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+
+        try {
+            service.findTitle();
+            fail("Expected the call to be rejected");
+        } catch (ConcurrencyLimitExceededException e) {
+            // expected
+        }
+    }
+
+    public interface FormService {
+
+        Response find();
+
+        String findTitle();
+    }
+
+    public static class BlockingFormService implements FormService {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        @LimitConcurrency(name = "find", initialLimit = 1, maxLimit = 1)
+        public Response find() {
+            return new SuccessResponse(block());
+        }
+
+        @Override
+        @LimitConcurrency(name = "findTitle", initialLimit = 1, maxLimit = 1)
+        public String findTitle() {
+            return block();
+        }
+
+        private String block() {
+            started.countDown();
+            try {
+                release.await(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "Form 1";
+        }
+    }
+}
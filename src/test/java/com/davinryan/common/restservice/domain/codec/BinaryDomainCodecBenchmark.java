@@ -0,0 +1,145 @@
+package com.davinryan.common.restservice.domain.codec;
+
+import com.davinryan.common.restservice.domain.request.Request;
+import com.davinryan.common.restservice.domain.response.Response;
+import com.davinryan.common.restservice.domain.response.SuccessResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares {@link BinaryDomainCodec} round trips against {@link ObjectOutputStream}.
+ * <p>
+ * Java serialization drops the transient {@link Response} payload, so its side writes the payload as a second object
+ * to make the comparison like for like. {@link Request} subclasses are written by the payload codec's Java
+ * serialization fallback, so the RequestSubclass line shows them getting none of the speed or size gain. Not run by
+ * the build; run with
+ * {@code java ... BinaryDomainCodecBenchmark [iterations]} from the test classpath. Correctness of each type is
+ * covered by {@link BinaryDomainCodecTest}.
+ */
+public class BinaryDomainCodecBenchmark {
+
+    private static final int DEFAULT_ITERATIONS = 200000;
+
+    private BinaryDomainCodecBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+        BinaryDomainCodec codec = new BinaryDomainCodec();
+
+        Request request = new Request();
+        request.setCorrelationId("c0a8012e-7d1f-4a8b-9a7e-1f2d3c4b5a69");
+        Request subclass = new FormRequest(42);
+        subclass.setCorrelationId(request.getCorrelationId());
+        Response response = new SuccessResponse(samplePayload());
+
+        // warm up both paths before measuring
+        run(codec, request, subclass, response, iterations / 10);
+        run(codec, request, subclass, response, iterations);
+    }
+
+    private static void run(BinaryDomainCodec codec, Request request, Request subclass, Response response,
+                            int iterations) throws Exception {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += codec.decodeRequest(codec.encode(request)).getCorrelationId().length();
+        }
+        long codecRequest = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += ((Request) javaRoundTrip(request, null)[0]).getCorrelationId().length();
+        }
+        long javaRequest = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += codec.decodeRequest(codec.encode(subclass)).getCorrelationId().length();
+        }
+        long codecSubclass = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += ((Request) javaRoundTrip(subclass, null)[0]).getCorrelationId().length();
+        }
+        long javaSubclass = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += ((List<?>) codec.decodeResponse(codec.encode(response)).getPayload()).size();
+        }
+        long codecResponse = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += ((List<?>) javaRoundTrip(response, response.getPayload())[1]).size();
+        }
+        long javaResponse = System.nanoTime() - start;
+
+        print("Request", iterations, codecRequest, javaRequest, codec.encode(request).length, javaSize(request, null));
+        print("RequestSubclass", iterations, codecSubclass, javaSubclass, codec.encode(subclass).length,
+                javaSize(subclass, null));
+        print("SuccessResponse", iterations, codecResponse, javaResponse, codec.encode(response).length,
+                javaSize(response, response.getPayload()));
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static void print(String name, int iterations, long codecNanos, long javaNanos, int codecBytes, int javaBytes) {
+        System.out.println(String.format("%-16s codec %8.0f ns/op %5d bytes | java %8.0f ns/op %5d bytes | %.1fx faster, %.1fx smaller",
+                name, (double) codecNanos / iterations, codecBytes, (double) javaNanos / iterations, javaBytes,
+                (double) javaNanos / codecNanos, (double) javaBytes / codecBytes));
+    }
+
+    private static Object[] javaRoundTrip(Object value, Object payload) throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(javaSerialize(value, payload)));
+        return new Object[]{in.readObject(), in.readObject()};
+    }
+
+    private static int javaSize(Object value, Object payload) throws IOException {
+        return javaSerialize(value, payload).length;
+    }
+
+    private static byte[] javaSerialize(Object value, Object payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(value);
+        out.writeObject(payload);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static List<Object> samplePayload() {
+        List<Object> rows = new ArrayList<Object>();
+        for (int i = 0; i < 20; i++) {
+            Map<String, Object> row = new LinkedHashMap<String, Object>();
+            row.put("id", (long) i);
+            row.put("name", "Form " + i);
+            row.put("submitted", i % 2 == 0);
+            row.put("hours", i * 1.5);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static class FormRequest extends Request {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int formId;
+
+        FormRequest(int formId) {
+            this.formId = formId;
+        }
+    }
+}
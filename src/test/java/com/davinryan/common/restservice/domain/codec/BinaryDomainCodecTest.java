@@ -0,0 +1,170 @@
+package com.davinryan.common.restservice.domain.codec;
+
+import com.davinryan.common.restservice.domain.request.Request;
+import com.davinryan.common.restservice.domain.response.Response;
+import com.davinryan.common.restservice.domain.response.Response.ResponseStatus;
+import com.davinryan.common.restservice.domain.response.SpringValidationFailureResponse;
+import com.davinryan.common.restservice.domain.response.StreamingResponse;
+import com.davinryan.common.restservice.domain.response.StructuredValidationFailureResponse;
+import com.davinryan.common.restservice.domain.response.SuccessResponse;
+import com.davinryan.common.restservice.domain.response.ValidationError;
+import com.davinryan.common.restservice.domain.response.ValidationErrorPayload;
+import org.junit.Test;
+import org.springframework.validation.MapBindingResult;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class BinaryDomainCodecTest {
+
+    private final BinaryDomainCodec codec = new BinaryDomainCodec();
+
+    @Test
+    public void roundTripsRequest() throws Exception {
+        Request request = new Request();
+        request.setCorrelationId("c0a8012e-7d1f-4a8b-9a7e-1f2d3c4b5a69");
+
+        Request decoded = codec.decodeRequest(codec.encode(request));
+
+        assertSame(Request.class, decoded.getClass());
+        assertEquals(request.getCorrelationId(), decoded.getCorrelationId());
+    }
+
+    @Test
+    public void roundTripsRequestSubclass() throws Exception {
+        FormRequest request = new FormRequest();
+        request.setCorrelationId("cid");
+        request.formId = 42;
+
+        Request decoded = codec.decodeRequest(codec.encode(request));
+
+        assertSame(FormRequest.class, decoded.getClass());
+        assertEquals("cid", decoded.getCorrelationId());
+        assertEquals(42, ((FormRequest) decoded).formId);
+    }
+
+    @Test
+    public void roundTripsResponse() throws Exception {
+        Response response = new Response(null, "text");
+
+        Response decoded = codec.decodeResponse(codec.encode(response));
+
+        assertSame(Response.class, decoded.getClass());
+        assertNull(decoded.getStatus());
+        assertEquals("text", decoded.getPayload());
+    }
+
+    @Test
+    public void roundTripsSuccessResponseWithEveryPayloadType() throws Exception {
+        Map<String, Object> row = new LinkedHashMap<String, Object>();
+        row.put("string", "Form 1");
+        row.put("int", 7);
+        row.put("long", Long.MAX_VALUE);
+        row.put("true", true);
+        row.put("false", false);
+        row.put("double", 1.5);
+        row.put("null", null);
+        row.put("list", Arrays.<Object>asList(-1, "two", 3L));
+        row.put("bytes", new byte[]{1, 2, 3});
+        HashMap<Integer, String> serializable = new HashMap<Integer, String>();
+        serializable.put(1, "not string keyed, so Java serialized");
+        row.put("serializable", serializable);
+        Response response = new SuccessResponse(Collections.singletonList(row));
+
+        Response decoded = codec.decodeResponse(codec.encode(response));
+
+        assertSame(SuccessResponse.class, decoded.getClass());
+        assertEquals(ResponseStatus.SUCCESS, decoded.getStatus());
+        Map<?, ?> decodedRow = (Map<?, ?>) ((List<?>) decoded.getPayload()).get(0);
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) decodedRow.get("bytes"));
+        row.remove("bytes");
+        decodedRow.remove("bytes");
+        assertEquals(row, decodedRow);
+        assertEquals(Arrays.asList(row.keySet().toArray()), Arrays.asList(decodedRow.keySet().toArray()));
+    }
+
+    @Test
+    public void keepsStatusChangedAfterConstruction() throws Exception {
+        Response response = new SuccessResponse("partial");
+        response.setStatus(ResponseStatus.FAILURE);
+
+        assertEquals(ResponseStatus.FAILURE, codec.decodeResponse(codec.encode(response)).getStatus());
+    }
+
+    @Test
+    public void roundTripsSpringValidationFailureResponse() throws Exception {
+        MapBindingResult bindingResult = new MapBindingResult(new HashMap<String, Object>(), "form");
+        bindingResult.rejectValue("hours", "Max", "must be at most 24");
+        Response response = new SpringValidationFailureResponse(bindingResult);
+
+        Response decoded = codec.decodeResponse(codec.encode(response));
+
+        assertSame(SpringValidationFailureResponse.class, decoded.getClass());
+        assertEquals(ResponseStatus.FAILURE, decoded.getStatus());
+        assertEquals(response.getPayload(), decoded.getPayload());
+    }
+
+    @Test
+    public void roundTripsStructuredValidationFailureResponse() throws Exception {
+        ValidationErrorPayload payload = new ValidationErrorPayload(Arrays.asList(
+                new ValidationError("hours", 25, "Max", "must be at most 24"),
+                new ValidationError("form", null, "SumOfFieldsShouldNotExceedValue", "too many hours")), 3);
+        Response response = new StructuredValidationFailureResponse(payload);
+
+        Response decoded = codec.decodeResponse(codec.encode(response));
+
+        assertSame(StructuredValidationFailureResponse.class, decoded.getClass());
+        assertEquals(ResponseStatus.FAILURE, decoded.getStatus());
+        ValidationErrorPayload decodedPayload = (ValidationErrorPayload) decoded.getPayload();
+        assertEquals(3, decodedPayload.getTotalErrorCount());
+        assertEquals(2, decodedPayload.getErrors().size());
+        for (int i = 0; i < 2; i++) {
+            ValidationError expected = payload.getErrors().get(i);
+            ValidationError actual = decodedPayload.getErrors().get(i);
+            assertEquals(expected.getField(), actual.getField());
+            assertEquals(expected.getRejectedValue(), actual.getRejectedValue());
+            assertEquals(expected.getCode(), actual.getCode());
+            assertEquals(expected.getMessage(), actual.getMessage());
+        }
+    }
+
+    @Test
+    public void refusesStreamingResponse() throws Exception {
+        try {
+            codec.encode(new StreamingResponse<String>(Arrays.asList("a", "b")));
+            fail("Expected a streaming response to be refused");
+        } catch (IOException e) {
+            assertEquals("Cannot encode response of type " + StreamingResponse.class.getName(), e.getMessage());
+        }
+    }
+
+    @Test
+    public void refusesUnknownVersion() throws Exception {
+        byte[] bytes = codec.encode(new SuccessResponse("text"));
+        bytes[0] = BinaryDomainCodec.VERSION + 1;
+        try {
+            codec.decodeResponse(bytes);
+            fail("Expected an unknown version to be refused");
+        } catch (IOException e) {
+            assertEquals("Unsupported codec version " + bytes[0], e.getMessage());
+        }
+    }
+
+    private static class FormRequest extends Request {
+
+        private static final long serialVersionUID = 1L;
+
+        private int formId;
+    }
+}
@@ -0,0 +1,198 @@
+package com.davinryan.common.restservice.jee;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class JdbcBatchWriterTest {
+
+    private static final AtomicInteger NEXT_DATABASE = new AtomicInteger();
+
+    private static final String INSERT_FORM = "insert into form (id, body) values (?, ?)";
+
+    private static final RowBinder<String> FORM_BINDER = new RowBinder<String>() {
+        @Override
+        public void bind(BatchRow row, String body) throws SQLException {
+            row.getStatement().setInt(1, Integer.parseInt(body.substring(0, body.indexOf(':'))));
+            row.setCharacterStream(2, new StringReader(body), body.length());
+        }
+    };
+
+    private JdbcConnectionPool dataSource;
+
+    private JdbcBatchWriter writer;
+
+    @Before
+    public void createDatabase() throws SQLException {
+        dataSource = JdbcConnectionPool.create("jdbc:h2:mem:batch" + NEXT_DATABASE.incrementAndGet() + ";MVCC=TRUE", "sa", "");
+        execute("create table form (id int primary key, body clob)");
+        writer = new JdbcBatchWriter(dataSource);
+        writer.setBatchSize(10);
+    }
+
+    @After
+    public void dropDatabase() {
+        dataSource.dispose();
+    }
+
+    @Test
+    public void writesEveryRowAcrossBatches() throws Exception {
+        List<String> forms = forms(0, 25);
+
+        assertEquals(25, writer.write(INSERT_FORM, forms, FORM_BINDER));
+
+        assertEquals(forms, bodies());
+        assertEquals(0, dataSource.getActiveConnections());
+    }
+
+    @Test
+    public void failedWriteIsRolledBack() throws Exception {
+        // Row 15 repeats row 5's primary key, so the second batch fails after the first was executed
+        List<String> forms = new ArrayList<String>(forms(0, 15));
+        forms.add("5:duplicate");
+        try {
+            writer.write(INSERT_FORM, forms, FORM_BINDER);
+            fail("Expected the duplicate key to fail");
+        } catch (SQLException e) {
+            // expected
+        }
+
+        assertEquals(Collections.<String>emptyList(), bodies());
+        assertEquals(0, dataSource.getActiveConnections());
+    }
+
+    @Test
+    public void sessionWritesShareOneTransaction() throws Exception {
+        JdbcBatchWriter.Session session = writer.openSession();
+        try {
+            session.write(INSERT_FORM, forms(0, 3), FORM_BINDER);
+            session.write(INSERT_FORM, forms(3, 6), FORM_BINDER);
+            assertEquals(Collections.<String>emptyList(), bodies());
+            session.commit();
+        } finally {
+            session.close();
+        }
+
+        assertEquals(forms(0, 6), bodies());
+    }
+
+    @Test
+    public void closingRollsBackWritesAfterTheLastCommit() throws Exception {
+        JdbcBatchWriter.Session session = writer.openSession();
+        try {
+            session.write(INSERT_FORM, forms(0, 3), FORM_BINDER);
+            session.commit();
+            session.write(INSERT_FORM, forms(3, 6), FORM_BINDER);
+        } finally {
+            session.close();
+        }
+
+        assertEquals(forms(0, 3), bodies());
+    }
+
+    @Test
+    public void closingRollsBackAWriteThatFailedAfterACommit() throws Exception {
+        JdbcBatchWriter.Session session = writer.openSession();
+        try {
+            session.write(INSERT_FORM, forms(0, 3), FORM_BINDER);
+            session.commit();
+            // The first batch of ten is executed before the binder fails
+            List<String> forms = new ArrayList<String>(forms(3, 13));
+            forms.add("x:not a number");
+            try {
+                session.write(INSERT_FORM, forms, FORM_BINDER);
+                fail("Expected the binder to fail");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        } finally {
+            session.close();
+        }
+
+        assertEquals(forms(0, 3), bodies());
+        assertEquals(0, dataSource.getActiveConnections());
+    }
+
+    @Test
+    public void writeAfterAFailedWriteDoesNotExecuteItsRows() throws Exception {
+        JdbcBatchWriter.Session session = writer.openSession();
+        try {
+            // The binder fails before the first batch of ten is executed, leaving five rows added to the statement
+            List<String> forms = new ArrayList<String>(forms(0, 5));
+            forms.add("x:not a number");
+            try {
+                session.write(INSERT_FORM, forms, FORM_BINDER);
+                fail("Expected the binder to fail");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+            assertEquals(3, session.write(INSERT_FORM, forms(5, 8), FORM_BINDER));
+            session.commit();
+        } finally {
+            session.close();
+        }
+
+        assertEquals(forms(5, 8), bodies());
+    }
+
+    @Test
+    public void closingRestoresAutoCommit() throws Exception {
+        writer.openSession().close();
+
+        Connection connection = dataSource.getConnection();
+        try {
+            assertEquals(true, connection.getAutoCommit());
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static List<String> forms(int from, int to) {
+        List<String> forms = new ArrayList<String>();
+        for (int i = from; i < to; i++) {
+            forms.add(i + ":<form>" + i + "</form>");
+        }
+        return forms;
+    }
+
+    private List<String> bodies() throws SQLException {
+        List<String> bodies = new ArrayList<String>();
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery("select body from form order by id");
+            while (resultSet.next()) {
+                bodies.add(resultSet.getString(1));
+            }
+            statement.close();
+        } finally {
+            connection.close();
+        }
+        return bodies;
+    }
+
+    private void execute(String sql) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.execute(sql);
+            statement.close();
+        } finally {
+            connection.close();
+        }
+    }
+}
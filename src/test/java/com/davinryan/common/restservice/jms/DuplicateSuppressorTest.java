@@ -0,0 +1,135 @@
+package com.davinryan.common.restservice.jms;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DuplicateSuppressorTest {
+
+    @Test
+    public void suppressesKeyOnceCompleted() throws Exception {
+        DuplicateSuppressor suppressor = new DuplicateSuppressor(60000, 100);
+
+        assertTrue(suppressor.tryAcquire("a"));
+        suppressor.complete("a");
+
+        assertFalse(suppressor.tryAcquire("a"));
+        assertTrue(suppressor.tryAcquire("b"));
+    }
+
+    @Test
+    public void releasedKeyCanBeAcquiredAgain() throws Exception {
+        DuplicateSuppressor suppressor = new DuplicateSuppressor(60000, 100);
+
+        assertTrue(suppressor.tryAcquire("a"));
+        suppressor.release("a");
+
+        assertTrue(suppressor.tryAcquire("a"));
+    }
+
+    @Test
+    public void duplicateWaitsForInFlightPublishAndIsSuppressedWhenItCompletes() throws Exception {
+        final DuplicateSuppressor suppressor = new DuplicateSuppressor(60000, 100);
+        assertTrue(suppressor.tryAcquire("a"));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> duplicate = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return suppressor.tryAcquire("a");
+                }
+            });
+            Thread.sleep(100);
+            assertFalse("Duplicate must wait while the key is in flight", duplicate.isDone());
+
+            suppressor.complete("a");
+            assertFalse(duplicate.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void duplicateTakesOverWhenInFlightPublishIsReleased() throws Exception {
+        final DuplicateSuppressor suppressor = new DuplicateSuppressor(60000, 100);
+        assertTrue(suppressor.tryAcquire("a"));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> duplicate = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return suppressor.tryAcquire("a");
+                }
+            });
+            Thread.sleep(100);
+            suppressor.release("a");
+            assertTrue(duplicate.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void duplicateFailsIfInFlightPublishDoesNotFinish() throws Exception {
+        DuplicateSuppressor suppressor = new DuplicateSuppressor(60000, 100, 50);
+        assertTrue(suppressor.tryAcquire("a"));
+
+        try {
+            suppressor.tryAcquire("a");
+            fail("Expected a TimeoutException");
+        } catch (TimeoutException e) {
+            assertTrue(e.getMessage().contains("'a'"));
+        }
+    }
+
+    @Test
+    public void keyExpiresAfterWindow() throws Exception {
+        DuplicateSuppressor suppressor = new DuplicateSuppressor(50, 100);
+        assertTrue(suppressor.tryAcquire("a"));
+        suppressor.complete("a");
+
+        Thread.sleep(100);
+
+        assertTrue(suppressor.tryAcquire("a"));
+    }
+
+    @Test
+    public void keyIsStillSuppressedOnceLaterKeysAreInNewerBuckets() throws Exception {
+        DuplicateSuppressor suppressor = new DuplicateSuppressor(1000, 100);
+        assertTrue(suppressor.tryAcquire("a"));
+        suppressor.complete("a");
+
+        Thread.sleep(250);
+        assertTrue(suppressor.tryAcquire("b"));
+        suppressor.complete("b");
+
+        assertFalse(suppressor.tryAcquire("a"));
+        assertFalse(suppressor.tryAcquire("b"));
+        assertEquals(2, suppressor.size());
+    }
+
+    @Test
+    public void oldestKeysAreExpiredEarlyOnceMaxKeysIsReached() throws Exception {
+        DuplicateSuppressor suppressor = new DuplicateSuppressor(60000, 10);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(suppressor.tryAcquire("key" + i));
+            suppressor.complete("key" + i);
+        }
+
+        assertEquals(10, suppressor.size());
+        assertTrue(suppressor.tryAcquire("key0"));
+        assertFalse(suppressor.tryAcquire("key19"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.davinryan.common.restservice.jms;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.junit.rules.ExternalResource;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Queue;
+import javax.jms.QueueConnection;
+import javax.jms.QueueConnectionFactory;
+import javax.jms.QueueReceiver;
+import javax.jms.QueueSession;
+import javax.jms.Session;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs an ActiveMQ broker inside the test JVM for the duration of a test, reached over the vm:// transport. Each
+ * instance gets its own broker name so tests cannot see each other's messages.
+ * <p>
+ * By default the broker keeps messages in memory only, so even PERSISTENT sends never touch a disk. Give it a data
+ * directory to store persistent messages in KahaDB there, as a production broker would.
+ */
+public class EmbeddedBroker extends ExternalResource {
+
+    private static final AtomicInteger NEXT_BROKER = new AtomicInteger();
+
+    private final File dataDirectory;
+
+    private BrokerService broker;
+
+    private ActiveMQConnectionFactory connectionFactory;
+
+    /**
+     * A broker that keeps every message in memory.
+     */
+    public EmbeddedBroker() {
+        this(null);
+    }
+
+    /**
+     * A broker that stores persistent messages in a KahaDB store in {@code dataDirectory}.
+     */
+    public EmbeddedBroker(File dataDirectory) {
+        this.dataDirectory = dataDirectory;
+    }
+
+    @Override
+    protected void before() throws Exception {
+        String brokerName = "embedded-" + NEXT_BROKER.incrementAndGet();
+        broker = new BrokerService();
+        broker.setBrokerName(brokerName);
+        if (dataDirectory == null) {
+            broker.setPersistent(false);
+        } else {
+            KahaDBPersistenceAdapter store = new KahaDBPersistenceAdapter();
+            store.setDirectory(dataDirectory);
+            broker.setPersistenceAdapter(store);
+            broker.setDataDirectoryFile(dataDirectory);
+        }
+        broker.setUseJmx(false);
+        broker.setUseShutdownHook(false);
+        broker.start();
+        broker.waitUntilStarted();
+        connectionFactory = new ActiveMQConnectionFactory("vm://" + brokerName + "?create=false");
+        // Redeliver rolled back messages straight away rather than after the default one second
+        connectionFactory.getRedeliveryPolicy().setInitialRedeliveryDelay(0);
+        connectionFactory.getRedeliveryPolicy().setRedeliveryDelay(0);
+    }
+
+    @Override
+    protected void after() {
+        try {
+            broker.stop();
+            broker.waitUntilStopped();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to stop embedded broker", e);
+        }
+    }
+
+    public QueueConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    public Queue createQueue(String name) {
+        return new ActiveMQQueue(name);
+    }
+
+    /**
+     * Receive up to {@code count} messages from {@code queue}, waiting at most {@code timeoutMillis} for each.
+     *
+     * @return the messages received, in order
+     */
+    public List<Message> receive(Queue queue, int count, long timeoutMillis) throws JMSException {
+        List<Message> messages = new ArrayList<Message>();
+        QueueConnection connection = connectionFactory.createQueueConnection();
+        try {
+            connection.start();
+            QueueSession session = connection.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
+            QueueReceiver receiver = session.createReceiver(queue);
+            while (messages.size() < count) {
+                Message message = receiver.receive(timeoutMillis);
+                if (message == null) {
+                    break;
+                }
+                messages.add(message);
+            }
+        } finally {
+            connection.close();
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,297 @@
+package com.davinryan.common.restservice.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Queue;
+import javax.jms.QueueConnectionFactory;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Measures {@link JmsQueuePublisher} throughput and latency end to end against a real broker, so changes to session
+ * handling can be compared before and after. Runs cover every combination of thread count, payload size and delivery
+ * mode. PERSISTENT runs only use the publisher's original constructor and
+ * {@link MessagePublisher#send(String, String, String, String)}, so they run unchanged against older versions of the
+ * publisher; NON_PERSISTENT runs need {@link SendOptions}.
+ * <p>
+ * The publisher logs the details of every send at INFO unless {@link JmsQueuePublisher#setLogSendDetails(boolean)} is
+ * turned off, so with the default each send measured here also pays for 4 INFO log calls. The benchmark keeps the
+ * default so results compare with older versions, and says so in its output.
+ * <p>
+ * Not run by the build. Run {@link #main(String[])} to benchmark against an in-memory and a KahaDB backed
+ * {@link EmbeddedBroker}, or construct it with the factory of a real broker. A consumer drains the queue while the
+ * benchmark runs so the broker's memory limit never blocks producers.
+ */
+public class JmsPublisherBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmsPublisherBenchmark.class.getName());
+
+    private static final String JMS_TYPE = "benchmark";
+
+    private static final String SENDING_APP_PROPERTY_NAME = "sendingApp";
+
+    private static final String SENDING_APP = JmsPublisherBenchmark.class.getSimpleName();
+
+    static final String LOGGING_NOTE = "Sends log their details at INFO (JmsQueuePublisher logSendDetails defaults to "
+            + "true), so every send below includes 4 INFO log calls, written or not depending on the logging configuration";
+
+    private final QueueConnectionFactory queueConnectionFactory;
+
+    private final Queue destination;
+
+    public JmsPublisherBenchmark(QueueConnectionFactory queueConnectionFactory, Queue destination) {
+        this.queueConnectionFactory = queueConnectionFactory;
+        this.destination = destination;
+    }
+
+    /**
+     * Benchmark against an in-memory broker, where even PERSISTENT messages never reach a store, and against a broker
+     * storing persistent messages in KahaDB in a temporary directory, and print the results.
+     */
+    public static void main(String[] args) throws Exception {
+        System.out.println(LOGGING_NOTE);
+        benchmark("in-memory broker", new EmbeddedBroker());
+        File dataDirectory = File.createTempFile("jms-benchmark", "");
+        if (!dataDirectory.delete() || !dataDirectory.mkdir()) {
+            throw new IOException("Unable to create " + dataDirectory);
+        }
+        try {
+            benchmark("KahaDB broker in " + dataDirectory, new EmbeddedBroker(dataDirectory));
+        } finally {
+            deleteRecursively(dataDirectory);
+        }
+    }
+
+    private static void benchmark(String description, EmbeddedBroker broker) throws Exception {
+        System.out.println(description + ":");
+        broker.before();
+        try {
+            JmsPublisherBenchmark benchmark = new JmsPublisherBenchmark(broker.getConnectionFactory(), broker.createQueue("benchmark"));
+            for (Result result : benchmark.runMatrix(new int[]{1, 8}, new int[]{1024, 65536},
+                    new int[]{DeliveryMode.PERSISTENT, DeliveryMode.NON_PERSISTENT}, 5000)) {
+                System.out.println(result);
+            }
+        } finally {
+            broker.after();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete()) {
+            LOGGER.warn("Unable to delete " + file);
+        }
+    }
+
+    /**
+     * Run every combination of thread count, payload size and delivery mode.
+     *
+     * @param deliveryModes  {@link DeliveryMode#PERSISTENT} and/or {@link DeliveryMode#NON_PERSISTENT}
+     * @param messagesPerRun messages sent by each run, split across its threads
+     */
+    public List<Result> runMatrix(int[] threadCounts, int[] payloadSizes, int[] deliveryModes, int messagesPerRun)
+            throws JMSException, InterruptedException {
+        List<Result> results = new ArrayList<Result>();
+        JmsQueueConsumer drain = new JmsQueueConsumer(queueConnectionFactory, destination, new MessageHandler() {
+            @Override
+            public void handle(Message message) {
+                // Discard
+            }
+        }, 1, 100);
+        try {
+            for (int threads : threadCounts) {
+                for (int payloadSize : payloadSizes) {
+                    for (int deliveryMode : deliveryModes) {
+                        results.add(run(threads, payloadSize, deliveryMode, messagesPerRun));
+                    }
+                }
+            }
+        } finally {
+            drain.tearDown(5000);
+        }
+        return results;
+    }
+
+    /**
+     * Send {@code messageCount} messages of {@code payloadSize} characters from {@code threads} threads using a fresh
+     * publisher, after a short warm up.
+     */
+    public Result run(int threads, int payloadSize, int deliveryMode, int messageCount) throws JMSException, InterruptedException {
+        JmsQueuePublisher publisher = new JmsQueuePublisher(queueConnectionFactory, destination);
+        try {
+            String payload = payload(payloadSize);
+            SendOptions options = null;
+            if (deliveryMode == DeliveryMode.NON_PERSISTENT) {
+                options = SendOptions.nonPersistent(0);
+                options.setProperty(SENDING_APP_PROPERTY_NAME, SENDING_APP);
+            }
+
+            int warmUp = Math.min(messageCount / 10 + 1, 1000);
+            sendAll(publisher, payload, options, threads, warmUp, new long[warmUp]);
+
+            long[] latencies = new long[messageCount];
+            long start = System.nanoTime();
+            sendAll(publisher, payload, options, threads, messageCount, latencies);
+            long elapsed = System.nanoTime() - start;
+
+            Result result = new Result(threads, payloadSize, deliveryMode, messageCount, elapsed, latencies);
+            LOGGER.info(result.toString());
+            return result;
+        } finally {
+            publisher.tearDown();
+        }
+    }
+
+    /**
+     * @param options null to send with the original four argument send, which is always PERSISTENT
+     */
+    private static void sendAll(final MessagePublisher publisher, final String payload, final SendOptions options, int threads,
+                                final int messageCount, final long[] latencies) throws JMSException, InterruptedException {
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<JMSException> failure = new AtomicReference<JMSException>();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int index = next.getAndIncrement();
+                        while (index < messageCount && failure.get() == null) {
+                            long start = System.nanoTime();
+                            if (options == null) {
+                                publisher.send(payload, JMS_TYPE, SENDING_APP_PROPERTY_NAME, SENDING_APP);
+                            } else {
+                                publisher.send(payload, JMS_TYPE, options);
+                            }
+                            latencies[index] = System.nanoTime() - start;
+                            index = next.getAndIncrement();
+                        }
+                    } catch (JMSException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "jms-benchmark-" + t);
+            thread.start();
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private static String payload(int size) {
+        StringBuilder payload = new StringBuilder(size);
+        String element = "<field name=\"value\">0123456789</field>";
+        while (payload.length() < size) {
+            payload.append(element);
+        }
+        payload.setLength(size);
+        return payload.toString();
+    }
+
+    /**
+     * Outcome of one benchmark run.
+     */
+    public static class Result {
+
+        private final int threads;
+
+        private final int payloadSize;
+
+        private final int deliveryMode;
+
+        private final int messageCount;
+
+        private final double messagesPerSecond;
+
+        private final double p50Millis;
+
+        private final double p95Millis;
+
+        private final double p99Millis;
+
+        private final double maxMillis;
+
+        Result(int threads, int payloadSize, int deliveryMode, int messageCount, long elapsedNanos, long[] latencies) {
+            this.threads = threads;
+            this.payloadSize = payloadSize;
+            this.deliveryMode = deliveryMode;
+            this.messageCount = messageCount;
+            this.messagesPerSecond = messageCount / (elapsedNanos / 1e9);
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            this.p50Millis = percentile(sorted, 50);
+            this.p95Millis = percentile(sorted, 95);
+            this.p99Millis = percentile(sorted, 99);
+            this.maxMillis = sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6;
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public int getPayloadSize() {
+            return payloadSize;
+        }
+
+        public int getDeliveryMode() {
+            return deliveryMode;
+        }
+
+        public int getMessageCount() {
+            return messageCount;
+        }
+
+        public double getMessagesPerSecond() {
+            return messagesPerSecond;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("threads=%d payload=%d mode=%s messages=%d throughput=%.1f/s p50=%.3fms p95=%.3fms p99=%.3fms max=%.3fms",
+                    threads, payloadSize, deliveryMode == DeliveryMode.PERSISTENT ? "persistent" : "non-persistent",
+                    messageCount, messagesPerSecond, p50Millis, p95Millis, p99Millis, maxMillis);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.davinryan.common.restservice.jms;
+
+import com.davinryan.common.restservice.domain.request.Request;
+import com.davinryan.common.restservice.logging.LogServiceCallWithMDCAspect;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Queue;
+import javax.jms.TextMessage;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Sends through {@link JmsQueuePublisher} to an {@link EmbeddedBroker} and checks what arrives on the queue.
+ */
+public class JmsQueuePublisherTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmsQueuePublisherTest.class.getName());
+
+    private static final long RECEIVE_TIMEOUT_MILLIS = 5000;
+
+    private static final String JMS_TYPE = "form";
+
+    @Rule
+    public EmbeddedBroker broker = new EmbeddedBroker();
+
+    private Queue queue;
+
+    private JmsQueuePublisher publisher;
+
+    @Before
+    public void createPublisher() {
+        queue = broker.createQueue("forms");
+        publisher = new JmsQueuePublisher(broker.getConnectionFactory(), queue);
+    }
+
+    @After
+    public void tearDownPublisher() {
+        publisher.tearDown();
+    }
+
+    @Test
+    public void sendDeliversTextMessageWithTypeAndSendingApp() throws Exception {
+        MessagePublisher messagePublisher = publisher;
+        messagePublisher.send("<form>1</form>", JMS_TYPE, "sendingApp", "test");
+
+        List<Message> received = broker.receive(queue, 1, RECEIVE_TIMEOUT_MILLIS);
+        assertEquals(1, received.size());
+        TextMessage message = (TextMessage) received.get(0);
+        assertEquals("<form>1</form>", message.getText());
+        assertEquals(JMS_TYPE, message.getJMSType());
+        assertEquals("test", message.getStringProperty("sendingApp"));
+        assertTrue(message.propertyExists(JmsTraceContext.SEND_TIMESTAMP_PROPERTY));
+    }
+
+    @Test
+    public void sendBatchDeliversEveryMessageInOrder() throws Exception {
+        publisher.setBatchCommitSize(10);
+        List<String> forms = new ArrayList<String>();
+        for (int i = 0; i < 25; i++) {
+            forms.add("<form>" + i + "</form>");
+        }
+
+        BatchSendResult result = publisher.sendBatch(forms, JMS_TYPE, "sendingApp", "test");
+
+        assertFalse(result.hasFailures());
+        assertEquals(25, result.getSentCount());
+        assertEquals(forms, texts(broker.receive(queue, 25, RECEIVE_TIMEOUT_MILLIS)));
+    }
+
+    @Test
+    public void sendStreamChunksAreReassembledWithoutSplittingSurrogatePairs() throws Exception {
+        publisher.setStreamChunkSize(4);
+        // Every chunk boundary falls inside a surrogate pair
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            payload.append("abc\uD83D\uDE00");
+        }
+
+        String groupId = publisher.sendStream(new StringReader(payload.toString()), JMS_TYPE, "sendingApp", "test");
+
+        List<Message> chunks = broker.receive(queue, Integer.MAX_VALUE, 500);
+        assertTrue(chunks.size() > 1);
+        ChunkedMessageAssembler assembler = new ChunkedMessageAssembler();
+        String assembled = null;
+        for (Message chunk : chunks) {
+            assertEquals(groupId, chunk.getStringProperty(ChunkedMessageAssembler.GROUP_ID_PROPERTY));
+            String text = ((TextMessage) chunk).getText();
+            assertFalse("Chunk ends with half a surrogate pair", Character.isHighSurrogate(text.charAt(text.length() - 1)));
+            assembled = assembler.accept(chunk);
+        }
+        assertEquals(payload.toString(), assembled);
+    }
+
+    @Test
+    public void largePayloadIsCompressedAndReadBack() throws Exception {
+        publisher.setCompressionThreshold(100);
+        char[] body = new char[10000];
+        Arrays.fill(body, 'x');
+        String form = "<form>" + new String(body) + "</form>";
+
+        publisher.send(form, JMS_TYPE, "sendingApp", "test");
+
+        Message message = broker.receive(queue, 1, RECEIVE_TIMEOUT_MILLIS).get(0);
+        assertTrue(message instanceof BytesMessage);
+        assertEquals(MessagePayloadUtils.GZIP, message.getStringProperty(MessagePayloadUtils.CONTENT_ENCODING_PROPERTY));
+        assertEquals(form, MessagePayloadUtils.readText(message));
+    }
+
+    @Test
+    public void sendAsyncDeliversInTheBackground() throws Exception {
+        publisher.enableAsyncSending(1, 10, BackpressurePolicy.BLOCK);
+
+        Future<Void> sent = publisher.sendAsync("<form>async</form>", JMS_TYPE, "sendingApp", "test");
+
+        assertNull(sent.get(RECEIVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(Collections.singletonList("<form>async</form>"), texts(broker.receive(queue, 1, RECEIVE_TIMEOUT_MILLIS)));
+    }
+
+    @Test
+    public void sendAsyncCarriesTheCallersTraceContext() throws Exception {
+        publisher.enableAsyncSending(1, 10, BackpressurePolicy.BLOCK);
+        Request request = new Request();
+        request.setCorrelationId("cid-async");
+        LogServiceCallWithMDCAspect.logBegin(LOGGER, request, null);
+        String operationId = LogServiceCallWithMDCAspect.currentOperationId();
+        long before = System.currentTimeMillis();
+        Future<Void> sent;
+        try {
+            sent = publisher.sendAsync("<form>async</form>", JMS_TYPE, "sendingApp", "test");
+        } finally {
+            LogServiceCallWithMDCAspect.logEnd(LOGGER);
+        }
+        long after = System.currentTimeMillis();
+
+        sent.get(RECEIVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        Message message = broker.receive(queue, 1, RECEIVE_TIMEOUT_MILLIS).get(0);
+        assertEquals("cid-async", message.getStringProperty(JmsTraceContext.CORRELATION_ID_PROPERTY));
+        assertEquals(operationId, message.getStringProperty(JmsTraceContext.PARENT_OPERATION_ID_PROPERTY));
+        assertEquals("test", message.getStringProperty("sendingApp"));
+        long sendTimestamp = message.getLongProperty(JmsTraceContext.SEND_TIMESTAMP_PROPERTY);
+        assertTrue(sendTimestamp >= before && sendTimestamp <= after);
+    }
+
+    @Test
+    public void coalescedAsyncBatchKeepsEachMessagesTraceContext() throws Exception {
+        List<SendOptions> options = new ArrayList<SendOptions>();
+        options.add(JmsTraceContext.sendOptions("sendingApp", "test", "cid-1", "op-1", 1000L));
+        options.add(JmsTraceContext.sendOptions("sendingApp", "test", "cid-2", null, 2000L));
+
+        BatchSendResult result = publisher.sendBatch(Arrays.asList("<form>1</form>", "<form>2</form>"), JMS_TYPE, options);
+
+        assertFalse(result.hasFailures());
+        List<Message> received = broker.receive(queue, 2, RECEIVE_TIMEOUT_MILLIS);
+        assertEquals("cid-1", received.get(0).getStringProperty(JmsTraceContext.CORRELATION_ID_PROPERTY));
+        assertEquals("op-1", received.get(0).getStringProperty(JmsTraceContext.PARENT_OPERATION_ID_PROPERTY));
+        assertEquals(1000L, received.get(0).getLongProperty(JmsTraceContext.SEND_TIMESTAMP_PROPERTY));
+        assertEquals("cid-2", received.get(1).getStringProperty(JmsTraceContext.CORRELATION_ID_PROPERTY));
+        assertFalse(received.get(1).propertyExists(JmsTraceContext.PARENT_OPERATION_ID_PROPERTY));
+        assertEquals(2000L, received.get(1).getLongProperty(JmsTraceContext.SEND_TIMESTAMP_PROPERTY));
+    }
+
+    @Test
+    public void duplicateWithinWindowIsNotSentAgain() throws Exception {
+        publisher.setDuplicateSuppressor(new DuplicateSuppressor(60000, 100));
+        SendOptions options = SendOptions.persistent();
+        options.setIdempotencyKey("form-1");
+
+        publisher.send("<form>1</form>", JMS_TYPE, options);
+        publisher.send("<form>1</form>", JMS_TYPE, options);
+
+        assertEquals(1, broker.receive(queue, 2, 500).size());
+    }
+
+    @Test
+    public void consumerHandlesPublishedMessagesAndBacksOutPoison() throws Exception {
+        Queue backoutQueue = broker.createQueue("forms.backout");
+        // A batch rolled back because of the poison message is redelivered, so good messages can be handled twice
+        final Set<String> handled = Collections.synchronizedSet(new LinkedHashSet<String>());
+        final CountDownLatch done = new CountDownLatch(1);
+        JmsQueueConsumer consumer = new JmsQueueConsumer(broker.getConnectionFactory(), queue, new MessageHandler() {
+            @Override
+            public void handle(Message message) throws Exception {
+                String text = MessagePayloadUtils.readText(message);
+                if (text.contains("poison")) {
+                    throw new IllegalArgumentException("Cannot handle " + text);
+                }
+                handled.add(text);
+                if (handled.size() == 2) {
+                    done.countDown();
+                }
+            }
+        }, 1, 10, backoutQueue, 2);
+        try {
+            publisher.send("<form>1</form>", JMS_TYPE, "sendingApp", "test");
+            publisher.send("<poison/>", JMS_TYPE, "sendingApp", "test");
+            publisher.send("<form>2</form>", JMS_TYPE, "sendingApp", "test");
+
+            assertTrue("Timed out waiting for the consumer", done.await(RECEIVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            assertEquals(new HashSet<String>(Arrays.asList("<form>1</form>", "<form>2</form>")), new HashSet<String>(handled));
+            assertEquals(Collections.singletonList("<poison/>"), texts(broker.receive(backoutQueue, 1, RECEIVE_TIMEOUT_MILLIS)));
+        } finally {
+            consumer.tearDown(RECEIVE_TIMEOUT_MILLIS);
+        }
+    }
+
+    @Test
+    public void consumerBacksOutAMessageWhoseHandlerThrowsAnError() throws Exception {
+        Queue backoutQueue = broker.createQueue("forms.backout");
+        final Set<String> handled = Collections.synchronizedSet(new LinkedHashSet<String>());
+        final CountDownLatch done = new CountDownLatch(1);
+        JmsQueueConsumer consumer = new JmsQueueConsumer(broker.getConnectionFactory(), queue, new MessageHandler() {
+            @Override
+            public void handle(Message message) throws Exception {
+                String text = MessagePayloadUtils.readText(message);
+                if (text.contains("poison")) {
+                    throw new NoClassDefFoundError("Cannot handle " + text);
+                }
+                handled.add(text);
+                done.countDown();
+            }
+        }, 1, 10, backoutQueue, 2);
+        try {
+            publisher.send("<poison/>", JMS_TYPE, "sendingApp", "test");
+            publisher.send("<form>1</form>", JMS_TYPE, "sendingApp", "test");
+
+            assertTrue("Timed out waiting for the consumer", done.await(RECEIVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            assertEquals(Collections.singleton("<form>1</form>"), new HashSet<String>(handled));
+            assertEquals(Collections.singletonList("<poison/>"), texts(broker.receive(backoutQueue, 1, RECEIVE_TIMEOUT_MILLIS)));
+            assertTrue(consumer.isRunning());
+        } finally {
+            consumer.tearDown(RECEIVE_TIMEOUT_MILLIS);
+        }
+    }
+
+    @Test
+    public void sendFailsAfterTearDown() throws Exception {
+        publisher.healthCheck();
+        publisher.tearDown();
+
+        try {
+            publisher.send("<form/>", JMS_TYPE, "sendingApp", "test");
+            fail("Expected send to fail after tearDown");
+        } catch (JMSException e) {
+            // expected
+        }
+        try {
+            publisher.healthCheck();
+            fail("Expected health check to fail after tearDown");
+        } catch (JMSException e) {
+            // expected
+        }
+    }
+
+    private static List<String> texts(List<Message> messages) throws JMSException {
+        List<String> texts = new ArrayList<String>();
+        for (Message message : messages) {
+            texts.add(MessagePayloadUtils.readText(message));
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,253 @@
+package com.davinryan.common.restservice.jms;
+
+import com.davinryan.common.restservice.domain.request.Request;
+import com.davinryan.common.restservice.logging.LogServiceCallWithMDCAspect;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.JMSException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MessageOutboxTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageOutboxTest.class.getName());
+
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MessageOutbox outbox;
+
+    @After
+    public void closeOutbox() {
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    @Test
+    public void forwardsMessagesInOrder() throws Exception {
+        RecordingPublisher publisher = new RecordingPublisher();
+        outbox = new MessageOutbox(folder.getRoot(), publisher, SEGMENT_SIZE);
+
+        outbox.send("<form>1</form>", "type", "app", "test");
+        outbox.send("<form>2</form>", "type", "app", "test");
+        outbox.send("<form>3</form>", "type", null, null);
+
+        publisher.awaitSent(3);
+        assertEquals(Arrays.asList("<form>1</form>", "<form>2</form>", "<form>3</form>"), publisher.getSent());
+    }
+
+    @Test
+    public void forwardsWithTheTraceContextOfTheAppendingCall() throws Exception {
+        RecordingPublisher publisher = new RecordingPublisher();
+        outbox = new MessageOutbox(folder.getRoot(), publisher, SEGMENT_SIZE);
+        Request request = new Request();
+        request.setCorrelationId("cid-outbox");
+        LogServiceCallWithMDCAspect.logBegin(LOGGER, request, null);
+        String operationId = LogServiceCallWithMDCAspect.currentOperationId();
+        long before = System.currentTimeMillis();
+        try {
+            outbox.send("<form>1</form>", "type", "app", "test");
+        } finally {
+            LogServiceCallWithMDCAspect.logEnd(LOGGER);
+        }
+        long after = System.currentTimeMillis();
+
+        publisher.awaitSent(1);
+
+        Map<String, Object> properties = publisher.getOptions().get(0).getProperties();
+        assertEquals("cid-outbox", properties.get(JmsTraceContext.CORRELATION_ID_PROPERTY));
+        assertEquals(operationId, properties.get(JmsTraceContext.PARENT_OPERATION_ID_PROPERTY));
+        assertEquals("test", properties.get("app"));
+        long sendTimestamp = (Long) properties.get(JmsTraceContext.SEND_TIMESTAMP_PROPERTY);
+        assertTrue(sendTimestamp >= before && sendTimestamp <= after);
+    }
+
+    @Test
+    public void rollsOverToNewSegments() throws Exception {
+        RecordingPublisher publisher = new RecordingPublisher();
+        outbox = new MessageOutbox(folder.getRoot(), publisher, 1024);
+
+        char[] body = new char[300];
+        Arrays.fill(body, 'x');
+        for (int i = 0; i < 10; i++) {
+            outbox.send(i + new String(body), "type", null, null);
+        }
+
+        publisher.awaitSent(10);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(publisher.getSent().get(i).startsWith(String.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void forwardsMessagesStoredBeforeRestart() throws Exception {
+        RecordingPublisher publisher = new RecordingPublisher();
+        publisher.setDown(true);
+        outbox = new MessageOutbox(folder.getRoot(), publisher, SEGMENT_SIZE);
+        outbox.send("<form>1</form>", "type", null, null);
+        outbox.send("<form>2</form>", "type", null, null);
+        outbox.close();
+        assertEquals(0, publisher.getSent().size());
+
+        RecordingPublisher restarted = new RecordingPublisher();
+        outbox = new MessageOutbox(folder.getRoot(), restarted, SEGMENT_SIZE);
+
+        restarted.awaitSent(2);
+        assertEquals(Arrays.asList("<form>1</form>", "<form>2</form>"), restarted.getSent());
+    }
+
+    @Test
+    public void parksMessageThatKeepsFailingWhileMQIsHealthy() throws Exception {
+        RecordingPublisher publisher = new RecordingPublisher();
+        publisher.setPoison("<poison/>");
+        outbox = new MessageOutbox(folder.getRoot(), publisher, SEGMENT_SIZE);
+        outbox.setMaxForwardAttempts(2);
+
+        outbox.send("<poison/>", "type", null, null);
+        outbox.send("<form>after</form>", "type", null, null);
+
+        publisher.awaitSent(1);
+        assertEquals(Collections.singletonList("<form>after</form>"), publisher.getSent());
+        assertEquals(1, outbox.getParkedCount());
+        File parked = new File(folder.getRoot(), MessageOutbox.PARKED_FILE);
+        assertTrue(parked.length() > "<poison/>".length());
+    }
+
+    @Test
+    public void doesNotParkMessagesWhileMQIsDown() throws Exception {
+        RecordingPublisher publisher = new RecordingPublisher();
+        publisher.setDown(true);
+        outbox = new MessageOutbox(folder.getRoot(), publisher, SEGMENT_SIZE);
+        outbox.setMaxForwardAttempts(1);
+
+        outbox.send("<form>1</form>", "type", null, null);
+        Thread.sleep(500);
+        assertEquals(0, outbox.getParkedCount());
+
+        publisher.setDown(false);
+        publisher.awaitSent(1);
+        assertEquals(Collections.singletonList("<form>1</form>"), publisher.getSent());
+        assertEquals(0, outbox.getParkedCount());
+    }
+
+    @Test
+    public void sendFailsOnceClosed() throws Exception {
+        outbox = new MessageOutbox(folder.getRoot(), new RecordingPublisher(), SEGMENT_SIZE);
+        outbox.close();
+        try {
+            outbox.send("<form/>", "type", null, null);
+            fail("Expected send to fail after close");
+        } catch (IOException e) {
+            assertEquals("Outbox has been closed", e.getMessage());
+        }
+    }
+
+    /**
+     * Records the text of every message sent. Can simulate MQ being down, or a message MQ always rejects.
+     */
+    private static class RecordingPublisher implements MessagePublisher {
+
+        private final List<String> sent = new ArrayList<String>();
+
+        private final List<SendOptions> options = new ArrayList<SendOptions>();
+
+        private volatile boolean down;
+
+        private volatile String poison;
+
+        void setDown(boolean down) {
+            this.down = down;
+        }
+
+        void setPoison(String poison) {
+            this.poison = poison;
+        }
+
+        synchronized List<String> getSent() {
+            return new ArrayList<String>(sent);
+        }
+
+        synchronized List<SendOptions> getOptions() {
+            return new ArrayList<SendOptions>(options);
+        }
+
+        synchronized void awaitSent(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (sent.size() < count) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    fail("Timed out waiting for " + count + " messages, got " + sent);
+                }
+                wait(remaining);
+            }
+        }
+
+        @Override
+        public synchronized void send(String form, String jmsType, String sendingAppPropertyName,
+                                      String sendingAppPropertyNameValue) throws JMSException {
+            healthCheck();
+            if (form.equals(poison)) {
+                throw new JMSException("Rejected " + form);
+            }
+            sent.add(form);
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void send(String form, String jmsType, SendOptions options) throws JMSException {
+            send(form, jmsType, null, null);
+            this.options.add(options);
+        }
+
+        @Override
+        public BatchSendResult sendBatch(List<String> forms, String jmsType, String sendingAppPropertyName,
+                                         String sendingAppPropertyNameValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BatchSendResult sendBatch(List<String> forms, String jmsType, SendOptions options) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String sendStream(Reader form, String jmsType, String sendingAppPropertyName,
+                                 String sendingAppPropertyNameValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String sendStream(InputStream form, String charsetName, String jmsType, String sendingAppPropertyName,
+                                 String sendingAppPropertyNameValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void healthCheck() throws JMSException {
+            if (down) {
+                throw new JMSException("MQ is down");
+            }
+        }
+    }
+}